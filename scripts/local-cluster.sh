@@ -0,0 +1,43 @@
+#!/bin/sh
+# Lobby y varias instancias de GameServer en localhost, cada una en su proceso.
+# Las instancias van de a dos por nivel (1, 1, 2, 2, ...) para que el lobby tenga
+# entre cuáles repartir. Ctrl+C detiene todo.
+#
+# Uso: scripts/local-cluster.sh [instancias] [puerto del lobby] [primer puerto de juego]
+# Antes: mvn -q compile
+# Cliente: java -Dsnake.lobby=true -Dsnake.lobby.level=<nivel> -cp target/classes cc4p1.snake.client.ClientMain
+#          (y en la ventana, host y puerto del lobby)
+set -e
+cd "$(dirname "$0")/.."
+
+INSTANCES=${1:-4}
+LOBBY_PORT=${2:-7000}
+FIRST_PORT=${3:-8000}
+CP=${CP:-target/classes}
+LOGS=${LOGS:-target/cluster}
+
+if [ ! -d "$CP/cc4p1" ]; then
+  echo "No hay clases compiladas en $CP (correr mvn -q compile)" >&2
+  exit 1
+fi
+mkdir -p "$LOGS"
+
+java -cp "$CP" cc4p1.snake.server.ServerMain --lobby --port "$LOBBY_PORT" > "$LOGS/lobby.log" 2>&1 &
+PIDS=$!
+trap 'kill $PIDS 2>/dev/null' INT TERM EXIT
+sleep 1
+
+i=0
+while [ "$i" -lt "$INSTANCES" ]; do
+  # de a 10 puertos: cada instancia usa también port+1 (repeticiones); UDP va en el mismo número
+  port=$((FIRST_PORT + i * 10))
+  level=$((i / 2 % 5 + 1))
+  java -Dsnake.lobby.register=127.0.0.1:"$LOBBY_PORT" -cp "$CP" cc4p1.snake.server.ServerMain \
+    --headless --port "$port" --level "$level" > "$LOGS/server-$port.log" 2>&1 &
+  PIDS="$PIDS $!"
+  echo "Instancia en puerto $port, nivel $level"
+  i=$((i + 1))
+done
+
+echo "Lobby en puerto $LOBBY_PORT (estado: echo LIST | nc localhost $LOBBY_PORT); logs en $LOGS"
+wait
@@ -1,54 +1,293 @@
 package cc4p1.snake.client;
 
+import cc4p1.snake.server.CompressionBudget;
 import cc4p1.snake.server.GameServer;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
 
 /**
  * Maneja I/O por socket para un jugador. - Lee líneas del cliente
- * (JOIN/INPUT/QUIT) - Expone get/consume de la última dirección para que el
+ * (JOIN/RESUME/INPUT/QUIT/SPECTATE/UDP/TOP/SCORES/METRICS) con un CommandDecoder
+ * sobre bytes - Expone get/consume de la última dirección para que el
  * GameServer la use en el tick
  */
 public class ClientSession {
 
-    private final int playerId;
+    // INPUT por segundo (y ráfaga) por cliente; lo que excede se descarta sin aviso
+    private static final double INPUT_PER_SEC = Double.parseDouble(System.getProperty("snake.input.perSec", "30"));
+    private static final double INPUT_BURST = Double.parseDouble(System.getProperty("snake.input.burst", "10"));
+    // Marcas de tiempo de PING: µs desde que cargó la clase (siempre positivas)
+    private static final long ORIGIN_NS = System.nanoTime();
+
+    // cambia una sola vez si la conexión retoma una sesión anterior (RESUME)
+    private volatile int playerId;
     private final Socket socket;
     private final GameServer server;
+    private final OutputStream rawOut;
     private final PrintWriter out;
     private volatile String lastDir = "RIGHT"; // dirección por defecto
     private volatile boolean running = true;
 
+    // Compresión opcional negociada en JOIN: un Deflater por conexión, así el
+    // diccionario se mantiene entre ticks (un SYNC_FLUSH por frame)
+    private Deflater deflater;
+    private CompressionBudget compressionBudget;
+    private byte[] deflateBuf = new byte[8192];
+
+    // Área de interés pedida con VIEW <ancho> <alto> (0 = mundo completo)
+    private volatile int viewW = 0;
+    private volatile int viewH = 0;
+
+    // Espectador: recibe snapshots pero no puede jugar
+    private volatile boolean spectator = false;
+
+    // Ocupa un cupo de jugador (JOIN admitido)
+    private volatile boolean joined = false;
+
+    // Última versión del marcador enviada (-1 = enviar SCOREBOARD completo)
+    private volatile long scoresVersionSent = -1;
+
+    // Canal UDP opcional: token del handshake, endpoint ligado y secuencias
+    private volatile long udpToken = 0;
+    private volatile SocketAddress udpAddress;
+    private long udpSeq = 0;
+    private volatile long udpInputAck = 0;
+
+    // Latido: PING <µs> viaja con los frames y el cliente responde PONG <µs>.
+    // RTT suavizado y su variación (jitter) como en TCP (RFC 6298), en ms.
+    // Cualquier comando o datagrama aceptado cuenta como señal de vida
+    private volatile long lastPingUs = -1;
+    private volatile long lastHeardNs = System.nanoTime();
+    private volatile double rttMs = -1;
+    private volatile double jitterMs = 0;
+    private int paceCounter = 0; // solo la etapa de codificación
+
+    // Cubeta de fichas de INPUT, compartida por TCP (hilo lector) y UDP (bajo inputLock)
+    private final Object inputLock = new Object();
+    private double inputTokens = INPUT_BURST;
+    private long inputRefillNs = System.nanoTime();
+
     public ClientSession(int playerId, Socket socket, GameServer server) throws IOException {
         this.playerId = playerId;
         this.socket = socket;
         this.server = server;
-        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())), true);
+        this.rawOut = new BufferedOutputStream(socket.getOutputStream());
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(rawOut, StandardCharsets.UTF_8)), true);
     }
 
     public int getPlayerId() {
         return playerId;
     }
 
+    /** RESUME aceptado: desde ahora la sesión es la del id en espera (hilo del tick, con el lector esperando) */
+    public void resumeAs(int id) {
+        this.playerId = id;
+    }
+
     public void setLastDirection(String d) {
         if (d == null) {
             return;
         }
+        // las constantes del decodificador ya vienen validadas
+        if (d == CommandDecoder.UP || d == CommandDecoder.DOWN || d == CommandDecoder.LEFT || d == CommandDecoder.RIGHT) {
+            lastDir = d;
+            return;
+        }
         d = d.trim().toUpperCase();
         if (d.equals("UP") || d.equals("DOWN") || d.equals("LEFT") || d.equals("RIGHT")) {
             lastDir = d;
         }
     }
 
+    public void setView(int w, int h) {
+        this.viewW = w;
+        this.viewH = h;
+    }
+
+    public boolean hasView() {
+        return viewW > 0 && viewH > 0;
+    }
+
+    public int getViewW() {
+        return viewW;
+    }
+
+    public int getViewH() {
+        return viewH;
+    }
+
     public String consumeLastDirection() {
         return lastDir;
     }
 
-    public void send(String line) {
+    public boolean isSpectator() {
+        return spectator;
+    }
+
+    public void setSpectator(boolean spectator) {
+        this.spectator = spectator;
+    }
+
+    public boolean isJoined() {
+        return joined;
+    }
+
+    public void setJoined(boolean joined) {
+        this.joined = joined;
+    }
+
+    /** Línea PING si pasó 'everyNs' desde el anterior, si no "" (etapa de codificación) */
+    public String pingIfDue(long nowNs, long everyNs) {
+        long us = (nowNs - ORIGIN_NS) / 1000;
+        if (lastPingUs >= 0 && us - lastPingUs < everyNs / 1000) {
+            return "";
+        }
+        lastPingUs = us;
+        return "PING " + us + "\n";
+    }
+
+    // PONG <µs>: solo cuenta si es el eco de un PING que mandamos
+    private void onPong(long us) {
+        long now = System.nanoTime();
+        long nowUs = (now - ORIGIN_NS) / 1000;
+        if (us < 0 || us > lastPingUs || nowUs - us > 60_000_000L) {
+            return;
+        }
+        double sample = (nowUs - us) / 1000.0;
+        if (rttMs < 0) {
+            rttMs = sample;
+            jitterMs = sample / 2;
+        } else {
+            jitterMs = 0.75 * jitterMs + 0.25 * Math.abs(rttMs - sample);
+            rttMs = 0.875 * rttMs + 0.125 * sample;
+        }
+    }
+
+    /** El cliente dio señal de vida (comando TCP o datagrama UDP válido) */
+    public void heard() {
+        lastHeardNs = System.nanoTime();
+    }
+
+    /** RTT suavizado en ms (-1 si todavía no hubo PONG) */
+    public double getRttMs() {
+        return rttMs;
+    }
+
+    public double getJitterMs() {
+        return jitterMs;
+    }
+
+    /** Última señal de vida (o la conexión, si aún no hubo) */
+    public long getLastHeardNs() {
+        return lastHeardNs;
+    }
+
+    /** true una vez cada 'every' llamadas: ritmo de snapshots de esta sesión */
+    public boolean paceTick(int every) {
+        if (++paceCounter >= every) {
+            paceCounter = 0;
+            return true;
+        }
+        return false;
+    }
+
+    public long getScoresVersionSent() {
+        return scoresVersionSent;
+    }
+
+    public void setScoresVersionSent(long version) {
+        this.scoresVersionSent = version;
+    }
+
+    public long getUdpToken() {
+        return udpToken;
+    }
+
+    public void setUdpToken(long token) {
+        this.udpToken = token;
+    }
+
+    public SocketAddress getUdpAddress() {
+        return udpAddress;
+    }
+
+    public void setUdpAddress(SocketAddress address) {
+        this.udpAddress = address;
+    }
+
+    /** Vuelve a TCP para los snapshots */
+    public void disableUdp() {
+        udpAddress = null;
+        udpToken = 0;
+    }
+
+    public synchronized long nextUdpSeq() {
+        return ++udpSeq;
+    }
+
+    public long getUdpInputAck() {
+        return udpInputAck;
+    }
+
+    /** true si el input es más nuevo que el último aplicado (los repetidos se ignoran) */
+    public synchronized boolean acceptUdpInput(long seq) {
+        if (seq <= udpInputAck) return false;
+        udpInputAck = seq;
+        return true;
+    }
+
+    public synchronized void send(String line) {
         // println añade '\n' y hace flush (PrintWriter autoflush con println)
         out.print(line);
         out.flush();
     }
 
+    /** Envía bytes ya codificados (frames compartidos entre varias sesiones) */
+    public synchronized void sendBytes(byte[] bytes) {
+        if (!running) return;
+        try {
+            out.flush();
+            rawOut.write(bytes);
+            rawOut.flush();
+        } catch (IOException e) {
+            closeSilently();
+        }
+    }
+
+    /** Activa la compresión de snapshots para esta conexión */
+    public synchronized void enableCompression(int level, CompressionBudget budget) {
+        if (deflater != null) deflater.end();
+        deflater = new Deflater(level, true); // raw deflate: sin cabecera zlib por frame
+        compressionBudget = budget;
+    }
+
+    /**
+     * Envía un frame de tick (varias líneas). Con compresión activa y
+     * presupuesto disponible viaja como una sola línea "Z <base64>".
+     */
+    public synchronized void sendFrame(String frame) {
+        if (deflater == null || !compressionBudget.tryAcquire()) {
+            send(frame);
+            return;
+        }
+        long t0 = System.nanoTime();
+        byte[] raw = frame.getBytes(StandardCharsets.UTF_8);
+        deflater.setInput(raw);
+        int len = 0;
+        while (true) {
+            len += deflater.deflate(deflateBuf, len, deflateBuf.length - len, Deflater.SYNC_FLUSH);
+            if (len < deflateBuf.length) break;
+            deflateBuf = Arrays.copyOf(deflateBuf, deflateBuf.length * 2);
+        }
+        String encoded = Base64.getEncoder().encodeToString(Arrays.copyOf(deflateBuf, len));
+        compressionBudget.charge(System.nanoTime() - t0);
+        send("Z " + encoded + "\n");
+    }
+
     public void closeSilently() {
         running = false;
         try {
@@ -57,25 +296,90 @@ public class ClientSession {
         }
     }
 
+    /**
+     * Una ficha por INPUT, llegue por TCP o por UDP; se recargan a
+     * INPUT_PER_SEC hasta INPUT_BURST. Sin ficha el input se descarta y se cuenta.
+     */
+    public boolean takeInputToken() {
+        synchronized (inputLock) {
+            long now = System.nanoTime();
+            inputTokens = Math.min(INPUT_BURST, inputTokens + (now - inputRefillNs) / 1e9 * INPUT_PER_SEC);
+            inputRefillNs = now;
+            if (inputTokens >= 1) {
+                inputTokens -= 1;
+                return true;
+            }
+        }
+        server.onInputDropped();
+        return false;
+    }
+
     public void start() {
         Thread t = new Thread(() -> {
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-                String line;
-                while (running && (line = br.readLine()) != null) {
-                    line = line.trim();
-                    if (line.isEmpty()) {
+            try (InputStream in = socket.getInputStream()) {
+                CommandDecoder decoder = new CommandDecoder(in);
+                CommandDecoder.Command cmd;
+                while (running && (cmd = decoder.next()) != null) {
+                    heard();
+                    if (cmd == CommandDecoder.Command.INPUT && !spectator) {
+                        // camino caliente: sin String nuevos; las ráfagas se descartan
+                        if (takeInputToken()) {
+                            server.onInput(playerId, decoder.direction());
+                        }
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.PONG) {
+                        onPong(decoder.number());
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.SPECTATE) {
+                        server.onSpectate(playerId);
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.TOP) {
+                        // récords: también disponible para espectadores
+                        send(server.onTop(decoder.argument()));
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.METRICS) {
+                        send("METRICS " + server.getMetrics().report() + "\n");
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.METRICS_EVENTS) {
+                        send("METRICS " + server.getMetrics().events() + "\n");
                         continue;
                     }
-                    if (line.startsWith("JOIN ")) {
-                        String name = line.substring(5).trim();
-                        server.onJoin(playerId, name);
-                    } else if (line.startsWith("INPUT ")) {
-                        String dir = line.substring(6).trim();
-                        server.onInput(playerId, dir);
-                    } else if (line.startsWith("LEVEL ")) {
-                        String levelCmd = line.substring(6).trim();
-                        server.onLevelCommand(playerId, levelCmd);
-                    } else if (line.equals("QUIT")) {
+                    if (spectator && cmd != CommandDecoder.Command.QUIT) {
+                        send("ERR Spectators cannot play\n");
+                        continue;
+                    }
+                    if (cmd == CommandDecoder.Command.JOIN) {
+                        // JOIN <nombre> [DEFLATE <nivel>]
+                        String name = decoder.argument();
+                        int deflateLevel = -1;
+                        int opt = name.lastIndexOf(" DEFLATE ");
+                        if (opt != -1) {
+                            try {
+                                deflateLevel = Integer.parseInt(name.substring(opt + 9).trim());
+                                name = name.substring(0, opt).trim();
+                            } catch (NumberFormatException ignored) {
+                                // no era la opción, es parte del nombre
+                            }
+                        }
+                        server.onJoin(playerId, name, deflateLevel);
+                    } else if (cmd == CommandDecoder.Command.RESUME) {
+                        // RESUME <token> [versión de geometría] [DEFLATE <nivel>]: vuelve tras un corte
+                        server.onResume(playerId, decoder.argument());
+                    } else if (cmd == CommandDecoder.Command.LEVEL) {
+                        server.onLevelCommand(playerId, decoder.argument());
+                    } else if (cmd == CommandDecoder.Command.UDP || cmd == CommandDecoder.Command.UDP_OFF) {
+                        server.onUdp(playerId, cmd == CommandDecoder.Command.UDP);
+                    } else if (cmd == CommandDecoder.Command.SCORES) {
+                        // el cliente perdió la secuencia del marcador: completo en el próximo tick
+                        scoresVersionSent = -1;
+                    } else if (cmd == CommandDecoder.Command.VIEW) {
+                        server.onView(playerId, decoder.argument());
+                    } else if (cmd == CommandDecoder.Command.QUIT) {
                         server.onQuit(playerId);
                         break;
                     } else {
@@ -90,7 +394,12 @@ public class ClientSession {
                     socket.close();
                 } catch (IOException ignored) {
                 }
-                server.onQuit(playerId);
+                // sin QUIT, el jugador queda un rato en espera de un RESUME
+                server.onDisconnect(playerId);
+                synchronized (this) {
+                    if (deflater != null) deflater.end();
+                    deflater = null;
+                }
             }
         }, "ClientSession-" + playerId);
         t.setDaemon(true);
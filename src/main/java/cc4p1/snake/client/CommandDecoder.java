@@ -0,0 +1,220 @@
+package cc4p1.snake.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodifica los comandos de una conexión directamente sobre bytes.
+ * - un buffer por conexión que se reusa: las líneas se buscan y comparan en
+ *   el lugar, sin String intermedios
+ * - el comando se reconoce por sus primeros bytes; INPUT devuelve una de las
+ *   constantes de dirección (el camino caliente no asigna memoria)
+ * - PONG trae un número que se lee con number(), también sin String
+ * - solo JOIN/LEVEL/VIEW/TOP/RESUME, que son raros, arman un String con su argumento
+ * - una línea de más de MAX_LINE bytes se descarta entera (TOO_LONG)
+ *
+ * No es thread-safe: lo usa solo el hilo lector de la sesión.
+ */
+public class CommandDecoder {
+
+    public enum Command {
+        JOIN, INPUT, LEVEL, QUIT, SPECTATE, TOP, METRICS, METRICS_EVENTS, UDP, UDP_OFF, SCORES, VIEW, PONG, RESUME,
+        UNKNOWN,
+        TOO_LONG
+    }
+
+    public static final String UP = "UP";
+    public static final String DOWN = "DOWN";
+    public static final String LEFT = "LEFT";
+    public static final String RIGHT = "RIGHT";
+
+    static final int MAX_LINE = 4096;
+
+    private static final byte[] K_JOIN = ascii("JOIN");
+    private static final byte[] K_INPUT = ascii("INPUT");
+    private static final byte[] K_LEVEL = ascii("LEVEL");
+    private static final byte[] K_QUIT = ascii("QUIT");
+    private static final byte[] K_SPECTATE = ascii("SPECTATE");
+    private static final byte[] K_TOP = ascii("TOP");
+    private static final byte[] K_METRICS = ascii("METRICS");
+    private static final byte[] K_EVENTS = ascii("EVENTS");
+    private static final byte[] K_UDP = ascii("UDP");
+    private static final byte[] K_OFF = ascii("OFF");
+    private static final byte[] K_SCORES = ascii("SCORES");
+    private static final byte[] K_VIEW = ascii("VIEW");
+    private static final byte[] K_PONG = ascii("PONG");
+    private static final byte[] K_RESUME = ascii("RESUME");
+
+    private final InputStream in;
+    private final byte[] buf = new byte[MAX_LINE];
+    private int pos, limit;       // bytes leídos y no consumidos: [pos, limit)
+    private int lineStart, lineEnd; // línea actual (sin espacios a los lados)
+    private int argStart;           // argumento del comando actual (después del espacio)
+    private String direction;
+
+    public CommandDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    /** Siguiente comando (las líneas vacías se saltan), o null al cerrarse la conexión */
+    public Command next() throws IOException {
+        while (true) {
+            int nl = findNewline();
+            if (nl < 0) {
+                if (pos == 0 && limit == buf.length) {
+                    skipLine();
+                    return Command.TOO_LONG;
+                }
+                if (!fill()) return null;
+                continue;
+            }
+            int s = pos, e = nl;
+            pos = nl + 1;
+            while (s < e && isSpace(buf[s])) s++;
+            while (e > s && isSpace(buf[e - 1])) e--;
+            if (s == e) continue;
+            lineStart = s;
+            lineEnd = e;
+            return classify();
+        }
+    }
+
+    /** Dirección de un INPUT: UP/DOWN/LEFT/RIGHT (constantes), o null si no es válida */
+    public String direction() {
+        return direction;
+    }
+
+    /** Argumento numérico (PONG), o -1 si no es un entero no negativo */
+    public long number() {
+        int s = argStart;
+        while (s < lineEnd && isSpace(buf[s])) s++;
+        if (s >= lineEnd || lineEnd - s > 18) return -1;
+        long v = 0;
+        for (int i = s; i < lineEnd; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    /** Argumento del comando (JOIN/LEVEL/VIEW/TOP/RESUME), sin espacios a los lados; "" si no tiene */
+    public String argument() {
+        int s = argStart;
+        while (s < lineEnd && isSpace(buf[s])) s++;
+        return s >= lineEnd ? "" : new String(buf, s, lineEnd - s, StandardCharsets.UTF_8);
+    }
+
+    private Command classify() {
+        direction = null;
+        argStart = lineEnd;
+        if (keyword(K_INPUT, true)) {
+            direction = parseDirection();
+            return Command.INPUT;
+        }
+        if (keyword(K_PONG, true)) return Command.PONG;
+        if (keyword(K_JOIN, true)) return Command.JOIN;
+        if (keyword(K_LEVEL, true)) return Command.LEVEL;
+        if (keyword(K_QUIT, false)) return Command.QUIT;
+        if (keyword(K_SPECTATE, false)) return Command.SPECTATE;
+        if (keyword(K_SCORES, false)) return Command.SCORES;
+        if (keyword(K_VIEW, true)) return Command.VIEW;
+        if (keyword(K_RESUME, true)) return Command.RESUME;
+        if (keyword(K_TOP, false) || keyword(K_TOP, true)) return Command.TOP;
+        if (keyword(K_METRICS, false)) return Command.METRICS;
+        if (keyword(K_METRICS, true) && rest(K_EVENTS)) return Command.METRICS_EVENTS;
+        if (keyword(K_UDP, false)) return Command.UDP;
+        if (keyword(K_UDP, true) && rest(K_OFF)) return Command.UDP_OFF;
+        return Command.UNKNOWN;
+    }
+
+    // La línea es exactamente 'k' (withArg = false) o empieza con 'k' + espacio (withArg = true)
+    private boolean keyword(byte[] k, boolean withArg) {
+        int len = lineEnd - lineStart;
+        if (withArg ? len <= k.length || buf[lineStart + k.length] != ' ' : len != k.length) return false;
+        for (int i = 0; i < k.length; i++) {
+            if (buf[lineStart + i] != k[i]) return false;
+        }
+        argStart = lineStart + k.length + 1;
+        return true;
+    }
+
+    // El argumento es exactamente 'k'
+    private boolean rest(byte[] k) {
+        int s = argStart;
+        while (s < lineEnd && isSpace(buf[s])) s++;
+        if (lineEnd - s != k.length) return false;
+        for (int i = 0; i < k.length; i++) {
+            if (buf[s + i] != k[i]) return false;
+        }
+        return true;
+    }
+
+    // Como antes con trim().toUpperCase(): acepta mayúsculas o minúsculas
+    private String parseDirection() {
+        int s = argStart;
+        while (s < lineEnd && isSpace(buf[s])) s++;
+        int len = lineEnd - s;
+        if (len < 2 || len > 5) return null;
+        switch (buf[s] | 0x20) {
+            case 'u': return matches(s, "UP") ? UP : null;
+            case 'd': return matches(s, "DOWN") ? DOWN : null;
+            case 'l': return matches(s, "LEFT") ? LEFT : null;
+            case 'r': return matches(s, "RIGHT") ? RIGHT : null;
+            default: return null;
+        }
+    }
+
+    private boolean matches(int s, String upper) {
+        if (lineEnd - s != upper.length()) return false;
+        for (int i = 0; i < upper.length(); i++) {
+            if ((buf[s + i] & ~0x20) != upper.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int findNewline() {
+        for (int i = pos; i < limit; i++) {
+            if (buf[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    // Compacta lo pendiente al inicio del buffer y lee más; false al llegar al EOF
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) return false;
+        limit += n;
+        return true;
+    }
+
+    // Descarta hasta el próximo salto de línea (o el EOF)
+    private void skipLine() throws IOException {
+        pos = limit = 0;
+        while (true) {
+            int n = in.read(buf, 0, buf.length);
+            if (n < 0) return;
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n') {
+                    pos = i + 1;
+                    limit = n;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,62 +1,218 @@
 package cc4p1.snake.client;
 
+import cc4p1.snake.ui.CoalescingBoardUpdater;
 import cc4p1.snake.ui.IBoardUpdater;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Cliente que se conecta al servidor y maneja la comunicación
  */
 public class GameClient {
-    private final String host;
-    private final int port;
-    private final IBoardUpdater window;
-
-    private Socket socket;
-    private PrintWriter out;
+    // Jitter buffer: cuántos snapshots guardar y a qué tasa se dibuja
+    private static final boolean JITTER_ENABLED = Boolean.parseBoolean(System.getProperty("snake.jitter", "true"));
+    private static final int JITTER_SNAPSHOTS = Integer.getInteger("snake.jitter.snapshots", 8);
+    private static final int DISPLAY_FPS = Integer.getInteger("snake.client.fps", 60);
+    // Nivel de compresión a pedir en JOIN (-1 = sin compresión)
+    private static final int DEFLATE_LEVEL = Integer.getInteger("snake.deflate", -1);
+    // Área de interés "<ancho>x<alto>" (vacío = mundo completo)
+    private static final String VIEW = System.getProperty("snake.view", "");
+    // Transporte de snapshots: "udp" (con vuelta a TCP si falla) o "tcp"
+    private static final boolean USE_UDP = System.getProperty("snake.transport", "udp").equalsIgnoreCase("udp");
+    private static final long UDP_TIMEOUT_MS = Long.getLong("snake.udp.timeoutMs", 2000);
+    // Tras un corte: cuánto tiempo se reintenta reconectar con RESUME (0 = no reconectar)
+    private static final long RESUME_RETRY_MS = Long.getLong("snake.resume.retryMs", 10000);
+    // host:puerto de start() es un lobby: se pide la instancia menos cargada con este nivel (0 = cualquiera)
+    private static final boolean USE_LOBBY = Boolean.getBoolean("snake.lobby");
+    private static final int LOBBY_LEVEL = Integer.getInteger("snake.lobby.level", 0);
+
+    // la instancia de juego (si se entró por el lobby, la que este asignó)
+    private String host;
+    private int port;
+    private final CoalescingBoardUpdater window;
+
+    private volatile Socket socket;
+    private volatile PrintWriter out;
     private BufferedReader in;
+    // Token para retomar la sesión (llega en WELCOME y cada RESUMED) y nombre del último JOIN
+    private volatile String resumeToken;
+    private volatile String username;
 
     private volatile boolean running = true;
     private Thread listenerThread;
     private String currentDirection = "RIGHT"; // Dirección actual del snake
 
+    private final JitterBuffer jitterBuffer = new JitterBuffer(JITTER_SNAPSHOTS);
+    // Geometría del nivel actual (llega por GEOMETRY al unirse y al cambiar de nivel)
+    private volatile LevelGeometry geometry;
+
+    // Contexto de descompresión persistente (el diccionario sigue entre ticks)
+    private final Inflater inflater = new Inflater(true);
+    private byte[] inflateBuf = new byte[16384];
+    private Thread renderThread;
+
+    // Canal UDP (null mientras no haya handshake); udpActive = el servidor ya lo usa
+    private volatile UdpChannel udpChannel;
+    private volatile boolean udpActive = false;
+    private volatile int myId = -1;
+    // Marcador local (SCOREBOARD completo + SCOREDELTA cuando cambia)
+    private final ScoreTable scoreTable = new ScoreTable();
+    // Repetición: los frames llegan ya espaciados por el servidor, se dibujan al llegar
+    private volatile boolean replayMode = false;
+
     public GameClient(String host, int port, IBoardUpdater window) {
         this.host = host;
         this.port = port;
-        this.window = window;
+        // Buzón entre el hilo de red y el EDT: solo se dibuja el frame más nuevo
+        this.window = new CoalescingBoardUpdater(window);
     }
 
     public void start() throws IOException {
-        socket = new Socket(host, port);
-        socket.setTcpNoDelay(true);
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        if (USE_LOBBY) {
+            InetSocketAddress instance = findInstance(host, port, LOBBY_LEVEL);
+            host = instance.getHostString();
+            port = instance.getPort();
+        }
+        Socket s = new Socket(host, port);
+        s.setTcpNoDelay(true);
+        useSocket(s);
 
-        // Hilo que escucha mensajes del servidor
+        // Hilo que escucha mensajes del servidor; si la conexión se corta
+        // intenta retomar la sesión en otra
         listenerThread = new Thread(() -> {
-            try {
-                String line;
-                while (running && (line = in.readLine()) != null) {
-                    handleServerMessage(line);
+            while (running) {
+                boolean failed = false;
+                try {
+                    String line;
+                    while (running && (line = in.readLine()) != null) {
+                        handleServerMessage(line);
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    if (running) {
+                        System.err.println("Error en conexión: " + e.getMessage());
+                    }
                 }
-            } catch (IOException e) {
-                if (running) {
-                    System.err.println("Error en conexión: " + e.getMessage());
-                    window.updateBoard("Error: Conexión perdida");
+                if (!running) {
+                    return;
+                }
+                if (!reconnect()) {
+                    if (failed) {
+                        window.updateBoard("Error: Conexión perdida");
+                    }
+                    return;
                 }
             }
         }, "ClientListener");
         listenerThread.setDaemon(true);
         listenerThread.start();
+
+        if (JITTER_ENABLED) {
+            startRenderLoop();
+        }
+    }
+
+    /** Pide al lobby la instancia menos cargada que juega 'level' (0 = cualquiera) */
+    public static InetSocketAddress findInstance(String lobbyHost, int lobbyPort, int level) throws IOException {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(lobbyHost, lobbyPort), 3000);
+            s.setSoTimeout(3000);
+            PrintWriter w = new PrintWriter(s.getOutputStream(), true);
+            BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            w.println("FIND " + level);
+            String line = r.readLine();
+            w.println("QUIT");
+            if (line == null || !line.startsWith("REDIRECT ")) {
+                throw new IOException(line == null ? "El lobby cerró la conexión" : "Lobby: " + line);
+            }
+            // REDIRECT <host> <puerto>
+            String[] parts = line.substring(9).trim().split(" ");
+            System.out.println("Lobby: partida en " + parts[0] + ":" + parts[1]);
+            return new InetSocketAddress(parts[0], Integer.parseInt(parts[1]));
+        } catch (SocketTimeoutException e) {
+            throw new IOException("El lobby no respondió", e);
+        }
+    }
+
+    private void useSocket(Socket s) throws IOException {
+        socket = s;
+        in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+        out = new PrintWriter(s.getOutputStream(), true);
+    }
+
+    /**
+     * Reconecta al mismo servidor y presenta el token de RESUME (con la versión
+     * de geometría que ya tenemos, para no recibirla de nuevo). Reintenta con
+     * espera creciente hasta RESUME_RETRY_MS. Solo desde el hilo lector.
+     */
+    private boolean reconnect() {
+        String token = resumeToken;
+        if (token == null || RESUME_RETRY_MS <= 0) {
+            return false;
+        }
+        dropUdp();
+        long deadline = System.currentTimeMillis() + RESUME_RETRY_MS;
+        long backoffMs = 100;
+        while (running && System.currentTimeMillis() < deadline) {
+            Socket s = new Socket();
+            try {
+                s.connect(new InetSocketAddress(host, port), (int) Math.max(1, Math.min(2000, deadline - System.currentTimeMillis())));
+                s.setTcpNoDelay(true);
+                useSocket(s);
+                inflater.reset(); // la conexión nueva empieza otro stream de compresión
+                LevelGeometry g = geometry;
+                String cmd = "RESUME " + token + " " + (g == null ? -1 : g.version);
+                out.println(DEFLATE_LEVEL >= 0 ? cmd + " DEFLATE " + DEFLATE_LEVEL : cmd);
+                System.out.println("Conexión recuperada: retomando la sesión");
+                return true;
+            } catch (IOException e) {
+                try {
+                    s.close();
+                } catch (IOException ignored) {
+                }
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    return false;
+                }
+                backoffMs = Math.min(2000, backoffMs * 2);
+            }
+        }
+        System.err.println("No se pudo retomar la sesión");
+        return false;
+    }
+
+    // Cierra el canal UDP de la conexión anterior (el id y el token ya no valen)
+    private void dropUdp() {
+        UdpChannel channel = udpChannel;
+        udpChannel = null;
+        udpActive = false;
+        if (channel != null) {
+            channel.close();
+        }
     }
 
     private void handleServerMessage(String line) {
-        if (line.startsWith("BOARD ")) {
+        if (line.startsWith("Z ")) {
+            // Frame comprimido: se infla y se procesa línea por línea
+            for (String inner : inflateFrame(line.substring(2)).split("\n")) {
+                if (!inner.isEmpty()) handleServerMessage(inner);
+            }
+        } else if (line.startsWith("BOARD ")) {
             // El mensaje BOARD viene con todo el tablero en una línea, con \n como
             // separadores
+            // Con jitter buffer el tablero se dibuja desde STATE; BOARD se ignora
+            if (JITTER_ENABLED) return;
             String boardContent = line.substring(6); // Quitar "BOARD "
             String formattedBoard = boardContent.replace("\\n", "\n"); // Restaurar los saltos de línea
             System.out.println("Recibido BOARD, longitud: " + formattedBoard.length());
@@ -65,20 +221,96 @@ public class GameClient {
             // Mensaje: STATE { ...json... } (mantenemos por compatibilidad)
             String json = line.substring(6);
             System.out.println("Recibido STATE: " + json);
+            if (JITTER_ENABLED && !replayMode) {
+                // Se encola con la hora de llegada; el hilo de render decide cuándo mostrarlo
+                try {
+                    jitterBuffer.push(Snapshot.parse(json, geometry), System.currentTimeMillis());
+                } catch (Exception e) {
+                    System.err.println("Error parseando JSON: " + e.getMessage());
+                }
+                return;
+            }
             // Parsear y mostrar en el tablero
             window.updateBoard(parseGameState(json));
-        } else if (line.startsWith("WELCOME ")) {
-            String playerId = line.substring(8);
-            System.out.println("Bienvenido! Tu ID es: " + playerId);
+        } else if (line.startsWith("GEOMETRY ")) {
+            try {
+                LevelGeometry g = LevelGeometry.parse(line.substring(9));
+                geometry = g;
+                System.out.println("Recibida geometría del nivel " + g.level + " (v" + g.version + "), "
+                        + g.width + "x" + g.height);
+            } catch (RuntimeException e) {
+                System.err.println("Error parseando GEOMETRY: " + e.getMessage());
+            }
+        } else if (line.startsWith("WELCOME ") || line.startsWith("RESUMED ")) {
+            // WELCOME <id> [DEFLATE <nivel>] [RESUME <token>] | RESUMED <id> <token> [DEFLATE <nivel>]
+            boolean resumed = line.startsWith("RESUMED ");
+            jitterBuffer.clear(); // sesión nueva: sus ticks pueden ir por detrás de los guardados
+            String[] parts = line.substring(8).split(" ");
+            String playerId = parts[0];
+            System.out.println(resumed ? "Sesión retomada, ID " + playerId : "Bienvenido! Tu ID es: " + playerId);
+            for (int i = resumed ? 2 : 1; i + 1 < parts.length; i += 2) {
+                if (parts[i].equals("DEFLATE")) {
+                    System.out.println("Compresión de snapshots activa (nivel " + parts[i + 1] + ")");
+                } else if (parts[i].equals("RESUME")) {
+                    resumeToken = parts[i + 1];
+                }
+            }
+            if (resumed && parts.length > 1) {
+                resumeToken = parts[1];
+                sendView(); // la ventana de interés era de la conexión anterior
+            }
+            myId = Integer.parseInt(playerId);
+            if (USE_UDP) out.println("UDP");
+        } else if (line.equals("UDP OK")) {
+            if (!udpActive && udpChannel != null) {
+                udpActive = true;
+                System.out.println("Snapshots por UDP");
+            }
+        } else if (line.startsWith("UDP ")) {
+            // UDP <puerto> <token>: abrir el canal y completar el handshake
+            String[] parts = line.substring(4).split(" ");
+            startUdp(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } else if (line.startsWith("REPLAY ")) {
+            // REPLAY <partida> <tick> <velocidad> <ticks> | REPLAY END
+            replayMode = true;
+            System.out.println("Repetición: " + line.substring(7));
+        } else if (line.startsWith("MATCHES")) {
+            System.out.println("Partidas grabadas:" + line.substring(7));
+        } else if (line.startsWith("TOP ")) {
+            // TOP <nivel> <texto>: nivel 0 = récords históricos
+            String text = line.substring(4);
+            System.out.println(text.substring(text.indexOf(' ') + 1).replace("\\n", "\n"));
+        } else if (line.startsWith("PING ")) {
+            // latido del servidor: se devuelve tal cual para que mida el RTT
+            out.println("PONG " + line.substring(5));
+        } else if (line.startsWith("METRICS ")) {
+            System.out.println("Métricas del servidor: " + line.substring(8));
+        } else if (line.startsWith("SPECTATING ")) {
+            System.out.println("Modo espectador (ID " + line.substring(11).trim() + ")");
         } else if (line.startsWith("SCORE ")) {
             // Opcionalmente manejar scores en formato JSON (deprecated)
             String scoresJson = line.substring(6);
             System.out.println("Scores: " + scoresJson);
+        } else if (line.startsWith("SCOREBOARD ")) {
+            scoreTable.applyFull(line.substring(11));
+            window.updateScores(scoreTable.render());
+        } else if (line.startsWith("SCOREDELTA ")) {
+            ScoreTable.Result r = scoreTable.applyDelta(line.substring(11));
+            if (r == ScoreTable.Result.APPLIED) {
+                window.updateScores(scoreTable.render());
+            } else if (r == ScoreTable.Result.GAP && out != null) {
+                out.println("SCORES"); // se perdió la secuencia: pedir el completo
+            }
         } else if (line.startsWith("SCORES ")) {
             // Manejar puntajes en formato texto plano
             String scoresText = line.substring(7).replace("\\n", "\n");
             System.out.println("Scores text: " + scoresText);
             window.updateScores(scoresText);
+        } else if (line.startsWith("ERR Resume ")) {
+            // la espera venció (o el servidor no la ofrece): se vuelve a entrar
+            System.err.println("No se pudo retomar la sesión: " + line.substring(11));
+            resumeToken = null;
+            if (username != null) sendJoin(username);
         } else if (line.startsWith("ERR ")) {
             System.err.println("Error del servidor: " + line.substring(4));
         } else {
@@ -86,170 +318,135 @@ public class GameClient {
         }
     }
 
+    private String inflateFrame(String base64) {
+        try {
+            inflater.setInput(Base64.getDecoder().decode(base64));
+            int len = 0;
+            while (!inflater.needsInput()) {
+                if (len == inflateBuf.length) inflateBuf = Arrays.copyOf(inflateBuf, len * 2);
+                int n = inflater.inflate(inflateBuf, len, inflateBuf.length - len);
+                if (n == 0) break;
+                len += n;
+            }
+            return new String(inflateBuf, 0, len, StandardCharsets.UTF_8);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            System.err.println("Error descomprimiendo frame: " + e.getMessage());
+            return "";
+        }
+    }
+
     private String parseGameState(String json) {
-        // Parseo simple del JSON para renderizar el tablero
         // El servidor ya envía el estado, aquí lo formateamos para mostrar
-        // Por simplicidad, si el servidor envía el tablero renderizado, lo usamos
-        // directo
-        // Si no, tendríamos que parsear el JSON manualmente
-
-        // En este caso, vamos a construir el tablero desde el JSON
         try {
-            return buildBoardFromJson(json);
+            return Snapshot.parse(json, geometry).render();
         } catch (Exception e) {
             return "Error al parsear estado del juego";
         }
     }
 
-    private String buildBoardFromJson(String json) {
-        // Parseo manual simple del JSON
-        // Formato esperado:
-        // {"snakes":[{"id":1,"body":[[x,y],...]}],"fruits":[[x,y],...],"scores":{"1":0}}
-
-        int WIDTH  = extractInt(json, "\"width\":", 32);
-        int HEIGHT = extractInt(json, "\"height\":", 12);
-        char[][] board = new char[HEIGHT][WIDTH];
-
-        // Inicializar vacío
-        for (int y = 0; y < HEIGHT; y++)
-          for (int x = 0; x < WIDTH; x++)
-            board[y][x] = ' ';
-
-        
-
+    /**
+     * Abre el canal UDP y repite HELLO hasta que el servidor confirma. Luego
+     * vigila que sigan llegando snapshots; si no, vuelve a TCP.
+     */
+    private void startUdp(int udpPort, long token) {
+        final UdpChannel channel;
         try {
-            // --- paredes ---
-            int wallsStart = json.indexOf("\"walls\":[");
-            if (wallsStart != -1) {
-                int arrStart = wallsStart + 8; // '[' de "walls":[
-                int wallsEnd = findMatchingBracket(json, arrStart);
-                String wallsStr = json.substring(arrStart + 1, wallsEnd);
-                String[] pairs = wallsStr.split("\\],\\[");
-                for (String p : pairs) {
-                    String c = p.replace("[", "").replace("]", "").trim();
-                    if (c.isEmpty()) continue;
-                    String[] xy = c.split(",");
-                    int wx = Integer.parseInt(xy[0].trim());
-                    int wy = Integer.parseInt(xy[1].trim());
-                    if (wy >= 0 && wy < HEIGHT && wx >= 0 && wx < WIDTH) {
-                        board[wy][wx] = '#';
-                    }
+            channel = new UdpChannel(host, udpPort, myId, token, this::handleServerMessage);
+        } catch (IOException e) {
+            System.err.println("UDP no disponible, se usa TCP: " + e.getMessage());
+            out.println("UDP OFF");
+            return;
+        }
+        udpChannel = channel;
+        channel.start();
+        Thread t = new Thread(() -> {
+            try {
+                for (int i = 0; i < 10 && !udpActive && running; i++) {
+                    channel.sendHello();
+                    Thread.sleep(200);
                 }
-            }
-
-            // --- frutas ---
-            int fruitsStart = json.indexOf("\"fruits\":[");
-            if (fruitsStart != -1) {
-                int arrStart  = fruitsStart + 9; // '[' de "fruits":[
-                int fruitsEnd = findMatchingBracket(json, arrStart);
-                String fruitsStr = json.substring(arrStart + 1, fruitsEnd);
-                String[] fruitPairs = fruitsStr.split("\\],\\[");
-                for (String pair : fruitPairs) {
-                    String c = pair.replace("[", "").replace("]", "").trim();
-                    if (c.isEmpty()) continue;
-                    String[] coords = c.split(",");
-                    int x = Integer.parseInt(coords[0].trim());
-                    int y = Integer.parseInt(coords[1].trim());
-                    if (x >= 0 && x < WIDTH && y >= 0 && y < HEIGHT) {
-                        board[y][x] = 'F';
-                    }
+                while (udpActive && running && channel.getSilenceMs() < UDP_TIMEOUT_MS) {
+                    Thread.sleep(250);
                 }
+            } catch (InterruptedException e) {
+                return;
             }
+            if (!running || udpChannel != channel) return; // cerrado por reconexión
+            // sin handshake o sin snapshots: volver a TCP
+            System.err.println("UDP sin respuesta, se vuelve a TCP");
+            udpActive = false;
+            udpChannel = null;
+            channel.close();
+            out.println("UDP OFF");
+        }, "ClientUdpWatchdog");
+        t.setDaemon(true);
+        t.start();
+    }
 
-            // Extraer serpientes
-            int snakesStart = json.indexOf("\"snakes\":[");
-            if (snakesStart != -1) {
-                int snakesEnd = findMatchingBracket(json, snakesStart + 9);
-                String snakesStr = json.substring(snakesStart + 10, snakesEnd);
-
-                // Dividir por serpientes (cada una es un objeto {})
-                int depth = 0;
-                int start = 0;
-                for (int i = 0; i < snakesStr.length(); i++) {
-                    char c = snakesStr.charAt(i);
-                    if (c == '{')
-                        depth++;
-                    else if (c == '}') {
-                        depth--;
-                        if (depth == 0) {
-                            String snakeObj = snakesStr.substring(start, i + 1);
-                            parseSnake(snakeObj, board, WIDTH, HEIGHT);
-                            start = i + 2; // saltar },
-                        }
+    /** Hilo de render a la tasa de pantalla: muestrea el jitter buffer e interpola */
+    private void startRenderLoop() {
+        long periodMs = Math.max(1, 1000L / DISPLAY_FPS);
+        renderThread = new Thread(() -> {
+            char[][] lastGrid = null;
+            while (running) {
+                Snapshot frame = jitterBuffer.sample(System.currentTimeMillis());
+                if (frame != null) {
+                    char[][] grid = frame.renderGrid();
+                    // solo repintar si cambió algo respecto al último frame mostrado
+                    if (!Arrays.deepEquals(grid, lastGrid)) {
+                        lastGrid = grid;
+                        window.updateCells(grid);
                     }
                 }
+                try {
+                    Thread.sleep(periodMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
             }
+        }, "ClientRender");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error parseando JSON: " + e.getMessage());
-        }
-
-        // Convertir matriz a String
-        StringBuilder sb = new StringBuilder();
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                sb.append(board[y][x]);
+    public void sendJoin(String username) {
+        this.username = username;
+        if (out != null) {
+            if (DEFLATE_LEVEL >= 0) {
+                out.println("JOIN " + username + " DEFLATE " + DEFLATE_LEVEL);
+            } else {
+                out.println("JOIN " + username);
             }
-            sb.append("\n");
+            sendView();
         }
-        return sb.toString();
     }
 
-    private void parseSnake(String snakeObj, char[][] board, int WIDTH, int HEIGHT) {
-        try {
-            // Extraer ID
-            int idStart = snakeObj.indexOf("\"id\":");
-            int idEnd = snakeObj.indexOf(",", idStart);
-            int playerId = Integer.parseInt(snakeObj.substring(idStart + 5, idEnd).trim());
-            char symbol = (char) ('0' + (playerId % 10));
-
-            // Extraer body
-            int bodyStart = snakeObj.indexOf("\"body\":[");
-            int bodyEnd = findMatchingBracket(snakeObj, bodyStart + 7);
-            String bodyStr = snakeObj.substring(bodyStart + 8, bodyEnd);
-
-            String[] points = bodyStr.split("\\],\\[");
-            boolean isHead = true;
-            for (String point : points) {
-                point = point.replace("[", "").replace("]", "");
-                if (!point.isEmpty()) {
-                    String[] coords = point.split(",");
-                    if (coords.length == 2) {
-                        int x = Integer.parseInt(coords[0].trim());
-                        int y = Integer.parseInt(coords[1].trim());
-                        if (x >= 0 && x < WIDTH && y >= 0 && y < HEIGHT) {
-                            if (isHead) {
-                                board[y][x] = symbol; // Cabeza con el ID
-                                isHead = false;
-                            } else {
-                                board[y][x] = 's'; // Cuerpo
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error parseando serpiente: " + e.getMessage());
+    // Pedir solo la ventana alrededor de la cabeza (mapas grandes)
+    private void sendView() {
+        String[] wh = VIEW.toLowerCase().split("x");
+        if (wh.length == 2) {
+            out.println("VIEW " + wh[0].trim() + " " + wh[1].trim());
         }
     }
 
-    private int findMatchingBracket(String str, int start) {
-        int depth = 1;
-        for (int i = start + 1; i < str.length(); i++) {
-            if (str.charAt(i) == '[' || str.charAt(i) == '{')
-                depth++;
-            else if (str.charAt(i) == ']' || str.charAt(i) == '}') {
-                depth--;
-                if (depth == 0)
-                    return i;
-            }
+    /** Observa la partida sin jugar (snapshots a menor ritmo) */
+    public void sendSpectate() {
+        if (out != null) {
+            out.println("SPECTATE");
         }
-        return str.length() - 1;
     }
 
-    public void sendJoin(String username) {
+    /** Solo contra el puerto de repeticiones: LIST / WATCH / SEEK / SPEED */
+    public void sendReplayCommand(String cmd) {
         if (out != null) {
-            out.println("JOIN " + username);
+            out.println(cmd);
+        }
+    }
+
+    /** Pide los récords: level 0 = históricos */
+    public void sendTop(int level, int count) {
+        if (out != null && running) {
+            out.println("TOP " + level + " " + count);
         }
     }
 
@@ -275,7 +472,12 @@ public class GameClient {
             }
 
             if (!isOppositeDirection) {
-                out.println("INPUT " + dir);
+                UdpChannel channel = udpChannel;
+                if (udpActive && channel != null) {
+                    channel.sendInput(dir);
+                } else {
+                    out.println("INPUT " + dir);
+                }
                 String previousDirection = currentDirection;
                 currentDirection = dir; // Actualizar la dirección actual
                 System.out.println("Cliente: Enviando dirección " + dir + " (anterior: " + previousDirection + ")");
@@ -286,6 +488,7 @@ public class GameClient {
     }
 
     public void sendQuit() {
+        resumeToken = null; // salida voluntaria: no reconectar
         if (out != null && running) {
             out.println("QUIT");
         }
@@ -298,8 +501,17 @@ public class GameClient {
         }
     }
 
+    public long getCoalescedFrames() {
+        return window.getCoalescedFrames();
+    }
+
     public void stop() {
         running = false;
+        UdpChannel channel = udpChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        System.out.println("Frames descartados por coalescencia: " + window.getCoalescedFrames());
         try {
             if (socket != null && !socket.isClosed()) {
                 socket.close();
@@ -307,18 +519,5 @@ public class GameClient {
         } catch (IOException ignored) {
         }
     }
-    
-    private int extractInt(String json, String key, int fallback) {
-        int i = json.indexOf(key);
-        if (i == -1) return fallback;
-        i += key.length();
-        StringBuilder num = new StringBuilder();
-        while (i < json.length()) {
-            char c = json.charAt(i++);
-            if ((c >= '0' && c <= '9') || c == '-') num.append(c);
-            else break;
-        }
-        try { return Integer.parseInt(num.toString()); } catch (Exception e) { return fallback; }
-    }
 
 }
\ No newline at end of file
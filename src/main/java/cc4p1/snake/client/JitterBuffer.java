@@ -0,0 +1,123 @@
+package cc4p1.snake.client;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Buffer de snapshots del lado del cliente para suavizar el jitter de red.
+ * - guarda hasta 'capacity' snapshots ordenados por tick
+ * - el render pide el estado para "ahora - retardo" y se interpola entre
+ *   los dos ticks que rodean ese instante
+ * - el retardo se adapta al jitter medido (estilo RFC 3550)
+ *
+ * Todas las horas están en milisegundos. La hora del servidor y la local no
+ * necesitan estar sincronizadas: se estima el desfase con los propios snapshots.
+ */
+public class JitterBuffer {
+    private static final double JITTER_GAIN = 1.0 / 16;   // suavizado del jitter
+    private static final double INTERVAL_GAIN = 1.0 / 8;  // suavizado del periodo entre ticks
+    private static final double OFFSET_DRIFT = 1.0 / 64;  // el desfase sube lento, baja de golpe
+    private static final double JITTER_MARGIN = 2.0;      // cuántos "jitters" de colchón
+
+    private final int capacity;
+    private final ArrayDeque<Snapshot> buffer;
+
+    private boolean hasOffset = false;
+    private double offsetMs;        // llegada local - hora del servidor (mínimo suavizado)
+    private double lastTransitMs;
+    private double jitterMs = 0;
+    private double intervalMs = 100;
+    private long lastServerTime = -1;
+
+    public JitterBuffer(int capacity) {
+        this.capacity = Math.max(2, capacity);
+        this.buffer = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Descarta los snapshots y las estimaciones: tras reconectar (RESUME, JOIN
+     * de nuevo o un servidor restaurado) los ticks pueden ir por detrás de los guardados.
+     */
+    public synchronized void clear() {
+        buffer.clear();
+        hasOffset = false;
+        jitterMs = 0;
+        intervalMs = 100;
+        lastServerTime = -1;
+    }
+
+    /** Inserta un snapshot recién llegado (hilo de red) */
+    public synchronized void push(Snapshot s, long arrivalMs) {
+        Snapshot newest = buffer.peekLast();
+        if (newest != null && s.tick < newest.tick) {
+            return; // llegó tarde, ya no sirve
+        }
+        if (newest != null && s.tick == newest.tick) {
+            // mismo tick reenviado (p.ej. sin jugadores o cambio de nivel): reemplazar
+            // sin tocar las estimaciones, el reloj del servidor no avanzó
+            buffer.pollLast();
+            buffer.addLast(s);
+            return;
+        }
+        buffer.addLast(s);
+        while (buffer.size() > capacity) {
+            buffer.pollFirst();
+        }
+        updateEstimates(s.serverTime, arrivalMs);
+    }
+
+    private void updateEstimates(long serverTime, long arrivalMs) {
+        double transit = arrivalMs - serverTime;
+        if (!hasOffset) {
+            offsetMs = transit;
+            lastTransitMs = transit;
+            hasOffset = true;
+        } else {
+            double d = Math.abs(transit - lastTransitMs);
+            jitterMs += (d - jitterMs) * JITTER_GAIN;
+            lastTransitMs = transit;
+            if (transit < offsetMs) offsetMs = transit;
+            else offsetMs += (transit - offsetMs) * OFFSET_DRIFT;
+        }
+        if (lastServerTime >= 0 && serverTime > lastServerTime) {
+            intervalMs += ((serverTime - lastServerTime) - intervalMs) * INTERVAL_GAIN;
+        }
+        lastServerTime = serverTime;
+    }
+
+    /** Retardo de render actual: un periodo de tick más el colchón de jitter */
+    public synchronized double getDelayMs() {
+        double maxDelay = intervalMs * (capacity - 1);
+        return Math.min(maxDelay, intervalMs + JITTER_MARGIN * jitterMs);
+    }
+
+    public synchronized double getJitterMs() {
+        return jitterMs;
+    }
+
+    /**
+     * Estado a mostrar en el instante local nowMs, o null si aún no hay datos.
+     */
+    public synchronized Snapshot sample(long nowMs) {
+        if (buffer.isEmpty()) return null;
+        double renderTime = nowMs - offsetMs - getDelayMs();
+
+        Snapshot before = null;
+        Snapshot after = null;
+        Iterator<Snapshot> it = buffer.iterator();
+        while (it.hasNext()) {
+            Snapshot s = it.next();
+            if (s.serverTime <= renderTime) {
+                before = s;
+            } else {
+                after = s;
+                break;
+            }
+        }
+        if (before == null) return buffer.peekFirst(); // aún no llegamos al más viejo
+        if (after == null) return before;              // sin datos nuevos: mantener el último
+        double span = after.serverTime - before.serverTime;
+        double alpha = span <= 0 ? 1 : (renderTime - before.serverTime) / span;
+        return Snapshot.interpolate(before, after, alpha);
+    }
+}
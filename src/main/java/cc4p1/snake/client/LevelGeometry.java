@@ -0,0 +1,45 @@
+package cc4p1.snake.client;
+
+/**
+ * Paredes de un nivel, recibidas una sola vez por mensaje GEOMETRY.
+ * Formato: GEOMETRY <nivel> <versión> <ancho> <alto> <filas separadas por \n escapado>
+ * Los STATE de cada tick solo traen "level" y "levelVersion".
+ */
+public class LevelGeometry {
+    public final int level;
+    public final int version;
+    public final int width;
+    public final int height;
+    public final boolean[][] walls; // compartido por todos los snapshots: solo lectura
+
+    public LevelGeometry(int level, int version, int width, int height, boolean[][] walls) {
+        this.level = level;
+        this.version = version;
+        this.width = width;
+        this.height = height;
+        this.walls = walls;
+    }
+
+    public boolean matches(int level, int version) {
+        return this.level == level && this.version == version;
+    }
+
+    /** Parsea lo que viene después de "GEOMETRY " */
+    public static LevelGeometry parse(String payload) {
+        String[] head = payload.split(" ", 5);
+        int level = Integer.parseInt(head[0]);
+        int version = Integer.parseInt(head[1]);
+        int width = Integer.parseInt(head[2]);
+        int height = Integer.parseInt(head[3]);
+        String[] rows = (head.length > 4 ? head[4] : "").split("\\\\n", -1);
+
+        boolean[][] walls = new boolean[height][width];
+        for (int y = 0; y < height && y < rows.length; y++) {
+            String row = rows[y];
+            for (int x = 0; x < width && x < row.length(); x++) {
+                walls[y][x] = row.charAt(x) == '#';
+            }
+        }
+        return new LevelGeometry(level, version, width, height, walls);
+    }
+}
@@ -0,0 +1,89 @@
+package cc4p1.snake.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia local del marcador: se arma con SCOREBOARD y se mantiene con los
+ * SCOREDELTA que manda el servidor solo cuando algo cambia (ver
+ * server.Scoreboard para el formato).
+ */
+public class ScoreTable {
+
+    /** Resultado de aplicar un SCOREDELTA */
+    public enum Result { APPLIED, STALE, GAP }
+
+    private static final class Row {
+        final int id;
+        final int score;
+        final String name;
+
+        Row(int id, int score, String name) {
+            this.id = id;
+            this.score = score;
+            this.name = name;
+        }
+    }
+
+    private final Map<Integer, Row> rows = new HashMap<>();
+    private String levelInfo = "";
+    private long version = -1;
+
+    /** SCOREBOARD <versión>\t... : reemplaza todo */
+    public synchronized void applyFull(String payload) {
+        String[] fields = payload.split("\t");
+        long v = Long.parseLong(fields[0].trim());
+        if (v < version) return; // llegó uno más nuevo por otro canal
+        rows.clear();
+        apply(fields);
+        version = v;
+    }
+
+    /** SCOREDELTA <versión>\t... : solo vale sobre la versión anterior */
+    public synchronized Result applyDelta(String payload) {
+        String[] fields = payload.split("\t");
+        long v = Long.parseLong(fields[0].trim());
+        // sin SCOREBOARD todavía: el servidor lo manda en el próximo tick
+        if (v <= version || version < 0) return Result.STALE;
+        if (v != version + 1) return Result.GAP;
+        apply(fields);
+        version = v;
+        return Result.APPLIED;
+    }
+
+    private void apply(String[] fields) {
+        for (int i = 1; i < fields.length; i++) {
+            String f = fields[i];
+            if (f.isEmpty()) continue;
+            if (f.charAt(0) == 'L') {
+                levelInfo = f.substring(1);
+            } else if (f.charAt(0) == '-') {
+                rows.remove(Integer.parseInt(f.substring(1)));
+            } else {
+                int a = f.indexOf(' ');
+                int b = f.indexOf(' ', a + 1);
+                int id = Integer.parseInt(f.substring(0, a));
+                rows.put(id, new Row(id, Integer.parseInt(f.substring(a + 1, b)), f.substring(b + 1)));
+            }
+        }
+    }
+
+    /** Mismo texto que mostraba SCORES: ranking por puntaje */
+    public synchronized String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== ").append(levelInfo).append(" ===\n\n");
+        if (rows.isEmpty()) {
+            sb.append("No hay jugadores conectados");
+            return sb.toString();
+        }
+        List<Row> ranked = new ArrayList<>(rows.values());
+        ranked.sort((x, y) -> x.score != y.score ? Integer.compare(y.score, x.score) : Integer.compare(x.id, y.id));
+        sb.append("=== PUNTAJES ===\n");
+        for (Row r : ranked) {
+            sb.append("Jugador (").append(r.name).append("): ").append(r.score).append(" puntos\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,410 @@
+package cc4p1.snake.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estado del mundo recibido en un mensaje STATE, ya parseado.
+ * - tick y hora del servidor (para el jitter buffer)
+ * - serpientes, frutas y paredes en coordenadas del tablero
+ * - sabe interpolarse con otro snapshot y dibujarse como texto
+ */
+public class Snapshot {
+
+    /**
+     * Serpiente dentro de un snapshot: cabeza en xs[0], ys[0]. En snapshots
+     * recortados (VIEW) solo llegan algunos segmentos y idx dice cuál es cada uno.
+     */
+    public static final class SnakeView {
+        public final int id;
+        public final char letter;
+        public final int[] xs;
+        public final int[] ys;
+        public final int[] idx; // null = cuerpo completo y contiguo
+
+        public SnakeView(int id, char letter, int[] xs, int[] ys) {
+            this(id, letter, xs, ys, null);
+        }
+
+        public SnakeView(int id, char letter, int[] xs, int[] ys, int[] idx) {
+            this.id = id;
+            this.letter = letter;
+            this.xs = xs;
+            this.ys = ys;
+            this.idx = idx;
+        }
+
+        boolean isHead(int k) {
+            return idx == null ? k == 0 : idx[k] == 0;
+        }
+    }
+
+    /** Ventana del área de interés (origen en coordenadas del mundo) y minimapa */
+    public static final class View {
+        public final int x, y, w, h;
+        public final String[] minimap;
+
+        public View(int x, int y, int w, int h, String[] minimap) {
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.minimap = minimap;
+        }
+    }
+
+    public final long tick;
+    public final long serverTime;
+    public final int width;
+    public final int height;
+    public final boolean[][] walls;
+    public final List<SnakeView> snakes;
+    public final int[] fruitX;
+    public final int[] fruitY;
+    public final int[] fruitScore;
+    public final View view; // null = mundo completo
+
+    public Snapshot(long tick, long serverTime, int width, int height, boolean[][] walls,
+            List<SnakeView> snakes, int[] fruitX, int[] fruitY, int[] fruitScore) {
+        this(tick, serverTime, width, height, walls, snakes, fruitX, fruitY, fruitScore, null);
+    }
+
+    public Snapshot(long tick, long serverTime, int width, int height, boolean[][] walls,
+            List<SnakeView> snakes, int[] fruitX, int[] fruitY, int[] fruitScore, View view) {
+        this.view = view;
+        this.tick = tick;
+        this.serverTime = serverTime;
+        this.width = width;
+        this.height = height;
+        this.walls = walls;
+        this.snakes = snakes;
+        this.fruitX = fruitX;
+        this.fruitY = fruitY;
+        this.fruitScore = fruitScore;
+    }
+
+    // ---------------------------------------------------------------------
+    // Parseo manual del JSON de STATE (sin librerías)
+    // {"tick":N,"time":T,"snakes":[{"id":1,"body":[[x,y],...],"letter":"a"}],
+    //  "fruits":[[x,y,s],...],"scores":{...},"width":W,"height":H,
+    //  "level":L,"levelVersion":V}
+    // Las paredes llegan aparte (GEOMETRY); si el STATE trae "walls" se usan esas.
+    // Con VIEW llega además "view":[x,y,w,h], "minimap":"fila|fila|..." y cada
+    // serpiente trae "segs":[[x,y,índice],...] en vez de "body".
+    // ---------------------------------------------------------------------
+
+    public static Snapshot parse(String json) {
+        return parse(json, null);
+    }
+
+    public static Snapshot parse(String json, LevelGeometry geometry) {
+        long tick = extractLong(json, "\"tick\":", 0);
+        long time = extractLong(json, "\"time\":", 0);
+        int width = (int) extractLong(json, "\"width\":", 32);
+        int height = (int) extractLong(json, "\"height\":", 12);
+
+        // --- paredes ---
+        boolean[][] walls;
+        int level = (int) extractLong(json, "\"level\":", -1);
+        int levelVersion = (int) extractLong(json, "\"levelVersion\":", -1);
+        if (json.contains("\"walls\":[")) {
+            walls = new boolean[height][width];
+            int[] wallCoords = parsePairs(json, "\"walls\":[", 2);
+            for (int i = 0; i + 1 < wallCoords.length; i += 2) {
+                int wx = wallCoords[i], wy = wallCoords[i + 1];
+                if (wy >= 0 && wy < height && wx >= 0 && wx < width) {
+                    walls[wy][wx] = true;
+                }
+            }
+        } else if (geometry != null && geometry.matches(level, levelVersion)
+                && geometry.width == width && geometry.height == height) {
+            walls = geometry.walls;
+        } else {
+            walls = new boolean[height][width]; // geometría aún no recibida
+        }
+
+        // --- frutas ---
+        int[] fruitCoords = parsePairs(json, "\"fruits\":[", 3);
+        int nf = fruitCoords.length / 3;
+        int[] fx = new int[nf], fy = new int[nf], fs = new int[nf];
+        for (int i = 0; i < nf; i++) {
+            fx[i] = fruitCoords[3 * i];
+            fy[i] = fruitCoords[3 * i + 1];
+            fs[i] = fruitCoords[3 * i + 2];
+        }
+
+        // --- serpientes ---
+        List<SnakeView> snakes = new ArrayList<>();
+        int snakesStart = json.indexOf("\"snakes\":[");
+        if (snakesStart != -1) {
+            int arrStart = snakesStart + 9;
+            int arrEnd = findMatchingBracket(json, arrStart);
+            int i = arrStart + 1;
+            while (i < arrEnd) {
+                int objStart = json.indexOf('{', i);
+                if (objStart == -1 || objStart > arrEnd) break;
+                int objEnd = findMatchingBracket(json, objStart);
+                SnakeView sv = parseSnake(json.substring(objStart, objEnd + 1));
+                if (sv != null) snakes.add(sv);
+                i = objEnd + 1;
+            }
+        }
+
+        // --- área de interés ---
+        View view = null;
+        int[] v = parsePairs(json, "\"view\":[", 4);
+        if (v.length == 4) {
+            String[] minimap = new String[0];
+            int mi = json.indexOf("\"minimap\":\"");
+            if (mi != -1) {
+                mi += 11;
+                minimap = json.substring(mi, json.indexOf('"', mi)).split("\\|");
+            }
+            view = new View(v[0], v[1], v[2], v[3], minimap);
+        }
+
+        return new Snapshot(tick, time, width, height, walls, snakes, fx, fy, fs, view);
+    }
+
+    private static SnakeView parseSnake(String obj) {
+        try {
+            int id = (int) extractLong(obj, "\"id\":", 0);
+            char letter = 'o';
+            int li = obj.indexOf("\"letter\":\"");
+            if (li != -1) {
+                li += 10;
+                if (obj.charAt(li) == '\\') li++;
+                letter = obj.charAt(li);
+            }
+            if (obj.contains("\"segs\":[")) {
+                int[] segs = parsePairs(obj, "\"segs\":[", 3);
+                int n = segs.length / 3;
+                int[] xs = new int[n], ys = new int[n], idx = new int[n];
+                for (int k = 0; k < n; k++) {
+                    xs[k] = segs[3 * k];
+                    ys[k] = segs[3 * k + 1];
+                    idx[k] = segs[3 * k + 2];
+                }
+                return new SnakeView(id, letter, xs, ys, idx);
+            }
+            int[] body = parsePairs(obj, "\"body\":[", 2);
+            int n = body.length / 2;
+            int[] xs = new int[n], ys = new int[n];
+            for (int k = 0; k < n; k++) {
+                xs[k] = body[2 * k];
+                ys[k] = body[2 * k + 1];
+            }
+            return new SnakeView(id, letter, xs, ys);
+        } catch (RuntimeException e) {
+            System.err.println("Error parseando serpiente: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lee un arreglo de tuplas numéricas [[a,b,..],[a,b,..]] que empieza en key.
+     * Las tuplas con menos de 'arity' valores se completan con 0.
+     */
+    private static int[] parsePairs(String json, String key, int arity) {
+        int start = json.indexOf(key);
+        if (start == -1) return new int[0];
+        int arrStart = start + key.length() - 1;
+        int arrEnd = findMatchingBracket(json, arrStart);
+
+        int[] out = new int[16];
+        int n = 0;
+        int slot = 0;
+        int value = 0;
+        boolean neg = false, inNumber = false;
+        for (int i = arrStart + 1; i < arrEnd; i++) {
+            char c = json.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inNumber = true;
+            } else if (c == '-') {
+                neg = true;
+            } else {
+                if (inNumber && slot < arity) {
+                    if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                    out[n++] = neg ? -value : value;
+                    slot++;
+                }
+                if (c == ']') {
+                    while (slot > 0 && slot < arity) {
+                        if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                        out[n++] = 0;
+                        slot++;
+                    }
+                    slot = 0;
+                }
+                value = 0;
+                neg = false;
+                inNumber = false;
+            }
+        }
+        if (inNumber && slot < arity) { // arreglo plano: [a,b,c,d]
+            if (n == out.length) out = Arrays.copyOf(out, n + 1);
+            out[n++] = neg ? -value : value;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Devuelve el índice del cierre que corresponde a str[start], ignorando strings */
+    static int findMatchingBracket(String str, int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) return i;
+            }
+        }
+        return str.length() - 1;
+    }
+
+    static long extractLong(String json, String key, long fallback) {
+        int i = json.indexOf(key);
+        if (i == -1) return fallback;
+        i += key.length();
+        int start = i;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if ((c >= '0' && c <= '9') || (c == '-' && i == start)) i++;
+            else break;
+        }
+        try { return Long.parseLong(json.substring(start, i)); } catch (NumberFormatException e) { return fallback; }
+    }
+
+    // ---------------------------------------------------------------------
+    // Interpolación y render
+    // ---------------------------------------------------------------------
+
+    /**
+     * Construye el snapshot intermedio entre a y b (alpha en [0,1]).
+     * Cada segmento se interpola respetando el wrap-around del tablero y se
+     * redondea a la celda más cercana; lo que aparece o desaparece entre
+     * ticks (serpientes, frutas, crecimiento) cambia en la mitad del intervalo.
+     */
+    public static Snapshot interpolate(Snapshot a, Snapshot b, double alpha) {
+        if (alpha <= 0) return a;
+        if (alpha >= 1 || a.width != b.width || a.height != b.height) return b;
+        boolean late = alpha >= 0.5;
+        // Las vistas recortadas solo traen segmentos sueltos: se cambia a mitad de tick
+        if (a.view != null || b.view != null) return late ? b : a;
+
+        List<SnakeView> out = new ArrayList<>();
+        for (SnakeView sb : b.snakes) {
+            SnakeView sa = find(a.snakes, sb.id);
+            if (sa == null) {
+                if (late) out.add(sb);
+                continue;
+            }
+            int len = late ? sb.xs.length : sa.xs.length;
+            int[] xs = new int[len], ys = new int[len];
+            for (int k = 0; k < len; k++) {
+                int ka = Math.min(k, sa.xs.length - 1);
+                int kb = Math.min(k, sb.xs.length - 1);
+                xs[k] = lerpWrapped(sa.xs[ka], sb.xs[kb], alpha, b.width);
+                ys[k] = lerpWrapped(sa.ys[ka], sb.ys[kb], alpha, b.height);
+            }
+            out.add(new SnakeView(sb.id, sb.letter, xs, ys));
+        }
+        if (!late) {
+            for (SnakeView sa : a.snakes) {
+                if (find(b.snakes, sa.id) == null) out.add(sa);
+            }
+        }
+
+        Snapshot fruitsFrom = late ? b : a;
+        long time = a.serverTime + Math.round((b.serverTime - a.serverTime) * alpha);
+        return new Snapshot(late ? b.tick : a.tick, time, b.width, b.height, b.walls, out,
+                fruitsFrom.fruitX, fruitsFrom.fruitY, fruitsFrom.fruitScore);
+    }
+
+    private static SnakeView find(List<SnakeView> list, int id) {
+        for (SnakeView s : list) {
+            if (s.id == id) return s;
+        }
+        return null;
+    }
+
+    private static int lerpWrapped(int from, int to, double alpha, int size) {
+        int d = to - from;
+        // si el salto es mayor que medio tablero, la serpiente cruzó el borde
+        if (d > size / 2) d -= size;
+        else if (d < -size / 2) d += size;
+        int v = (int) Math.round(from + d * alpha);
+        return ((v % size) + size) % size;
+    }
+
+    /** Dibuja el snapshot con los mismos símbolos que BOARD del servidor */
+    public char[][] renderGrid() {
+        if (view != null) return renderView();
+        char[][] board = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                board[y][x] = walls[y][x] ? '#' : ' ';
+            }
+        }
+        for (int i = 0; i < fruitX.length; i++) {
+            if (inside(fruitX[i], fruitY[i])) board[fruitY[i]][fruitX[i]] = (char) ('0' + fruitScore[i]);
+        }
+        for (SnakeView s : snakes) {
+            for (int k = 0; k < s.xs.length; k++) {
+                if (inside(s.xs[k], s.ys[k])) board[s.ys[k]][s.xs[k]] = (k == 0) ? 'O' : s.letter;
+            }
+        }
+        return board;
+    }
+
+    /** Solo la ventana de interés y, debajo, el minimapa */
+    private char[][] renderView() {
+        int w = view.w, h = view.h;
+        char[][] board = new char[h + 1 + view.minimap.length][];
+        for (int vy = 0; vy < h; vy++) {
+            board[vy] = new char[w];
+            int y = Math.floorMod(view.y + vy, height);
+            for (int vx = 0; vx < w; vx++) {
+                int x = Math.floorMod(view.x + vx, width);
+                board[vy][vx] = (y < walls.length && x < walls[y].length && walls[y][x]) ? '#' : ' ';
+            }
+        }
+        for (int i = 0; i < fruitX.length; i++) {
+            int vx = Math.floorMod(fruitX[i] - view.x, width), vy = Math.floorMod(fruitY[i] - view.y, height);
+            if (vx < w && vy < h) board[vy][vx] = (char) ('0' + fruitScore[i]);
+        }
+        for (SnakeView s : snakes) {
+            for (int k = 0; k < s.xs.length; k++) {
+                int vx = Math.floorMod(s.xs[k] - view.x, width), vy = Math.floorMod(s.ys[k] - view.y, height);
+                if (vx < w && vy < h) board[vy][vx] = s.isHead(k) ? 'O' : s.letter;
+            }
+        }
+        board[h] = new char[0];
+        for (int i = 0; i < view.minimap.length; i++) {
+            board[h + 1 + i] = view.minimap[i].toCharArray();
+        }
+        return board;
+    }
+
+    public String render() {
+        char[][] board = renderGrid();
+        StringBuilder sb = new StringBuilder(height * (width + 1));
+        for (char[] row : board) {
+            sb.append(row).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
@@ -0,0 +1,129 @@
+package cc4p1.snake.client;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Lado cliente del canal UDP (ver UdpTransport en el servidor).
+ * - recibe snapshots "S <seq> <ackInput>" y descarta los viejos o repetidos
+ * - envía inputs con los últimos REDUNDANCY repetidos en cada datagrama
+ * - si un input no fue confirmado, se reenvía al llegar el próximo snapshot
+ */
+public class UdpChannel {
+    private static final int REDUNDANCY = 3;
+    private static final int MAX_DATAGRAM = 65507;
+
+    private final DatagramSocket socket;
+    private final int playerId;
+    private final long token;
+    private final Consumer<String> onLine;
+    private volatile boolean running = true;
+
+    private long lastSnapshotSeq = 0;
+    private volatile long lastReceiveMs = System.currentTimeMillis();
+    private long droppedSnapshots = 0;
+
+    // Inputs recientes (el más nuevo primero) y su secuencia
+    private final String[] recentInputs = new String[REDUNDANCY];
+    private long inputSeq = 0;
+    private volatile long inputAck = 0;
+
+    public UdpChannel(String host, int port, int playerId, long token, Consumer<String> onLine) throws IOException {
+        this.socket = new DatagramSocket();
+        this.socket.connect(new InetSocketAddress(host, port));
+        this.socket.setSoTimeout(500);
+        this.playerId = playerId;
+        this.token = token;
+        this.onLine = onLine;
+    }
+
+    public void start() {
+        Thread t = new Thread(this::receiveLoop, "ClientUdp");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Parte del handshake: se repite hasta que llega "UDP OK" por TCP */
+    public void sendHello() {
+        send("HELLO " + playerId + " " + token);
+    }
+
+    public synchronized void sendInput(String dir) {
+        System.arraycopy(recentInputs, 0, recentInputs, 1, REDUNDANCY - 1);
+        recentInputs[0] = dir;
+        inputSeq++;
+        sendInputs();
+    }
+
+    private synchronized void resendIfUnacked() {
+        if (inputSeq > inputAck) sendInputs();
+    }
+
+    private void sendInputs() {
+        StringBuilder sb = new StringBuilder("I ").append(playerId).append(' ').append(token)
+                .append(' ').append(inputSeq);
+        for (String d : recentInputs) {
+            if (d != null) sb.append(' ').append(d);
+        }
+        send(sb.toString());
+    }
+
+    private void send(String msg) {
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        try {
+            socket.send(new DatagramPacket(bytes, bytes.length));
+        } catch (IOException e) {
+            // UDP es best-effort: el watchdog de GameClient decide si volver a TCP
+        }
+    }
+
+    private void receiveLoop() {
+        byte[] buf = new byte[MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        while (running) {
+            try {
+                packet.setLength(buf.length);
+                socket.receive(packet);
+                String msg = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                int nl = msg.indexOf('\n');
+                if (!msg.startsWith("S ") || nl == -1) continue;
+                String[] head = msg.substring(2, nl).split(" ");
+                long seq = Long.parseLong(head[0]);
+                inputAck = Long.parseLong(head[1]);
+                lastReceiveMs = System.currentTimeMillis();
+                if (seq <= lastSnapshotSeq) {
+                    droppedSnapshots++; // llegó tarde o duplicado: gana el más nuevo
+                    continue;
+                }
+                lastSnapshotSeq = seq;
+                resendIfUnacked();
+                for (String line : msg.substring(nl + 1).split("\n")) {
+                    if (!line.isEmpty()) onLine.accept(line);
+                }
+            } catch (SocketTimeoutException e) {
+                // permite revisar 'running'
+            } catch (IOException | RuntimeException e) {
+                if (running) System.err.println("UDP: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Milisegundos desde el último snapshot recibido por UDP */
+    public long getSilenceMs() {
+        return System.currentTimeMillis() - lastReceiveMs;
+    }
+
+    public long getDroppedSnapshots() {
+        return droppedSnapshots;
+    }
+
+    public void close() {
+        running = false;
+        socket.close();
+    }
+}
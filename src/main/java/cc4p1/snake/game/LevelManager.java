@@ -9,34 +9,51 @@ import java.util.*;
 public class LevelManager {
     private static final String LEVELS_DIR = "levels/";
 
-    // 🔹 NUEVO: describimos cada nivel con archivo + tick + maxFruits
+    // 🔹 NUEVO: describimos cada nivel con archivo + tick + maxFruits + bots
     private static final class LevelInfo {
         final String file;
         final int tickRateHz;
         final int maxFruits;
-        LevelInfo(String file, int tickRateHz, int maxFruits) {
+        final int bots;      // bots del servidor en este nivel
+        final int botSkill;  // 0-100: % de ticks en que el bot va derecho a la fruta
+        LevelInfo(String file, int tickRateHz, int maxFruits, int bots, int botSkill) {
             this.file = file; this.tickRateHz = tickRateHz; this.maxFruits = maxFruits;
+            this.bots = bots; this.botSkill = botSkill;
         }
     }
 
     private final List<LevelInfo> levels = new ArrayList<>();
     private int currentLevel;
+    private final boolean quiet; // sin mensajes de carga (re-simulaciones sin red)
 
     public LevelManager() {
+        this(false);
+    }
+
+    public LevelManager(boolean quiet) {
         this.currentLevel = 0;
+        this.quiet = quiet;
         loadAvailableLevels();
     }
 
     /** Carga la lista de niveles disponibles */
     private void loadAvailableLevels() {
         // 🔹 Ajusta valores a tu gusto (ejemplo: dificultad creciente)
-        levels.add(new LevelInfo("level1.txt", 3, 3));
-        levels.add(new LevelInfo("level2.txt", 3, 3));
-        levels.add(new LevelInfo("level3.txt", 5, 5));
-        levels.add(new LevelInfo("level4.txt", 10, 7));
-        levels.add(new LevelInfo("level5.txt", 12, 10));
+        levels.add(level("level1.txt", 3, 3, 1, 30));
+        levels.add(level("level2.txt", 3, 3, 2, 50));
+        levels.add(level("level3.txt", 5, 5, 3, 70));
+        levels.add(level("level4.txt", 10, 7, 4, 85));
+        levels.add(level("level5.txt", 12, 10, 6, 95));
+
+        if (!quiet) System.out.println("Niveles disponibles: " + levels.size());
+    }
 
-        System.out.println("Niveles disponibles: " + levels.size());
+    // Bots por nivel: se pisan con -Dsnake.levelN.bots / -Dsnake.levelN.botSkill
+    private LevelInfo level(String file, int tickRateHz, int maxFruits, int bots, int botSkill) {
+        int n = levels.size() + 1;
+        return new LevelInfo(file, tickRateHz, maxFruits,
+                Integer.getInteger("snake.level" + n + ".bots", bots),
+                Math.max(0, Math.min(100, Integer.getInteger("snake.level" + n + ".botSkill", botSkill))));
     }
 
     /** Carga un mapa desde archivo */
@@ -57,7 +74,7 @@ public class LevelManager {
                     map[y][x] = (x < row.length() ? row.charAt(x) : ' ');
                 }
             }
-            System.out.println("Nivel cargado: " + levelFile + " (" + width + "x" + height + ")");
+            if (!quiet) System.out.println("Nivel cargado: " + levelFile + " (" + width + "x" + height + ")");
             return map;
 
         } catch (IOException e) {
@@ -74,7 +91,7 @@ public class LevelManager {
                 map[y][x] = (y == 0 || y == 11 || x == 0 || x == 29) ? '#' : ' ';
             }
         }
-        System.out.println("Usando nivel por defecto");
+        if (!quiet) System.out.println("Usando nivel por defecto");
         return map;
     }
 
@@ -88,7 +105,7 @@ public class LevelManager {
     public void nextLevel() {
         if (!levels.isEmpty()) {
             currentLevel = (currentLevel + 1) % levels.size();
-            System.out.println("Cambiando a nivel: " + (currentLevel + 1));
+            if (!quiet) System.out.println("Cambiando a nivel: " + (currentLevel + 1));
         }
     }
 
@@ -98,11 +115,13 @@ public class LevelManager {
     public void setLevel(int levelNumber) {
         if (levelNumber >= 1 && levelNumber <= levels.size()) {
             currentLevel = levelNumber - 1;
-            System.out.println("Nivel establecido: " + levelNumber);
+            if (!quiet) System.out.println("Nivel establecido: " + levelNumber);
         }
     }
 
     // 🔹 NUEVO: getters para tick y frutas
     public int getCurrentTickRateHz() { return levels.get(currentLevel).tickRateHz; }
     public int getCurrentMaxFruits()  { return levels.get(currentLevel).maxFruits; }
+    public int getCurrentBots()       { return levels.get(currentLevel).bots; }
+    public int getCurrentBotSkill()   { return levels.get(currentLevel).botSkill; }
 }
@@ -0,0 +1,178 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Control de admisión de conexiones.
+ * - al aceptar (hilo aceptador): límite de conexiones abiertas y tasa de
+ *   conexiones por IP (cubeta de fichas); lo que sobra se rechaza escribiendo
+ *   una línea fija y cerrando, antes de crear la sesión, su hilo o sus buffers
+ * - al hacer JOIN / SPECTATE: cupo de jugadores y de espectadores
+ *
+ * Los contadores son atómicos: se consultan desde las sesiones y el reporte.
+ */
+public class Admission {
+  static final byte[] REJECT_FULL = "ERR Server full\n".getBytes(StandardCharsets.UTF_8);
+  static final byte[] REJECT_RATE = "ERR Too many connections\n".getBytes(StandardCharsets.UTF_8);
+
+  // cada cuántas conexiones se limpian las cubetas de IPs inactivas
+  private static final int SWEEP_EVERY = 1024;
+  private static final long IDLE_NS = 60_000_000_000L;
+
+  private static final class Bucket {
+    double tokens;
+    long lastNs;
+
+    Bucket(double tokens, long lastNs) {
+      this.tokens = tokens;
+      this.lastNs = lastNs;
+    }
+  }
+
+  private final int maxPlayers;
+  private final int maxSpectators;
+  private final int maxConnections;
+  private final double perIpPerSec;
+  private final double perIpBurst;
+
+  // solo el hilo aceptador toca las cubetas
+  private final Map<InetAddress, Bucket> buckets = new HashMap<>();
+  private int sinceSweep = 0;
+
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger players = new AtomicInteger();
+  private final AtomicInteger spectators = new AtomicInteger();
+  private final AtomicLong rejectedFull = new AtomicLong();
+  private final AtomicLong rejectedRate = new AtomicLong();
+
+  public Admission(int maxPlayers, int maxSpectators, double perIpPerSec, double perIpBurst) {
+    this.maxPlayers = maxPlayers;
+    this.maxSpectators = maxSpectators;
+    // también hay que dejar pasar a los que todavía no eligieron JOIN o SPECTATE
+    this.maxConnections = Math.min(PlayerIds.MAX_SLOTS, maxPlayers + maxSpectators);
+    this.perIpPerSec = perIpPerSec;
+    this.perIpBurst = Math.max(1, perIpBurst);
+  }
+
+  /**
+   * Decide sobre una conexión recién aceptada (solo desde el hilo aceptador).
+   * @return null si se admite (cuenta como conexión abierta hasta disconnected()),
+   *         o la línea de rechazo a escribir
+   */
+  public byte[] tryConnect(InetAddress ip) {
+    long now = System.nanoTime();
+    if (perIpPerSec > 0 && !takeToken(ip, now)) {
+      rejectedRate.incrementAndGet();
+      return REJECT_RATE;
+    }
+    while (true) {
+      int c = connections.get();
+      if (c >= maxConnections) {
+        rejectedFull.incrementAndGet();
+        return REJECT_FULL;
+      }
+      if (connections.compareAndSet(c, c + 1)) return null;
+    }
+  }
+
+  public void disconnected() {
+    connections.decrementAndGet();
+  }
+
+  /** Rechazo rápido: una línea sin buffers intermedios y cierre inmediato */
+  public static void reject(Socket s, byte[] line) {
+    try {
+      s.setSoLinger(true, 0); // sin TIME_WAIT ni espera por datos pendientes
+      OutputStream out = s.getOutputStream();
+      out.write(line);
+    } catch (IOException ignored) {
+    } finally {
+      try {
+        s.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  public boolean tryJoin() {
+    return tryTake(players, maxPlayers);
+  }
+
+  public void leftPlayers() {
+    players.decrementAndGet();
+  }
+
+  public boolean trySpectate() {
+    return tryTake(spectators, maxSpectators);
+  }
+
+  public void leftSpectators() {
+    spectators.decrementAndGet();
+  }
+
+  public int getPlayers() {
+    return players.get();
+  }
+
+  public int getSpectators() {
+    return spectators.get();
+  }
+
+  public int getConnections() {
+    return connections.get();
+  }
+
+  public long getRejected() {
+    return rejectedFull.get() + rejectedRate.get();
+  }
+
+  /** Agrega los contadores al reporte de métricas */
+  public void registerGauges(ServerMetrics metrics) {
+    metrics.gauge("conexiones", () -> connections.get() + "/" + maxConnections);
+    metrics.gauge("jugadores", () -> players.get() + "/" + maxPlayers);
+    metrics.gauge("espectadores", () -> spectators.get() + "/" + maxSpectators);
+    metrics.gauge("rechazos", () -> rejectedFull.get() + " llenos, " + rejectedRate.get() + " por tasa");
+  }
+
+  private static boolean tryTake(AtomicInteger counter, int max) {
+    while (true) {
+      int c = counter.get();
+      if (c >= max) return false;
+      if (counter.compareAndSet(c, c + 1)) return true;
+    }
+  }
+
+  private boolean takeToken(InetAddress ip, long now) {
+    if (++sinceSweep >= SWEEP_EVERY) {
+      sinceSweep = 0;
+      sweep(now);
+    }
+    Bucket b = buckets.get(ip);
+    if (b == null) {
+      b = new Bucket(perIpBurst, now);
+      buckets.put(ip, b);
+    } else {
+      b.tokens = Math.min(perIpBurst, b.tokens + (now - b.lastNs) / 1e9 * perIpPerSec);
+      b.lastNs = now;
+    }
+    if (b.tokens < 1) return false;
+    b.tokens -= 1;
+    return true;
+  }
+
+  // Una cubeta que lleva un rato sin uso ya estaría llena: se puede olvidar
+  private void sweep(long now) {
+    for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext();) {
+      if (now - it.next().lastNs > IDLE_NS) it.remove();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package cc4p1.snake.server;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Jugadores del servidor, sin socket: rellenan partidas y sirven de carga.
+ * - cada tick, antes de step(), eligen dirección con el DistanceField
+ *   compartido (bajar por el gradiente hacia la fruta más cercana)
+ * - solo miran la celda siguiente para no chocar con paredes, cuerpos ni
+ *   con lo que ya eligió otro bot en este tick
+ * - cantidad y habilidad por nivel (LevelManager); snake.bots multiplica la
+ *   cantidad (0 = sin bots)
+ * - un bot que muere reaparece a los RESPAWN_TICKS ticks
+ *
+ * Sus entradas pasan por GameState.applyInput como las de cualquier jugador,
+ * así que quedan en la grabación y el hash igual que las humanas.
+ */
+public class BotPlayers {
+  /** Los ids de bots empiezan aquí (los de clientes, ver PlayerIds, quedan por debajo) */
+  public static final int FIRST_ID = 1 << 30;
+  private static final int RESPAWN_TICKS = 10;
+
+  private static final String[] DIRS = { "UP", "DOWN", "LEFT", "RIGHT" };
+  private static final int[] DX = { 0, 0, -1, 1 };
+  private static final int[] DY = { -1, 1, 0, 0 };
+
+  private final int scale;
+  private final SplittableRandom rand;
+  private final DistanceField field = new DistanceField();
+  private final BitSet occupied = new BitSet();
+  private final BitSet alive = new BitSet();
+  private final int[] safeDirs = new int[4];
+  private long[] diedAt = new long[0]; // tick en que murió cada bot (-1 = vivo)
+  private int active;
+  private int fixedCount = -1; // >= 0: cantidad fija, sin mirar el nivel
+
+  public BotPlayers(int scale, long seed) {
+    this.scale = Math.max(0, scale);
+    this.rand = new SplittableRandom(StateHash.mix(seed ^ 0x5EEDB075L));
+  }
+
+  public static boolean isBot(int id) {
+    return id >= FIRST_ID;
+  }
+
+  /** Cantidad fija de bots en cualquier nivel (la usa el simulador por lotes) */
+  public void setFixedCount(int count) {
+    this.fixedCount = count;
+  }
+
+  public int getActive() {
+    return active;
+  }
+
+  /** Ajusta la cantidad al nivel y aplica las entradas de los bots (solo desde el hilo del tick) */
+  public void tick(GameState state) {
+    WorldSnapshot s = state.snapshot();
+    // altas, bajas y reapariciones publican una sola foto
+    state.beginBatch();
+    try {
+      int before = active;
+      resize(state, fixedCount >= 0 ? fixedCount : state.getCurrentBots() * scale);
+      alive.clear();
+      for (WorldSnapshot.SnakeView v : s.snakes) {
+        if (isBot(v.id)) alive.set(v.id - FIRST_ID);
+      }
+      // los recién creados no están en la foto anterior: no cuentan como muertos
+      for (int i = 0; i < Math.min(before, active); i++) {
+        if (alive.get(i)) {
+          diedAt[i] = -1;
+        } else if (diedAt[i] < 0) {
+          diedAt[i] = s.tick;
+        } else if (s.tick - diedAt[i] >= RESPAWN_TICKS) {
+          spawn(state, i);
+        }
+      }
+    } finally {
+      state.endBatch();
+    }
+    if (active == 0) return;
+    s = state.snapshot();
+
+    field.sync(s);
+    occupied.clear();
+    for (WorldSnapshot.SnakeView v : s.snakes) {
+      WorldSnapshot.Body b = v.body;
+      for (int i = 0; i < b.length(); i++) occupied.set(b.y(i) * s.width + b.x(i));
+    }
+    int skill = state.getCurrentBotSkill();
+    for (WorldSnapshot.SnakeView v : s.snakes) {
+      if (isBot(v.id)) steer(state, s, v, skill);
+    }
+  }
+
+  private void resize(GameState state, int want) {
+    if (want == active) return;
+    if (want > diedAt.length) {
+      long[] next = new long[Math.max(want, diedAt.length * 2)];
+      System.arraycopy(diedAt, 0, next, 0, diedAt.length);
+      diedAt = next;
+    }
+    while (active < want) {
+      spawn(state, active++);
+    }
+    while (active > want) {
+      state.removePlayer(FIRST_ID + --active);
+    }
+    if (!state.isQuiet()) System.out.println("Bots activos: " + active);
+  }
+
+  private void spawn(GameState state, int index) {
+    int id = FIRST_ID + index;
+    String name = "bot" + (index + 1);
+    state.addPlayer(id, name);
+    diedAt[index] = -1;
+  }
+
+  private void steer(GameState state, WorldSnapshot s, WorldSnapshot.SnakeView v, int skill) {
+    int hx = v.body.x(0), hy = v.body.y(0);
+    String current = state.getDirection(v.id);
+    int back = v.body.length() > 1 ? opposite(current) : -1;
+
+    int best = -1, bestDist = DistanceField.UNREACHABLE;
+    int safe = 0;
+    for (int d = 0; d < 4; d++) {
+      if (d == back) continue;
+      int nx = (hx + DX[d] + s.width) % s.width;
+      int ny = (hy + DY[d] + s.height) % s.height;
+      if (s.isWall(nx, ny) || occupied.get(ny * s.width + nx)) continue;
+      safeDirs[safe++] = d;
+      int dist = field.get(nx, ny);
+      // a igual distancia se queda con la dirección actual (menos giros)
+      if (best < 0 || dist < bestDist || (dist == bestDist && DIRS[d].equals(current))) {
+        best = d;
+        bestDist = dist;
+      }
+    }
+    if (best < 0) return; // encerrado: sigue derecho
+    if (rand.nextInt(100) >= skill) best = safeDirs[rand.nextInt(safe)];
+
+    occupied.set(((hy + DY[best] + s.height) % s.height) * s.width + (hx + DX[best] + s.width) % s.width);
+    if (!DIRS[best].equals(current)) state.applyInput(v.id, DIRS[best]);
+  }
+
+  private static int opposite(String dir) {
+    switch (dir) {
+      case "UP": return 1;
+      case "DOWN": return 0;
+      case "LEFT": return 3;
+      case "RIGHT": return 2;
+      default: return -1;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checkpoints periódicos del estado del juego.
+ * - el tick solo paga la copia inmutable (GameState.checkpoint())
+ * - codificar y escribir se hace en un hilo aparte; si el anterior no terminó,
+ *   este se salta
+ * - doble buffer: se alterna entre checkpoint-a.bin y checkpoint-b.bin, así el
+ *   último checkpoint bueno nunca se sobreescribe a medias. Al restaurar se
+ *   elige el de mayor seq con CRC válido
+ */
+public class Checkpointer {
+  private final Path[] files;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "Checkpointer");
+    t.setDaemon(true);
+    return t;
+  });
+  private final AtomicBoolean busy = new AtomicBoolean(false);
+  private long seq;
+
+  // Métricas del último checkpoint
+  private volatile long lastBytes, lastEncodeNs, lastWriteNs;
+
+  public Checkpointer(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    this.files = new Path[] { dir.resolve("checkpoint-a.bin"), dir.resolve("checkpoint-b.bin") };
+    this.seq = Math.max(readSeq(files[0]), readSeq(files[1]));
+  }
+
+  /** Toma el checkpoint (llamar desde el hilo del tick) y lo escribe en segundo plano */
+  public boolean checkpointAsync(GameState state) {
+    if (!busy.compareAndSet(false, true)) return false;
+    GameCheckpoint cp = state.checkpoint();
+    writer.execute(() -> {
+      try {
+        write(cp);
+      } catch (IOException e) {
+        System.err.println("Checkpoint fallido: " + e.getMessage());
+      } finally {
+        busy.set(false);
+      }
+    });
+    return true;
+  }
+
+  /** Codifica y escribe sincrónicamente (lo usa también CheckpointBench) */
+  public synchronized void write(GameCheckpoint cp) throws IOException {
+    long t0 = System.nanoTime();
+    long next = seq + 1;
+    byte[] bytes = cp.encode(next);
+    long t1 = System.nanoTime();
+    Path target = files[(int) (next & 1)];
+    try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buf = ByteBuffer.wrap(bytes);
+      while (buf.hasRemaining()) ch.write(buf);
+      ch.force(true);
+    }
+    seq = next;
+    lastBytes = bytes.length;
+    lastEncodeNs = t1 - t0;
+    lastWriteNs = System.nanoTime() - t1;
+  }
+
+  /** El checkpoint válido más reciente, o null si no hay */
+  public GameCheckpoint latest() {
+    Path best = null;
+    long bestSeq = -1;
+    for (Path p : files) {
+      long s = readSeq(p);
+      if (s > bestSeq) {
+        bestSeq = s;
+        best = p;
+      }
+    }
+    if (best == null) return null;
+    try {
+      return GameCheckpoint.decode(Files.readAllBytes(best));
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static long readSeq(Path p) {
+    try {
+      return Files.exists(p) ? GameCheckpoint.validSeq(Files.readAllBytes(p)) : -1;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  public long getLastBytes() {
+    return lastBytes;
+  }
+
+  public long getLastEncodeNs() {
+    return lastEncodeNs;
+  }
+
+  public long getLastWriteNs() {
+    return lastWriteNs;
+  }
+
+  public void shutdown() {
+    writer.shutdown();
+  }
+}
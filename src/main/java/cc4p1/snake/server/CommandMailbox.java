@@ -0,0 +1,72 @@
+package cc4p1.snake.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Buzón de comandos para GameState: muchos productores (hilos de las
+ * sesiones), un solo consumidor (el hilo del tick).
+ * - cola enlazada sin locks: publicar es un getAndSet sobre la cola y un
+ *   enlace al nodo anterior
+ * - el consumidor vacía el buzón al empezar cada tick, así los JOIN/QUIT y
+ *   cambios de nivel se aplican siempre en el mismo punto del tick y
+ *   GameState solo lo toca un hilo
+ */
+public class CommandMailbox {
+
+  private static final class Node {
+    Runnable command;
+    volatile Node next;
+
+    Node(Runnable command) {
+      this.command = command;
+    }
+  }
+
+  private final AtomicReference<Node> tail;
+  private Node head; // solo lo usa el consumidor
+  private final AtomicInteger pending = new AtomicInteger();
+
+  public CommandMailbox() {
+    Node stub = new Node(null);
+    head = stub;
+    tail = new AtomicReference<>(stub);
+  }
+
+  /** Encola un comando (desde cualquier hilo) */
+  public void post(Runnable command) {
+    Node n = new Node(command);
+    pending.incrementAndGet();
+    Node prev = tail.getAndSet(n);
+    prev.next = n; // entre el getAndSet y este enlace el consumidor ve la cola "cortada" y espera al próximo tick
+  }
+
+  /**
+   * Ejecuta los comandos encolados hasta ahora (solo desde el hilo del tick).
+   * Los que llegan mientras tanto quedan para el tick siguiente.
+   * @return cuántos se ejecutaron
+   */
+  public int drain() {
+    int limit = pending.get();
+    int done = 0;
+    while (done < limit) {
+      Node next = head.next;
+      if (next == null) break;
+      head = next;
+      pending.decrementAndGet();
+      done++;
+      Runnable command = next.command;
+      next.command = null; // el nodo queda como cabecera: no retener el comando
+      try {
+        command.run();
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+    return done;
+  }
+
+  public int size() {
+    return pending.get();
+  }
+}
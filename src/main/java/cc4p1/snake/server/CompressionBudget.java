@@ -0,0 +1,45 @@
+package cc4p1.snake.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tope global de CPU para comprimir snapshots.
+ * - se reparte por ventanas de 1 segundo
+ * - mientras quede presupuesto, las sesiones comprimen; al agotarse envían
+ *   en texto plano hasta la próxima ventana (el cliente acepta ambos)
+ */
+public class CompressionBudget {
+  private static final long WINDOW_NS = 1_000_000_000L;
+
+  private final long budgetNsPerWindow;
+  private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+  private final AtomicLong usedNs = new AtomicLong();
+  private final AtomicLong skippedFrames = new AtomicLong();
+
+  /** @param cpuPercent porcentaje de un núcleo que se permite gastar comprimiendo */
+  public CompressionBudget(int cpuPercent) {
+    this.budgetNsPerWindow = WINDOW_NS * Math.max(0, cpuPercent) / 100;
+  }
+
+  /** true si todavía se puede comprimir en la ventana actual */
+  public boolean tryAcquire() {
+    long now = System.nanoTime();
+    long start = windowStart.get();
+    if (now - start >= WINDOW_NS && windowStart.compareAndSet(start, now)) {
+      usedNs.set(0);
+    }
+    if (usedNs.get() < budgetNsPerWindow) return true;
+    skippedFrames.incrementAndGet();
+    return false;
+  }
+
+  /** Descuenta el tiempo gastado en una compresión */
+  public void charge(long ns) {
+    usedNs.addAndGet(ns);
+  }
+
+  /** Frames enviados sin comprimir por falta de presupuesto */
+  public long getSkippedFrames() {
+    return skippedFrames.get();
+  }
+}
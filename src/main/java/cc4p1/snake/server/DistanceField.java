@@ -0,0 +1,120 @@
+package cc4p1.snake.server;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Distancia (en pasos) desde cada celda libre hasta la fruta más cercana.
+ * - BFS multi-origen sobre las paredes del nivel, con wrap-around en ambos ejes
+ * - es una sola para todos los bots: seguir el gradiente cuesta O(1) por bot
+ * - se actualiza solo cuando cambian las frutas: si solo aparecieron frutas
+ *   nuevas se relaja desde ellas (nada más baja), si desapareció alguna se
+ *   rehace entera (O(ancho x alto), una vez por tick como mucho)
+ *
+ * Las serpientes no cuentan como obstáculo: se mueven cada tick y el bot las
+ * esquiva mirando solo la celda siguiente.
+ */
+public class DistanceField {
+  public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  private int width, height;
+  private int levelVersion = -1;
+  private int[] dist = new int[0];
+  private int[] queue = new int[0];
+  private BitSet fruitCells = new BitSet();
+  private BitSet scratch = new BitSet();
+
+  // para métricas/depuración
+  private long rebuilds, relaxes;
+
+  /** Pone el campo al día con las frutas y el nivel de la foto */
+  public void sync(WorldSnapshot s) {
+    BitSet now = scratch;
+    now.clear();
+    for (int i = 0; i < s.fruits.length; i += 3) {
+      now.set(s.fruits[i + 1] * s.width + s.fruits[i]);
+    }
+    if (s.levelVersion != levelVersion || s.width != width || s.height != height) {
+      resize(s.width, s.height);
+      levelVersion = s.levelVersion;
+      rebuild(s, now);
+    } else {
+      BitSet removed = (BitSet) fruitCells.clone();
+      removed.andNot(now);
+      if (!removed.isEmpty()) {
+        rebuild(s, now);
+      } else {
+        BitSet added = (BitSet) now.clone();
+        added.andNot(fruitCells);
+        for (int c = added.nextSetBit(0); c >= 0; c = added.nextSetBit(c + 1)) {
+          relaxFrom(s, c);
+        }
+      }
+    }
+    scratch = fruitCells;
+    fruitCells = now;
+  }
+
+  /** Pasos hasta la fruta más cercana, o UNREACHABLE (paredes, sin frutas) */
+  public int get(int x, int y) {
+    return dist[y * width + x];
+  }
+
+  public long getRebuilds() {
+    return rebuilds;
+  }
+
+  public long getRelaxes() {
+    return relaxes;
+  }
+
+  private void resize(int w, int h) {
+    width = w;
+    height = h;
+    if (dist.length != w * h) {
+      dist = new int[w * h];
+      queue = new int[w * h];
+    }
+  }
+
+  private void rebuild(WorldSnapshot s, BitSet sources) {
+    rebuilds++;
+    Arrays.fill(dist, UNREACHABLE);
+    int qEnd = 0;
+    for (int c = sources.nextSetBit(0); c >= 0; c = sources.nextSetBit(c + 1)) {
+      if (s.isWall(c % width, c / width)) continue;
+      dist[c] = 0;
+      queue[qEnd++] = c;
+    }
+    bfs(s, 0, qEnd);
+  }
+
+  // Una fruta nueva solo puede acortar distancias: se expande mientras mejore
+  private void relaxFrom(WorldSnapshot s, int cell) {
+    relaxes++;
+    if (s.isWall(cell % width, cell / width) || dist[cell] == 0) return;
+    dist[cell] = 0;
+    queue[0] = cell;
+    bfs(s, 0, 1);
+  }
+
+  private void bfs(WorldSnapshot s, int qHead, int qEnd) {
+    while (qHead < qEnd) {
+      int c = queue[qHead++];
+      int x = c % width, y = c / width;
+      int nd = dist[c] + 1;
+      qEnd = visit(s, (x + 1) % width, y, nd, qEnd);
+      qEnd = visit(s, (x + width - 1) % width, y, nd, qEnd);
+      qEnd = visit(s, x, (y + 1) % height, nd, qEnd);
+      qEnd = visit(s, x, (y + height - 1) % height, nd, qEnd);
+    }
+  }
+
+  private int visit(WorldSnapshot s, int x, int y, int nd, int qEnd) {
+    int c = y * width + x;
+    if (nd >= dist[c] || s.isWall(x, y)) return qEnd;
+    dist[c] = nd;
+    queue[qEnd++] = c;
+    return qEnd;
+  }
+}
@@ -0,0 +1,156 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Copia inmutable del estado del juego para checkpoints.
+ * Se arma en el hilo del tick (solo copia arreglos) y se codifica y
+ * escribe después, en otro hilo, sin frenar el tick.
+ *
+ * Formato binario (big endian):
+ *   MAGIC, versión, seq, largo del cuerpo, cuerpo, CRC32 del cuerpo
+ *   cuerpo: tick, semilla, nivel, serpientes (id, nombre, token para
+ *           retomar, letra, dirección, crecimiento, puntaje, puntos x/y como
+ *           short), frutas (x, y, puntaje)
+ * La versión 1 no tenía el token; se sigue leyendo (sus serpientes no se
+ * pueden retomar).
+ */
+public final class GameCheckpoint {
+  static final int MAGIC = 0x534E4B43; // "SNKC"
+  static final short VERSION = 2;
+
+  /** Datos de una serpiente (los arreglos no se modifican después de crearla) */
+  public static final class SnakeData {
+    public final int id;
+    public final String name;
+    public final String token; // token RESUME de su jugador al tomar el checkpoint ("" = ninguno)
+    public final char letter;
+    public final String direction;
+    public final int growthPending;
+    public final int score;
+    public final short[] xs;
+    public final short[] ys;
+
+    public SnakeData(int id, String name, String token, char letter, String direction, int growthPending, int score,
+        short[] xs, short[] ys) {
+      this.id = id;
+      this.name = name;
+      this.token = token;
+      this.letter = letter;
+      this.direction = direction;
+      this.growthPending = growthPending;
+      this.score = score;
+      this.xs = xs;
+      this.ys = ys;
+    }
+  }
+
+  public final long tick;
+  public final long seed;
+  public final int level;
+  public final SnakeData[] snakes;
+  public final int[] fruits; // ternas x, y, puntaje
+
+  public GameCheckpoint(long tick, long seed, int level, SnakeData[] snakes, int[] fruits) {
+    this.tick = tick;
+    this.seed = seed;
+    this.level = level;
+    this.snakes = snakes;
+    this.fruits = fruits;
+  }
+
+  public int segmentCount() {
+    int n = 0;
+    for (SnakeData s : snakes) n += s.xs.length;
+    return n;
+  }
+
+  /** Codifica el checkpoint con su número de secuencia y CRC */
+  public byte[] encode(long seq) {
+    // primera pasada: tamaño exacto, así se escribe todo en un solo arreglo
+    byte[][] names = new byte[snakes.length][];
+    byte[][] tokens = new byte[snakes.length][];
+    int bodyLen = 8 + 8 + 4 + 4 + 4 + fruits.length * 2;
+    for (int k = 0; k < snakes.length; k++) {
+      names[k] = snakes[k].name.getBytes(StandardCharsets.UTF_8);
+      tokens[k] = snakes[k].token.getBytes(StandardCharsets.UTF_8);
+      bodyLen += 4 + 2 + names[k].length + 2 + tokens[k].length + 2 + 1 + 4 + 4 + 4 + snakes[k].xs.length * 4;
+    }
+
+    ByteBuffer b = ByteBuffer.allocate(18 + bodyLen + 8);
+    b.putInt(MAGIC).putShort(VERSION).putLong(seq).putInt(bodyLen);
+    b.putLong(tick).putLong(seed).putInt(level).putInt(snakes.length);
+    for (int k = 0; k < snakes.length; k++) {
+      SnakeData s = snakes[k];
+      b.putInt(s.id).putShort((short) names[k].length).put(names[k])
+          .putShort((short) tokens[k].length).put(tokens[k]).putChar(s.letter)
+          .put(MatchLog.dirCode(s.direction)).putInt(s.growthPending).putInt(s.score).putInt(s.xs.length);
+      for (int i = 0; i < s.xs.length; i++) {
+        b.putShort(s.xs[i]).putShort(s.ys[i]);
+      }
+    }
+    b.putInt(fruits.length / 3);
+    for (int v : fruits) b.putShort((short) v);
+
+    CRC32 crc = new CRC32();
+    crc.update(b.array(), 18, bodyLen);
+    b.putLong(crc.getValue());
+    return b.array();
+  }
+
+  /** Número de secuencia de un checkpoint válido, o -1 si está corrupto */
+  static long validSeq(byte[] bytes) {
+    if (bytes.length < 26) return -1;
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    if (in.getInt() != MAGIC) return -1;
+    short version = in.getShort();
+    if (version < 1 || version > VERSION) return -1;
+    long seq = in.getLong();
+    int len = in.getInt();
+    if (len < 0 || len > bytes.length - 26) return -1;
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 18, len);
+    return in.getLong(18 + len) == crc.getValue() ? seq : -1;
+  }
+
+  static GameCheckpoint decode(byte[] bytes) throws IOException {
+    if (validSeq(bytes) < 0) throw new IOException("Checkpoint corrupto");
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    short version = in.getShort(4);
+    in.position(18);
+    long tick = in.getLong();
+    long seed = in.getLong();
+    int level = in.getInt();
+    SnakeData[] snakes = new SnakeData[in.getInt()];
+    String[] dirs = {"UP", "DOWN", "LEFT", "RIGHT"};
+    for (int k = 0; k < snakes.length; k++) {
+      int id = in.getInt();
+      byte[] nameBytes = new byte[in.getShort() & 0xFFFF];
+      in.get(nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+      String token = "";
+      if (version >= 2) {
+        byte[] tokenBytes = new byte[in.getShort() & 0xFFFF];
+        in.get(tokenBytes);
+        token = new String(tokenBytes, StandardCharsets.UTF_8);
+      }
+      char letter = in.getChar();
+      String dir = dirs[in.get() & 3];
+      int growth = in.getInt();
+      int score = in.getInt();
+      int n = in.getInt();
+      short[] xs = new short[n], ys = new short[n];
+      for (int i = 0; i < n; i++) {
+        xs[i] = in.getShort();
+        ys[i] = in.getShort();
+      }
+      snakes[k] = new SnakeData(id, name, token, letter, dir, growth, score, xs, ys);
+    }
+    int[] fruits = new int[in.getInt() * 3];
+    for (int i = 0; i < fruits.length; i++) fruits[i] = in.getShort();
+    return new GameCheckpoint(tick, seed, level, snakes, fruits);
+  }
+}
@@ -5,6 +5,8 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Servidor autoritativo simple:
@@ -13,6 +15,62 @@ import java.util.concurrent.*;
  * - ejecuta tick (TPS) y difunde STATE/BOARD/SCORES
  */
 public class GameServer {
+  // Compresión opcional de snapshots (el cliente la pide en JOIN)
+  private static final boolean DEFLATE_ENABLED = Boolean.parseBoolean(System.getProperty("snake.deflate.enabled", "true"));
+  private static final int DEFLATE_MAX_LEVEL = Integer.getInteger("snake.deflate.maxLevel", 9);
+  private static final int DEFLATE_CPU_PERCENT = Integer.getInteger("snake.deflate.cpuPercent", 25);
+  // Tamaño máximo de la ventana de interés que puede pedir un cliente
+  private static final int VIEW_MAX = Integer.getInteger("snake.view.max", 81);
+  // Canal UDP para snapshots/inputs (mismo número de puerto que TCP)
+  private static final boolean UDP_ENABLED = Boolean.parseBoolean(System.getProperty("snake.udp.enabled", "true"));
+  // Grabación de partidas (directorio vacío = desactivada) y tamaño de segmento
+  private static final String RECORD_DIR = System.getProperty("snake.record", "");
+  private static final long RECORD_SEGMENT_MB = Long.getLong("snake.record.segmentMB", 8);
+  // Repeticiones de las partidas grabadas (puerto de juego + 1 si no se indica)
+  private static final int REPLAY_PORT = Integer.getInteger("snake.replay.port", -1);
+  // Métricas por etapa: ventana de cálculo y cada cuánto se loguean (0 = no se loguean)
+  private static final long METRICS_WINDOW_MS = Long.getLong("snake.metrics.windowMs", 1000);
+  private static final long METRICS_LOG_MS = Long.getLong("snake.metrics.logMs", 10000);
+  // Checkpoints para recuperarse de una caída (directorio vacío = desactivados)
+  private static final String CHECKPOINT_DIR = System.getProperty("snake.checkpoint", "");
+  private static final long CHECKPOINT_EVERY_MS = Long.getLong("snake.checkpoint.everyMs", 5000);
+  // Tras restaurar, plazo para que cada jugador retome su serpiente con RESUME <token>
+  private static final long CHECKPOINT_GRACE_MS = Long.getLong("snake.checkpoint.graceMs", 60000);
+  // Tabla de récords: archivo del log (vacío = solo en memoria) y filas por TOP
+  private static final String LEADERBOARD_FILE = System.getProperty("snake.leaderboard", "");
+  private static final int LEADERBOARD_MAX_ROWS = Integer.getInteger("snake.leaderboard.maxRows", 50);
+  // Espectadores: un snapshot cada N ticks, en grupos, con su propio pool de escritura
+  private static final int SPECTATOR_EVERY = Integer.getInteger("snake.spectator.every", 3);
+  private static final int SPECTATOR_GROUP_SIZE = Integer.getInteger("snake.spectator.groupSize", 256);
+  private static final int SPECTATOR_THREADS = Integer.getInteger("snake.spectator.threads", 2);
+  // Bots del servidor: multiplica la cantidad por nivel de LevelManager (0 = sin bots)
+  private static final int BOTS_SCALE = Integer.getInteger("snake.bots", 0);
+  // Control de carga (ver LoadController para umbrales y orden de degradación)
+  private static final boolean LOAD_ENABLED = Boolean.parseBoolean(System.getProperty("snake.load.enabled", "true"));
+  // Admisión: cupos y conexiones nuevas por segundo (ráfaga) por IP; 0 = sin límite de tasa
+  private static final int MAX_PLAYERS = Integer.getInteger("snake.maxPlayers", 64);
+  private static final int MAX_SPECTATORS = Integer.getInteger("snake.maxSpectators", 1024);
+  private static final double PER_IP_PER_SEC = Double.parseDouble(System.getProperty("snake.admission.perIpPerSec", "5"));
+  private static final double PER_IP_BURST = Double.parseDouble(System.getProperty("snake.admission.perIpBurst", "20"));
+  // Latido: un PING por sesión cada everyMs; sin señal de vida (PONG, otro comando o datagrama)
+  // durante maxMissed latidos se cierra (0 = no cerrar)
+  private static final long HEARTBEAT_MS = Long.getLong("snake.heartbeat.everyMs", 1000);
+  private static final int HEARTBEAT_MAX_MISSED = Integer.getInteger("snake.heartbeat.maxMissed", 5);
+  // Ritmo por cliente: un snapshot de cada 1 + (RTT + 2 jitter) / rttMs ticks, hasta maxEvery (0 = siempre todos)
+  private static final long PACING_RTT_MS = Long.getLong("snake.pacing.rttMs", 250);
+  private static final int PACING_MAX_EVERY = Integer.getInteger("snake.pacing.maxEvery", 4);
+  // Corte de conexión: ms que el jugador tiene para volver con RESUME (0 = sale al cortarse)
+  // y qué hace su serpiente mientras tanto: "freeze" (quieta, sigue siendo obstáculo) o "move"
+  private static final long RESUME_GRACE_MS = Long.getLong("snake.resume.graceMs", 15000);
+  private static final boolean RESUME_FREEZE = !System.getProperty("snake.resume.mode", "freeze").equalsIgnoreCase("move");
+  // El lector espera el RESUME a lo sumo estos ticks; si el loop no llega, ERR y no se aplica
+  private static final int RESUME_WAIT_TICKS = 5;
+  // Lobby: "host:puerto" donde registrar esta instancia (vacío = sin lobby), host a anunciar
+  // (vacío = la IP con la que llega al lobby) y cada cuánto se reporta la carga
+  private static final String LOBBY = System.getProperty("snake.lobby.register", "");
+  private static final String LOBBY_ADVERTISE = System.getProperty("snake.lobby.advertise", "");
+  private static final long LOBBY_REPORT_MS = Long.getLong("snake.lobby.reportMs", 1000);
+
   private final int port;
   // 🔸 TPS ahora es dinámico; ya no final
   private volatile int tps;
@@ -20,13 +78,54 @@ public class GameServer {
   private final Map<Integer, ClientSession> clients = new ConcurrentHashMap<>();
   private final GameState state = new GameState();
   private volatile boolean running = true;
-  public int nextPlayerId = 1;
+  // ids de sesión reciclables con generación (un id viejo nunca apunta a otra sesión)
+  private final PlayerIds ids = new PlayerIds();
+  private final Admission admission = new Admission(MAX_PLAYERS, MAX_SPECTATORS, PER_IP_PER_SEC, PER_IP_BURST);
+  private final LongAdder droppedInputs = new LongAdder();
+  private final ResumeTokens resumes = new ResumeTokens(); // solo el hilo del tick
+  // Última versión de geometría difundida (se reenvía solo al cambiar de nivel)
+  private int geometryVersionSent = -1;
+  private final CompressionBudget compressionBudget = new CompressionBudget(DEFLATE_CPU_PERCENT);
+  private final SpectatorFanout spectators =
+      new SpectatorFanout(SPECTATOR_EVERY, SPECTATOR_GROUP_SIZE, SPECTATOR_THREADS, HEARTBEAT_MS * 1_000_000L);
 
   private ServerSocket serverSocket;
+  private UdpTransport udp;
+  private MatchRecorder recorder;
+  private ReplayServer replayServer;
+  private Checkpointer checkpointer;
+  private Leaderboard leaderboard;
+  private LobbyRegistration lobby;
+  private long lastCheckpointMs = System.currentTimeMillis();
+  private long parkedDeadlineMs = 0; // serpientes restauradas sin reclamar se descartan después de esto
+  private long lastReapMs = System.currentTimeMillis();
 
-  // Un solo hilo es suficiente para el loop; otro para aceptar
-  private final ScheduledExecutorService exec = Executors.newScheduledThreadPool(2);
+  // Un hilo para aceptar y uno solo para el loop: es el único que toca GameState
+  private final ScheduledExecutorService exec = Executors.newScheduledThreadPool(1);
+  private final ScheduledExecutorService loopExec = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "GameLoop");
+    t.setDaemon(true);
+    return t;
+  });
   private ScheduledFuture<?> loopHandle;
+  // JOIN/QUIT/SPECTATE/LEVEL llegan desde los hilos de las sesiones y se aplican al inicio del tick
+  private final CommandMailbox mailbox = new CommandMailbox();
+  // Tick en etapas: el loop simula, TickEncoder codifica la foto del tick
+  // anterior y TickSender la escribe en los sockets
+  private final ServerMetrics metrics = new ServerMetrics();
+  private final ServerMetrics.Stage simStage = metrics.stage("sim");
+  private final ServerMetrics.Stage botStage = BOTS_SCALE > 0 ? metrics.stage("bots") : null;
+  private final BotPlayers bots = new BotPlayers(BOTS_SCALE, state.getSeed());
+  private final LoadController load = new LoadController(metrics, LOAD_ENABLED);
+  private int ticksSinceSend = 0; // solo el hilo del tick
+  private final TickPipeline<WorldSnapshot, EncodedTick> pipeline =
+      new TickPipeline<>(this::encodeTick, this::sendTick, metrics);
+  // Respuestas que arma el tick (WELCOME, RESUMED, ERR...): las escribe la etapa
+  // de envío antes de los frames de la primera foto que las incluye
+  private List<Runnable> tickWrites = new ArrayList<>(); // solo el hilo del tick
+  private final Queue<ControlWrites> controlWrites = new ConcurrentLinkedQueue<>();
+  private long lastMetricsRollMs = System.currentTimeMillis();
+  private long lastMetricsLogMs = System.currentTimeMillis();
 
   public GameServer(int port, int tps) {
     this.port = port;
@@ -36,6 +135,58 @@ public class GameServer {
   public void start() throws IOException {
     serverSocket = new ServerSocket(port);
     System.out.println("Servidor iniciado en puerto " + port);
+    System.out.println("Semilla de simulación: " + state.getSeed() + " (fijarla con -Dsnake.seed)");
+    boolean restored = false;
+    if (!CHECKPOINT_DIR.isEmpty()) {
+      checkpointer = new Checkpointer(java.nio.file.Paths.get(CHECKPOINT_DIR));
+      // cada serpiente se guarda con el token de su jugador: con él la reclama tras reiniciar
+      state.setResumeTokens(resumes::tokenOf);
+      GameCheckpoint cp = checkpointer.latest();
+      if (cp != null) {
+        state.restore(cp);
+        restored = true;
+        parkedDeadlineMs = System.currentTimeMillis() + CHECKPOINT_GRACE_MS;
+        System.out.println("Restaurado checkpoint del tick " + cp.tick + ": nivel " + cp.level + ", "
+            + state.getParkedCount() + " serpientes esperando un RESUME de sus jugadores ("
+            + CHECKPOINT_GRACE_MS + " ms)");
+      }
+    }
+    if (restored && !RECORD_DIR.isEmpty()) {
+      // el log de entradas se reproduce desde el estado inicial de la semilla
+      System.out.println("Partida restaurada: no se graba (la grabación no partiría del estado inicial)");
+    } else if (!RECORD_DIR.isEmpty()) {
+      try {
+        recorder = new MatchRecorder(java.nio.file.Paths.get(RECORD_DIR), RECORD_SEGMENT_MB << 20, state.getSeed());
+        state.setRecorder(recorder);
+      } catch (IOException e) {
+        System.err.println("No se pudo grabar la partida: " + e.getMessage());
+        recorder = null;
+      }
+      try {
+        replayServer = new ReplayServer(java.nio.file.Paths.get(RECORD_DIR), REPLAY_PORT > 0 ? REPLAY_PORT : port + 1);
+        replayServer.start();
+      } catch (IOException e) {
+        System.err.println("Repeticiones no disponibles: " + e.getMessage());
+        replayServer = null;
+      }
+    }
+    try {
+      leaderboard = new Leaderboard(LEADERBOARD_FILE.isEmpty() ? null : java.nio.file.Paths.get(LEADERBOARD_FILE));
+    } catch (IOException e) {
+      System.err.println("No se pudo abrir el log de récords, solo en memoria: " + e.getMessage());
+      leaderboard = new Leaderboard(null);
+    }
+    state.setLeaderboard(leaderboard);
+    if (UDP_ENABLED) {
+      try {
+        udp = new UdpTransport(port, clients);
+        udp.start();
+        System.out.println("Canal UDP en puerto " + udp.getPort());
+      } catch (SocketException e) {
+        System.err.println("UDP no disponible, solo TCP: " + e.getMessage());
+        udp = null;
+      }
+    }
 
     // Hilo aceptador
     exec.execute(() -> {
@@ -43,11 +194,29 @@ public class GameServer {
       while (running) {
         try {
           Socket s = serverSocket.accept();
-          s.setTcpNoDelay(true);
-          int pid = assignPlayerId();
-          ClientSession cs = new ClientSession(pid, s, this);
-          clients.put(pid, cs);
-          cs.start();
+          // rechazo rápido: sin sesión, hilo ni buffers para lo que no entra
+          byte[] reject = admission.tryConnect(s.getInetAddress());
+          if (reject != null) {
+            Admission.reject(s, reject);
+            continue;
+          }
+          int pid = ids.allocate();
+          if (pid < 0) {
+            admission.disconnected();
+            Admission.reject(s, Admission.REJECT_FULL);
+            continue;
+          }
+          try {
+            s.setTcpNoDelay(true);
+            ClientSession cs = new ClientSession(pid, s, this);
+            clients.put(pid, cs);
+            cs.start();
+          } catch (IOException e) {
+            ids.release(pid);
+            admission.disconnected();
+            Admission.reject(s, Admission.REJECT_FULL);
+            continue;
+          }
           System.out.println("Client connected: pid=" + pid + " from " + s.getRemoteSocketAddress());
         } catch (IOException e) {
           if (running) e.printStackTrace();
@@ -55,10 +224,27 @@ public class GameServer {
       }
     });
 
+    admission.registerGauges(metrics);
+    metrics.gauge("inputsDescartados", () -> String.valueOf(droppedInputs.sum()));
+    metrics.gauge("rtt", this::rttSummary);
+    metrics.gauge("enEspera", () -> String.valueOf(resumes.getHeld()));
+    pipeline.start();
+
     // 🔸 Programa el loop con el tick del nivel actual (si existe), si no usa el constructor
     int initialTps = Math.max(1, safeLevelTps());
     scheduleLoop(initialTps);
 
+    if (!LOBBY.isEmpty()) {
+      try {
+        int colon = LOBBY.lastIndexOf(':');
+        lobby = new LobbyRegistration(LOBBY.substring(0, colon), Integer.parseInt(LOBBY.substring(colon + 1)), port,
+            LOBBY_ADVERTISE, LOBBY_REPORT_MS, this::lobbyLoad);
+        lobby.start();
+      } catch (RuntimeException e) {
+        System.err.println("snake.lobby.register inválido (se espera host:puerto): " + LOBBY);
+      }
+    }
+
     // Shutdown ordenado
     Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
   }
@@ -70,22 +256,36 @@ public class GameServer {
     }
     this.tps = Math.max(1, newTps);
     long periodMs = 1000L / this.tps;
-    loopHandle = exec.scheduleAtFixedRate(this::tick, 0, periodMs, TimeUnit.MILLISECONDS);
+    loopHandle = loopExec.scheduleAtFixedRate(this::tick, 0, periodMs, TimeUnit.MILLISECONDS);
     System.out.println("Loop programado a " + this.tps + " TPS");
   }
 
+  // Tick del nivel, rebajado si el control de carga lo pide
   private int safeLevelTps() {
-    try { return state.getCurrentTickRateHz(); }
+    try { return load.tps(state.getCurrentTickRateHz()); }
     catch (Throwable t) { return this.tps; }
   }
 
-  private synchronized int assignPlayerId() {
-    return nextPlayerId++;
-  }
-
   private void tick() {
     try {
-      // 1) aplicar inputs solo si hay jugadores
+      long t0 = System.nanoTime();
+      // 0) comandos encolados desde las sesiones (JOIN, QUIT, niveles)
+      mailbox.drain();
+      // jugadores desconectados que no volvieron a tiempo
+      for (int id : resumes.expire(System.currentTimeMillis())) {
+        dropHeld(id);
+      }
+      if (parkedDeadlineMs > 0 && System.currentTimeMillis() > parkedDeadlineMs) {
+        parkedDeadlineMs = 0;
+        int dropped = state.dropParked();
+        if (dropped > 0) System.out.println(dropped + " serpientes restauradas sin reclamar: se descartan");
+      }
+      // 1) aplicar inputs solo si hay jugadores (los bots eligen primero)
+      if (BOTS_SCALE > 0) {
+        long tb = System.nanoTime();
+        bots.tick(state);
+        botStage.record(System.nanoTime() - tb);
+      }
       if (state.hasPlayers()) {
         for (ClientSession cs : clients.values()) {
           String dir = cs.consumeLastDirection();
@@ -95,51 +295,560 @@ public class GameServer {
         state.step();
       }
 
+      // sesiones que dejaron de responder al latido: cerrar el socket despierta
+      // a su lector (que hace onQuit) y a un envío que estuviera trabado en ella
+      if (HEARTBEAT_MAX_MISSED > 0 && System.currentTimeMillis() - lastReapMs >= HEARTBEAT_MS) {
+        lastReapMs = System.currentTimeMillis();
+        reapIdleSessions();
+      }
+
+      // checkpoint periódico: aquí solo se copia el estado, se escribe en otro hilo
+      if (checkpointer != null && System.currentTimeMillis() - lastCheckpointMs >= CHECKPOINT_EVERY_MS) {
+        lastCheckpointMs = System.currentTimeMillis();
+        checkpointer.checkpointAsync(state);
+      }
+
       // 3) difundir estado (STATE JSON + BOARD ASCII) y puntajes
       //    (mantengo BOARD/SCORES por compatibilidad con tu cliente actual)
-      String stateJson = state.toJson();
-      String boardContent = state.renderBoard();
-      String boardPayload  = "BOARD "  + boardContent.replace("\n", "\\n") + "\n";
-      String statePayload  = "STATE "  + stateJson + "\n";
-      String scoresContent = state.renderScores();
-      String scoresPayload = "SCORES " + scoresContent.replace("\n", "\\n") + "\n";
+      //    La foto del tick pasa a las etapas de codificación y envío: este
+      //    hilo sigue con el tick siguiente sin esperar a los sockets
+      //    (bajo sobrecarga solo se envía uno de cada load.sendEvery() ticks)
+      if (++ticksSinceSend >= load.sendEvery()) {
+        ticksSinceSend = 0;
+        WorldSnapshot snap = state.snapshot().withScores(state.getScoreboard());
+        if (!tickWrites.isEmpty()) {
+          controlWrites.add(new ControlWrites(snap.tick, tickWrites));
+          tickWrites = new ArrayList<>();
+        }
+        pipeline.submit(snap);
+      }
+      simStage.record(System.nanoTime() - t0);
 
-      for (ClientSession cs : clients.values()) {
-        cs.send(statePayload);
-        cs.send(boardPayload);
-        cs.send(scoresPayload);
+      long now = System.currentTimeMillis();
+      if (now - lastMetricsRollMs >= METRICS_WINDOW_MS) {
+        lastMetricsRollMs = now;
+        metrics.roll();
+        if (load.evaluate(pipeline.getQueuedTicks())) {
+          int want = safeLevelTps();
+          if (want != tps) scheduleLoop(want);
+        }
+        if (METRICS_LOG_MS > 0 && now - lastMetricsLogMs >= METRICS_LOG_MS) {
+          lastMetricsLogMs = now;
+          System.out.println("Métricas: " + metrics.report());
+        }
       }
     } catch (Throwable t) {
       t.printStackTrace();
     }
   }
 
+  // Un tick codificado, listo para la etapa de envío
+  // Escrituras del hilo del tick que van con la foto 'tick' (o la siguiente, si se descarta)
+  private static final class ControlWrites {
+    final long tick;
+    final List<Runnable> writes;
+
+    ControlWrites(long tick, List<Runnable> writes) {
+      this.tick = tick;
+      this.writes = writes;
+    }
+  }
+
+  private static final class EncodedTick {
+    final WorldSnapshot snap;
+    final List<Runnable> control = new ArrayList<>(); // antes que todo lo demás
+    String geometry;       // GEOMETRY a difundir antes del frame (null si no cambió)
+    final List<ClientSession> targets = new ArrayList<>();
+    final List<String> payloads = new ArrayList<>();
+    final BitSet viaUdp = new BitSet();
+    final boolean withBoard; // false si el control de carga recortó BOARD
+    // PING para sesiones por UDP (van por TCP, aparte del datagrama)
+    final List<ClientSession> pingTargets = new ArrayList<>();
+    final List<String> pings = new ArrayList<>();
+    String spectatorFrame; // null si este tick no toca a los espectadores
+
+    EncodedTick(WorldSnapshot snap, boolean withBoard) {
+      this.snap = snap;
+      this.withBoard = withBoard;
+    }
+  }
+
+  // Etapa "encode": un frame por tick (STATE + BOARD), compartido entre sesiones.
+  // Los clientes con VIEW reciben su propio frame recortado a su ventana.
+  // Con UDP ligado solo viajan STATE + marcador por datagrama (BOARD es redundante).
+  // El marcador solo viaja cuando cambia: SCOREDELTA con lo tocado, o
+  // SCOREBOARD completo si la sesión no tiene la versión anterior.
+  // Cada sesión recibe uno de cada paceEvery(cs) ticks y, cada HEARTBEAT_MS, un PING
+  // (los espectadores lo reciben de SpectatorFanout, detrás de su frame).
+  private EncodedTick encodeTick(WorldSnapshot snap) {
+    long nowNs = System.nanoTime();
+    boolean withBoard = load.sendBoard();
+    EncodedTick out = new EncodedTick(snap, withBoard);
+    // una foto vieja que se codifica tarde no se lleva las respuestas de ticks posteriores
+    ControlWrites cw;
+    while ((cw = controlWrites.peek()) != null && cw.tick <= snap.tick) {
+      out.control.addAll(controlWrites.poll().writes);
+    }
+    synchronized (this) {
+      if (snap.levelVersion != geometryVersionSent) {
+        geometryVersionSent = snap.levelVersion;
+        out.geometry = snap.geometryPayload;
+      }
+    }
+    // el marcador viaja en la foto: el vivo puede ir varios ticks adelante
+    String delta = snap.scoresDelta;
+    long version = snap.scoresVersion;
+    String full = snap.scoresFull;
+    String frame = null;
+    String datagram = null;
+    for (ClientSession cs : clients.values()) {
+      if (!cs.paceTick(paceEvery(cs))) continue;
+      String ping = HEARTBEAT_MS > 0 ? cs.pingIfDue(nowNs, HEARTBEAT_MS * 1_000_000L) : "";
+      if (udp != null && cs.getUdpAddress() != null) {
+        if (!ping.isEmpty()) {
+          out.pingTargets.add(cs);
+          out.pings.add(ping);
+        }
+        // un datagrama puede perderse: lleva el SCOREBOARD completo (armado una vez por versión)
+        String payload;
+        if (cs.hasView()) {
+          payload = "STATE " + snap.toJsonView(cs.getPlayerId(), cs.getViewW(), cs.getViewH()) + "\n" + full;
+        } else {
+          if (datagram == null) datagram = "STATE " + snap.toJson() + "\n" + full;
+          payload = datagram;
+        }
+        cs.setScoresVersionSent(version);
+        out.viaUdp.set(out.targets.size());
+        out.targets.add(cs);
+        out.payloads.add(payload);
+        continue;
+      }
+      String scores = scoresFor(cs, full, delta, version) + ping;
+      out.targets.add(cs);
+      if (cs.hasView()) {
+        out.payloads.add(buildViewFrame(snap, cs.getPlayerId(), cs.getViewW(), cs.getViewH(), withBoard) + scores);
+      } else {
+        if (frame == null) frame = buildTickFrame(snap, withBoard);
+        out.payloads.add(scores.isEmpty() ? frame : frame + scores);
+      }
+    }
+    // espectadores: mismo frame de mundo completo, a menor ritmo y en su propio pool.
+    // Pueden saltarse frames, así que llevan siempre el marcador completo.
+    if (spectators.shouldPublish()) {
+      if (frame == null) frame = buildTickFrame(snap, withBoard);
+      out.spectatorFrame = frame + full;
+    }
+    return out;
+  }
+
+  // Etapa "send": escribe lo codificado (la compresión por conexión ocurre aquí)
+  private void sendTick(EncodedTick t) {
+    for (Runnable write : t.control) {
+      write.run();
+    }
+    if (t.geometry != null) {
+      for (ClientSession cs : clients.values()) {
+        cs.send(t.geometry);
+      }
+      spectators.setGeometry(t.geometry, t.snap.levelVersion);
+    }
+    for (int i = 0; i < t.targets.size(); i++) {
+      ClientSession cs = t.targets.get(i);
+      if (t.viaUdp.get(i)) {
+        if (udp.sendSnapshot(cs, t.payloads.get(i))) continue;
+        // no salió por UDP: este tick va por TCP con el marcador completo
+        cs.setScoresVersionSent(t.snap.scoresVersion);
+        cs.sendFrame((cs.hasView() ? buildViewFrame(t.snap, cs.getPlayerId(), cs.getViewW(), cs.getViewH(), t.withBoard)
+            : buildTickFrame(t.snap, t.withBoard)) + t.snap.scoresFull);
+      } else {
+        cs.sendFrame(t.payloads.get(i));
+      }
+    }
+    for (int i = 0; i < t.pingTargets.size(); i++) {
+      t.pingTargets.get(i).send(t.pings.get(i));
+    }
+    spectators.publish(t.spectatorFrame); // también los ticks sin frame: lleva el latido
+  }
+
+  // Clientes lejanos o con mucha variación reciben menos snapshots (no se les acumulan)
+  private static int paceEvery(ClientSession cs) {
+    double rtt = cs.getRttMs();
+    if (PACING_RTT_MS <= 0 || rtt < 0) return 1;
+    int every = 1 + (int) ((rtt + 2 * cs.getJitterMs()) / PACING_RTT_MS);
+    return Math.min(Math.max(1, PACING_MAX_EVERY), every);
+  }
+
+  // En el hilo del tick: no hace I/O que pueda bloquear (cerrar no espera).
+  // Los espectadores salen de 'clients' al hacer SPECTATE: se revisan aparte
+  private void reapIdleSessions() {
+    long limitNs = HEARTBEAT_MS * HEARTBEAT_MAX_MISSED * 1_000_000L;
+    long now = System.nanoTime();
+    for (ClientSession cs : clients.values()) {
+      reapIfIdle(cs, now, limitNs);
+    }
+    for (ClientSession cs : spectators.sessions()) {
+      reapIfIdle(cs, now, limitNs);
+    }
+  }
+
+  private void reapIfIdle(ClientSession cs, long now, long limitNs) {
+    if (now - cs.getLastHeardNs() > limitNs) {
+      System.out.println("Sesión " + cs.getPlayerId() + " sin respuesta a " + HEARTBEAT_MAX_MISSED
+          + " latidos: se cierra");
+      metrics.event("sesión " + cs.getPlayerId() + " cerrada por inactividad");
+      cs.closeSilently();
+    }
+  }
+
+  // RTT de las sesiones que ya respondieron algún PING
+  private String rttSummary() {
+    int n = 0;
+    double sum = 0, max = 0, jitter = 0;
+    for (ClientSession cs : clients.values()) {
+      double rtt = cs.getRttMs();
+      if (rtt < 0) continue;
+      n++;
+      sum += rtt;
+      max = Math.max(max, rtt);
+      jitter += cs.getJitterMs();
+    }
+    if (n == 0) return "-";
+    return String.format("prom %.1fms máx %.1fms jitter %.1fms (%d)", sum / n, max, jitter / n, n);
+  }
+
+  // Reporte para el lobby: <nivel> <jugadores> <cupo> <carga> <utilización %>
+  private String lobbyLoad() {
+    ServerMetrics.Stage hot = metrics.busiest();
+    return state.snapshot().level + " " + admission.getPlayers() + " " + MAX_PLAYERS + " "
+        + load.getLevel().ordinal() + " " + (hot == null ? 0 : Math.round(hot.getUtilization() * 100));
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  // Lo que le falta a la sesión para tener el marcador en 'version' ("" si ya lo tiene)
+  private static String scoresFor(ClientSession cs, String full, String delta, long version) {
+    long sent = cs.getScoresVersionSent();
+    if (sent == version) return "";
+    cs.setScoresVersionSent(version);
+    if (delta != null && sent == version - 1) return delta;
+    return full;
+  }
+
+  static String buildViewFrame(WorldSnapshot snap, int playerId, int viewW, int viewH, boolean withBoard) {
+    String statePayload = "STATE " + snap.toJsonView(playerId, viewW, viewH) + "\n";
+    if (!withBoard) return statePayload;
+    String boardPayload = "BOARD " + snap.renderBoardView(playerId, viewW, viewH).replace("\n", "\\n") + "\n";
+    return statePayload + boardPayload;
+  }
+
+  /** SCORES en texto completo (lo usan las repeticiones, que no llevan marcador incremental) */
+  static String buildScoresPayload(GameState state) {
+    return "SCORES " + state.renderScores().replace("\n", "\\n") + "\n";
+  }
+
+  /** Texto de un tick (STATE + BOARD) tal como lo recibe un cliente sin compresión */
+  public static String buildTickFrame(GameState state) {
+    return buildTickFrame(state.snapshot(), true);
+  }
+
+  static String buildTickFrame(WorldSnapshot snap, boolean withBoard) {
+    String stateJson = snap.toJson();
+    String statePayload  = "STATE "  + stateJson + "\n";
+    if (!withBoard) return statePayload;
+    String boardContent = snap.renderBoard();
+
+    String boardPayload  = "BOARD "  + boardContent.replace("\n", "\\n") + "\n";
+    return statePayload + boardPayload;
+  }
+
   // llamadas desde ClientSession
   public void onJoin(int playerId, String name) {
+    onJoin(playerId, name, -1);
+  }
+
+  /** @param deflateLevel nivel de compresión pedido por el cliente (-1 = sin compresión) */
+  public void onJoin(int playerId, String name, int deflateLevel) {
+    ClientSession session = clients.get(playerId);
+    if (session == null) return;
+    if (!session.isJoined()) {
+      if (!admission.tryJoin()) {
+        session.send("ERR Server full\n");
+        return;
+      }
+      session.setJoined(true);
+    }
+    mailbox.post(() -> join(playerId, name, deflateLevel));
+  }
+
+  // En el hilo del tick
+  private void join(int playerId, String name, int deflateLevel) {
+    if (!ids.isLive(playerId)) return; // se fue antes de que corriera el tick
     state.addPlayer(playerId, name);
     ClientSession cs = clients.get(playerId);
-    if (cs != null) cs.send("WELCOME " + playerId + "\n");
+    if (cs != null) {
+      // WELCOME <id> [DEFLATE <nivel>] [RESUME <token>]
+      String resume = RESUME_GRACE_MS > 0 ? " RESUME " + resumes.issue(playerId) : "";
+      // geometría del nivel actual: el STATE de cada tick solo trae su id
+      String geometry = state.getGeometryPayload();
+      sendLater(() -> {
+        cs.send("WELCOME " + playerId + negotiateCompression(cs, deflateLevel) + resume + "\n");
+        cs.send(geometry);
+      });
+    }
     System.out.println("Player joined: " + playerId + " name=" + name);
   }
 
+  // En el hilo del tick: la escritura sale por la etapa de envío, que puede
+  // bloquearse en un socket lento sin frenar la simulación
+  private void sendLater(Runnable write) {
+    tickWrites.add(write);
+  }
+
+  // " DEFLATE <nivel>" si se activó la compresión pedida, si no "" (etapa de envío)
+  private String negotiateCompression(ClientSession cs, int deflateLevel) {
+    if (deflateLevel < 0 || !DEFLATE_ENABLED) return "";
+    int level = Math.min(Math.min(deflateLevel, 9), DEFLATE_MAX_LEVEL);
+    cs.enableCompression(level, compressionBudget);
+    return " DEFLATE " + level;
+  }
+
+  /**
+   * RESUME <token> [versión de geometría] [DEFLATE <nivel>]: la conexión retoma
+   * el id en espera del token. El lector espera a que lo aplique el tick, a lo
+   * sumo RESUME_WAIT_TICKS ticks: si vence, responde ERR y el tick ya no lo aplica.
+   * @return true si la sesión ahora es la del jugador en espera
+   */
+  public boolean onResume(int playerId, String args) {
+    ClientSession cs = clients.get(playerId);
+    if (cs == null) return false;
+    if (RESUME_GRACE_MS <= 0) {
+      cs.send("ERR Resume disabled\n");
+      return false;
+    }
+    String[] parts = args.split("\\s+");
+    int geometryVersion = -1;
+    int deflateLevel = -1;
+    try {
+      if (parts.length > 1) geometryVersion = Integer.parseInt(parts[1]);
+      if (parts.length > 3 && parts[2].equals("DEFLATE")) deflateLevel = Integer.parseInt(parts[3]);
+    } catch (NumberFormatException e) {
+      cs.send("ERR Invalid resume. Use RESUME <token> [geometry version] [DEFLATE <level>]\n");
+      return false;
+    }
+    // quien toma 'claimed' primero decide: el tick aplica el RESUME o el lector se rinde
+    AtomicBoolean claimed = new AtomicBoolean();
+    CompletableFuture<Boolean> done = new CompletableFuture<>();
+    int version = geometryVersion, level = deflateLevel;
+    mailbox.post(() -> {
+      if (!claimed.compareAndSet(false, true)) return; // el lector ya respondió ERR
+      boolean ok = false;
+      try {
+        ok = resume(playerId, parts[0], version, level);
+      } finally {
+        done.complete(ok);
+      }
+    });
+    try {
+      return done.get(RESUME_WAIT_TICKS * 1000L / Math.max(1, tps), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      if (claimed.compareAndSet(false, true)) {
+        cs.send("ERR Resume timeout\n");
+        return false;
+      }
+      // el tick ya lo está aplicando: termina enseguida
+      try {
+        return done.get();
+      } catch (InterruptedException | ExecutionException e2) {
+        return false;
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      return false;
+    }
+  }
+
+  // En el hilo del tick
+  private boolean resume(int newId, String token, int geometryVersion, int deflateLevel) {
+    ClientSession cs = clients.get(newId);
+    if (cs == null || !ids.isLive(newId)) return false;
+    if (cs.isJoined() || cs.isSpectator()) {
+      sendLater(() -> cs.send("ERR Already playing\n"));
+      return false;
+    }
+    int id = resumes.claim(token, System.currentTimeMillis());
+    // la versión de geometría que trae el cliente es de otro proceso: no se compara
+    boolean restored = false;
+    if (id >= 0) {
+      // la conexión nueva pasa a ser la del id en espera (que conservó el cupo); el suyo se libera
+      clients.remove(newId);
+      ids.release(newId);
+      cs.resumeAs(id);
+      cs.setJoined(true);
+      clients.put(id, cs);
+      state.setFrozen(id, false);
+    } else if (state.hasParked(token)) {
+      // serpiente de un checkpoint (el servidor se reinició): pasa al id de esta conexión
+      if (!admission.tryJoin()) {
+        sendLater(() -> cs.send("ERR Server full\n"));
+        return false;
+      }
+      cs.setJoined(true);
+      state.claimParked(token, newId);
+      id = newId;
+      restored = true;
+    } else {
+      sendLater(() -> cs.send("ERR Resume expired\n"));
+      return false;
+    }
+    cs.setLastDirection(state.getDirection(id));
+    String resumed = "RESUMED " + id + " " + resumes.issue(id);
+    // resincronización compacta: geometría solo si cambió, la foto actual y el marcador completo
+    WorldSnapshot snap = state.snapshot();
+    String geometry = restored || geometryVersion != snap.levelVersion ? snap.geometryPayload : null;
+    Scoreboard board = state.getScoreboard();
+    cs.setScoresVersionSent(board.getVersion());
+    String frame = buildTickFrame(snap, load.sendBoard()) + board.fullLine();
+    sendLater(() -> {
+      cs.send(resumed + negotiateCompression(cs, deflateLevel) + "\n");
+      if (geometry != null) cs.send(geometry);
+      cs.sendFrame(frame);
+    });
+    System.out.println("Player " + id + " retoma su sesión (conexión " + newId + ")");
+    return true;
+  }
+
+  /**
+   * Fin de la conexión (el lector terminó). Un jugador que no hizo QUIT queda
+   * en espera RESUME_GRACE_MS con su id, su cupo y su serpiente.
+   */
+  public void onDisconnect(int playerId) {
+    ClientSession cs = clients.get(playerId);
+    if (RESUME_GRACE_MS <= 0 || cs == null || !cs.isJoined() || !ids.isLive(playerId)) {
+      onQuit(playerId);
+      return;
+    }
+    if (!clients.remove(playerId, cs)) return;
+    admission.disconnected();
+    mailbox.post(() -> hold(playerId));
+  }
+
+  // En el hilo del tick
+  private void hold(int playerId) {
+    if (!resumes.hold(playerId, System.currentTimeMillis() + RESUME_GRACE_MS)) {
+      dropHeld(playerId); // el JOIN no llegó a darle token
+      return;
+    }
+    if (RESUME_FREEZE) state.setFrozen(playerId, true);
+    System.out.println("Player " + playerId + " desconectado: tiene " + RESUME_GRACE_MS + " ms para retomar");
+  }
+
+  // En el hilo del tick: el jugador en espera sale de la partida
+  private void dropHeld(int playerId) {
+    if (!ids.release(playerId)) return;
+    admission.leftPlayers();
+    state.removePlayer(playerId);
+    System.out.println("Player quit: " + playerId + " (no retomó la sesión)");
+  }
+
+  // UDP: inicia el handshake del canal UDP; UDP OFF vuelve a TCP
+  public void onUdp(int playerId, boolean enable) {
+    ClientSession cs = clients.get(playerId);
+    if (cs == null) return;
+    if (!enable) {
+      cs.disableUdp();
+      System.out.println("Player " + playerId + " vuelve a TCP");
+    } else if (udp == null) {
+      cs.send("ERR UDP disabled\n");
+    } else {
+      long token = udp.newToken();
+      cs.setUdpToken(token);
+      cs.send("UDP " + udp.getPort() + " " + token + "\n");
+    }
+  }
+
+  // SPECTATE: la sesión pasa a espectador (solo lectura, ritmo reducido)
+  public void onSpectate(int playerId) {
+    ClientSession cs = clients.get(playerId);
+    if (cs == null) return;
+    if (!admission.trySpectate()) {
+      cs.send("ERR Too many spectators\n");
+      return;
+    }
+    clients.remove(playerId);
+    if (cs.isJoined()) {
+      cs.setJoined(false);
+      admission.leftPlayers();
+      mailbox.post(() -> { // ya había hecho JOIN
+        resumes.forget(playerId);
+        state.removePlayer(playerId);
+      });
+    }
+    cs.setSpectator(true);
+    cs.send("SPECTATING " + playerId + "\n");
+    WorldSnapshot snap = state.snapshot();
+    cs.send(snap.geometryPayload);
+    spectators.add(cs, snap.levelVersion);
+    System.out.println("Spectator joined: " + playerId + " (total " + spectators.size() + ")");
+  }
+
+  // TOP [nivel] [cantidad]: récords históricos (sin nivel o nivel 0) o de un nivel
+  public String onTop(String args) {
+    int level = 0;
+    int rows = 10;
+    try {
+      String[] parts = args.isEmpty() ? new String[0] : args.split("\\s+");
+      if (parts.length > 0) level = Math.max(0, Integer.parseInt(parts[0]));
+      if (parts.length > 1) rows = Math.max(1, Math.min(LEADERBOARD_MAX_ROWS, Integer.parseInt(parts[1])));
+    } catch (NumberFormatException e) {
+      return "ERR Invalid arguments. Use TOP [level] [count]\n";
+    }
+    return "TOP " + level + " " + leaderboard.render(level, rows).replace("\n", "\\n") + "\n";
+  }
+
+  // INPUT descartados por exceder la tasa por cliente
+  public void onInputDropped() {
+    droppedInputs.increment();
+  }
+
   public void onInput(int playerId, String dir) {
     // guardado en ClientSession; GameServer aplica en el tick
     ClientSession cs = clients.get(playerId);
     if (cs != null) cs.setLastDirection(dir);
   }
 
+  // VIEW <ancho> <alto>: activa el área de interés (VIEW 0 0 la desactiva)
+  public void onView(int playerId, String args) {
+    ClientSession cs = clients.get(playerId);
+    if (cs == null) return;
+    try {
+      String[] parts = args.split("\\s+");
+      int w = Math.max(0, Math.min(VIEW_MAX, Integer.parseInt(parts[0])));
+      int h = Math.max(0, Math.min(VIEW_MAX, Integer.parseInt(parts[1])));
+      cs.setView(w, h);
+      System.out.println("Player " + playerId + " vista " + w + "x" + h);
+    } catch (RuntimeException e) {
+      cs.send("ERR Invalid view. Use VIEW <width> <height>\n");
+    }
+  }
+
   public void onLevelCommand(int playerId, String levelCmd) {
     // Cambiar nivel y reprogramar TPS del loop
+    // (la carga del nivel corre al inicio del próximo tick, en el hilo del loop)
     if (levelCmd.equals("NEXT")) {
-      state.nextLevel();
-      System.out.println("Player " + playerId + " cambió al siguiente nivel");
-      onLevelChangedBroadcastAndReschedule();
+      mailbox.post(() -> {
+        state.nextLevel();
+        System.out.println("Player " + playerId + " cambió al siguiente nivel");
+        onLevelChangedReschedule();
+      });
     } else if (levelCmd.startsWith("SET ")) {
       try {
         int levelNumber = Integer.parseInt(levelCmd.substring(4));
-        state.setLevel(levelNumber);
-        System.out.println("Player " + playerId + " cambió al nivel " + levelNumber);
-        onLevelChangedBroadcastAndReschedule();
+        mailbox.post(() -> {
+          state.setLevel(levelNumber);
+          System.out.println("Player " + playerId + " cambió al nivel " + levelNumber);
+          onLevelChangedReschedule();
+        });
       } catch (NumberFormatException e) {
         ClientSession cs = clients.get(playerId);
         if (cs != null) cs.send("ERR Invalid level number\n");
@@ -150,31 +859,40 @@ public class GameServer {
     }
   }
 
-  private void onLevelChangedBroadcastAndReschedule() {
+  /** Nivel con el que juega esta instancia (ServerMain --level); se aplica en el próximo tick */
+  public void setLevel(int levelNumber) {
+    mailbox.post(() -> {
+      state.setLevel(levelNumber);
+      onLevelChangedReschedule();
+    });
+  }
+
+  private void onLevelChangedReschedule() {
     // 🔸 Reprograma el loop con el tick del nuevo nivel
+    // (el tick en curso ya difunde el mapa nuevo al terminar)
     scheduleLoop(safeLevelTps());
-
-    // 🔸 Difunde inmediatamente el nuevo estado (para ver el mapa al instante)
-    String stateJson = state.toJson();
-    String boardContent = state.renderBoard();
-    String scoresContent = state.renderScores();
-
-    String statePayload  = "STATE "  + stateJson + "\n";
-    String boardPayload  = "BOARD "  + boardContent.replace("\n", "\\n") + "\n";
-    String scoresPayload = "SCORES " + scoresContent.replace("\n", "\\n") + "\n";
-
-    for (ClientSession cs : clients.values()) {
-      cs.send(statePayload);
-      cs.send(boardPayload);
-      cs.send(scoresPayload);
-    }
   }
 
+  // Puede llegar dos veces por sesión (QUIT y el cierre del lector): solo la
+  // primera libera el id, y con él el cupo y la serpiente
   public void onQuit(int playerId) {
-    clients.remove(playerId);
-    state.removePlayer(playerId);
+    if (!ids.release(playerId)) return;
+    admission.disconnected();
+    if (spectators.remove(playerId) != null) {
+      admission.leftSpectators();
+      System.out.println("Spectator quit: " + playerId);
+      return;
+    }
+    ClientSession cs = clients.remove(playerId);
+    if (cs != null && cs.isJoined()) {
+      cs.setJoined(false);
+      admission.leftPlayers();
+    }
+    mailbox.post(() -> {
+      resumes.forget(playerId);
+      state.removePlayer(playerId);
+    });
     System.out.println("Player quit: " + playerId);
-    nextPlayerId--;
   }
 
   private void shutdown() {
@@ -182,8 +900,30 @@ public class GameServer {
     try {
       if (serverSocket != null) serverSocket.close();
     } catch (IOException ignored) {}
+    if (udp != null) udp.close();
+    // se detiene el loop antes de cerrar lo que el tick usa (grabación,
+    // leaderboard) y antes de leer el estado desde este hilo
     if (loopHandle != null) loopHandle.cancel(false);
+    loopExec.shutdown();
+    try {
+      loopExec.awaitTermination(2, TimeUnit.SECONDS);
+    } catch (InterruptedException ignored) {
+    }
+    if (recorder != null) recorder.close();
+    if (replayServer != null) replayServer.close();
+    if (leaderboard != null) leaderboard.close();
+    if (lobby != null) lobby.close();
+    if (checkpointer != null) {
+      try {
+        checkpointer.write(state.checkpoint()); // último checkpoint al cerrar ordenadamente
+      } catch (IOException e) {
+        System.err.println("Checkpoint final fallido: " + e.getMessage());
+      }
+      checkpointer.shutdown();
+    }
     exec.shutdownNow();
+    pipeline.shutdown();
+    spectators.shutdown();
     for (ClientSession cs : new ArrayList<>(clients.values())) {
       try { cs.closeSilently(); } catch (Exception ignored) {}
     }
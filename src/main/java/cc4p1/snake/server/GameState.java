@@ -5,6 +5,7 @@ import cc4p1.snake.commonlogic.Pt;
 import cc4p1.snake.commonlogic.Snake;
 import cc4p1.snake.game.LevelManager;
 import java.util.*;
+import java.util.function.IntFunction;
 
 /**
  * Representación muy simple del estado del juego.
@@ -23,6 +24,11 @@ import java.util.*;
  * - direcciones deseadas (aplicadas por GameServer)
  * - frutas en el tablero
  *
+ * Hilos: GameState no tiene locks. Solo lo modifica el hilo del tick
+ * (GameServer encola JOIN/QUIT/niveles en un CommandMailbox que se vacía al
+ * inicio de cada tick); los demás hilos leen la foto publicada (snapshot())
+ * o el Scoreboard, que tiene su propio lock.
+ *
  * Nota: implementación básica para desarrollo y pruebas. P2 debería mover
  * la lógica más completa al módulo core/ y añadir tests.
  */
@@ -37,21 +43,90 @@ public class GameState {
   // Punto simple
   // static class Pt { int x, y; Pt(int x, int y){this.x=x;this.y=y;} }
   // private final Map<Integer, LinkedList<Pt>> snakes = new HashMap<>();
-  private final Map<Integer, Snake> snakes = new HashMap<>();
-  private final Map<Integer, String> directions = new HashMap<>();
-  private final Map<Integer, Integer> scores = new HashMap<>();
+  // TreeMap: se recorre siempre en orden de id, así dos corridas con las
+  // mismas entradas procesan a los jugadores en el mismo orden
+  private final Map<Integer, Snake> snakes = new TreeMap<>();
+  private final Map<Integer, String> directions = new TreeMap<>();
+  private final Map<Integer, Integer> scores = new TreeMap<>();
   private final List<Fruit> fruits = new ArrayList<>();
-  private final Random rand = new Random();
-  private final Map<Integer, Integer> growLeft = new HashMap<>();
+  private final Map<Integer, Integer> growLeft = new TreeMap<>();
+  // Puntajes en orden de ranking con cambios pendientes de difundir (espejo de 'scores')
+  private final Scoreboard scoreboard = new Scoreboard();
+
+  // Aleatoriedad determinista: una semilla y un stream separado para frutas y
+  // otro para spawns (un JOIN no altera la secuencia de frutas)
+  private final long seed;
+  private SplittableRandom fruitRand;
+  private SplittableRandom spawnRand;
+
+  // Hash incremental de 64 bits del mundo (ver StateHash)
+  private long stateHash = 0;
+  private int hashedLevel = -1;
+
+  // Grabación opcional de la partida (log de entradas, ver MatchRecorder)
+  private MatchRecorder recorder;
+
+  // Tabla de récords opcional: recibe el puntaje final de cada serpiente
+  private Leaderboard leaderboard;
+
+  // Serpientes restauradas de un checkpoint que esperan a su dueño, por el
+  // token RESUME que tenía su jugador. No se simulan hasta que alguien hace
+  // RESUME con ese token (claimParked) o vence el plazo (dropParked).
+  private final Map<String, GameCheckpoint.SnakeData> parked = new TreeMap<>();
+  // Token RESUME vigente de cada jugador, para guardarlo en el checkpoint
+  private IntFunction<String> resumeTokens = id -> "";
+
+  // Serpientes congeladas mientras su jugador retoma la conexión (ver setFrozen)
+  private final Set<Integer> frozen = new TreeSet<>();
   
   private int maxFruits = 1; // por nivel
 
+  // Sello temporal de cada snapshot (lo usa el jitter buffer del cliente)
+  private long tick = 0;
+  private long tickTimeMs = System.currentTimeMillis();
+
+  // Geometría estática del nivel: se envía aparte (GEOMETRY) y el STATE solo la referencia
+  private int levelVersion = 0;
+  private String geometryPayload = "";
+
+  // Área de interés: tamaño del minimapa y su base de paredes (una por nivel)
+  static final int MINIMAP_W = 24;
+  static final int MINIMAP_H = 8;
+  private char[][] minimapWalls = new char[MINIMAP_H][MINIMAP_W];
+
+  // Foto inmutable publicada tras cada cambio; los codificadores solo leen esta.
+  // Los Trail son el historial de celdas de cada cuerpo (compartido con las fotos)
+  private final Map<Integer, WorldSnapshot.Trail> trails = new TreeMap<>();
+  private volatile WorldSnapshot snapshot;
+  // >0 mientras se agrupan cambios (beginBatch/endBatch): se publica una sola vez al final
+  private int batchDepth = 0;
+  private boolean publishPending = false;
+
+  // true: no imprime el log de depuración (se arma solo si se va a imprimir)
+  private final boolean quiet;
 
+
+  /** Semilla de snake.seed si está definida; si no, una al azar */
   public GameState() {
-    this.levelManager = new LevelManager();
+    this(Long.getLong("snake.seed", StateHash.mix(System.nanoTime())));
+  }
+
+  public GameState(long seed) {
+    this(seed, false);
+  }
+
+  /** @param quiet sin el log de depuración por tick (re-simulaciones sin red: repeticiones, lotes) */
+  public GameState(long seed, boolean quiet) {
+    this.seed = seed;
+    this.quiet = quiet;
+    SplittableRandom root = new SplittableRandom(seed);
+    this.fruitRand = root.split();
+    this.spawnRand = root.split();
+    this.levelManager = new LevelManager(quiet);
     initializeWalls();
     // spawn inicial de frutas
     fillFruitsToMax();
+    publish();
   }
 
     private void initializeWalls() {
@@ -72,18 +147,60 @@ public class GameState {
       }
       
       this.maxFruits = levelManager.getCurrentMaxFruits();
+      if (hashedLevel != -1) stateHash ^= StateHash.level(hashedLevel);
+      hashedLevel = levelManager.getCurrentLevelNumber();
+      stateHash ^= StateHash.level(hashedLevel);
+      this.levelVersion++;
+      this.geometryPayload = buildGeometryPayload();
+      scoreboard.setLevelInfo(getCurrentLevelInfo());
+      this.minimapWalls = buildMinimapWalls();
+
+      if (!quiet) {
+        System.out.println("=== DEBUG paredes ===");
+        System.out.println("Level size: " + WIDTH + "x" + HEIGHT);
+        System.out.println("Geometría: " + geometryPayload.length() + " bytes por nivel; paredes fuera del STATE: "
+            + wallsJsonLength() + " bytes por tick");
+        System.out.println("=== FIN DEBUG paredes ===");
+      }
+    }
 
-      System.out.println("=== DEBUG paredes ===");
-      System.out.println("Level size: " + WIDTH + "x" + HEIGHT);
-      System.out.println("=== FIN DEBUG paredes ===");
+    // GEOMETRY <nivel> <versión> <ancho> <alto> <filas con '#', separadas por \n escapado>
+    private String buildGeometryPayload() {
+      StringBuilder sb = new StringBuilder(32 + HEIGHT * (WIDTH + 2));
+      sb.append("GEOMETRY ").append(levelManager.getCurrentLevelNumber()).append(' ')
+        .append(levelVersion).append(' ').append(WIDTH).append(' ').append(HEIGHT).append(' ');
+      for (int y = 0; y < HEIGHT; y++) {
+        if (y > 0) sb.append("\\n");
+        for (int x = 0; x < WIDTH; x++) {
+          sb.append(walls[y][x] ? '#' : ' ');
+        }
+      }
+      sb.append('\n');
+      return sb.toString();
     }
 
+    // Lo que ocupaba ,"walls":[[x,y],...] dentro de cada STATE
+    private int wallsJsonLength() {
+      int len = ",\"walls\":[]".length();
+      int count = 0;
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < WIDTH; x++) {
+          if (walls[y][x]) {
+            len += 3 + String.valueOf(x).length() + String.valueOf(y).length();
+            count++;
+          }
+        }
+      }
+      return len + Math.max(0, count - 1);
+    }
 
-  public synchronized void addPlayer(int id, String name) {
+
+  public void addPlayer(int id, String name) {
+    if (snakes.containsKey(id)) hashOutPlayer(id);
     // coloca la serpiente en una posición no colisionada
 
-    int x = rand.nextInt(1, WIDTH-1);
-    int y = rand.nextInt(1, HEIGHT-1);
+    int x = spawnRand.nextInt(1, WIDTH-1);
+    int y = spawnRand.nextInt(1, HEIGHT-1);
 
 
 
@@ -93,19 +210,46 @@ public class GameState {
     char bodyLetter = Character.toLowerCase(name.trim().charAt(0));
 
     snakes.put(id, new Snake(name, body, bodyLetter));
+    WorldSnapshot.Trail trail = new WorldSnapshot.Trail();
+    trail.addHead(x, y);
+    trails.put(id, trail);
     directions.put(id, "RIGHT");
     scores.put(id, 0);
+    scoreboard.put(id, name, 0);
     growLeft.put(id, 0); 
+    frozen.remove(id);
+    stateHash ^= StateHash.segment(id, x, y) ^ StateHash.head(id, x, y) ^ StateHash.direction(id, "RIGHT")
+        ^ StateHash.score(id, 0) ^ StateHash.growth(id, 0);
+    if (recorder != null) recorder.join(id, name);
+    publish();
   }
 
-  public synchronized void removePlayer(int id) {
+  public void removePlayer(int id) {
+    Snake gone = snakes.get(id);
+    if (gone != null) submitScore(id, gone);
+    hashOutPlayer(id);
     snakes.remove(id);
     directions.remove(id);
     scores.remove(id);
+    scoreboard.remove(id);
     growLeft.remove(id);
+    trails.remove(id);
+    frozen.remove(id);
+    if (recorder != null) recorder.quit(id);
+    publish();
   }
 
-  public synchronized void applyInput(int id, String dir) {
+  /**
+   * Congela (o libera) la serpiente de un jugador desconectado: no avanza ni
+   * come, pero sigue ocupando sus celdas. Queda en la grabación.
+   */
+  public void setFrozen(int id, boolean freeze) {
+    if (!snakes.containsKey(id)) return;
+    if (!(freeze ? frozen.add(id) : frozen.remove(id))) return;
+    if (recorder != null) recorder.freeze(id, freeze);
+  }
+
+  public void applyInput(int id, String dir) {
     if (dir == null)
       return;
     dir = dir.trim().toUpperCase();
@@ -139,20 +283,30 @@ public class GameState {
       Snake snake = snakes.get(id);
       if (!isOppositeDirection || snake.points.size() <= 1) {
         directions.put(id, dir);
-        System.out
-            .println("Jugador " + id + " cambió dirección a " + dir + " (dirección anterior: " + currentDir + ")");
+        stateHash ^= StateHash.direction(id, currentDir) ^ StateHash.direction(id, dir);
+        // el servidor reenvía la última dirección en cada tick: solo los cambios van al log
+        if (recorder != null && !dir.equals(currentDir)) recorder.input(id, dir);
+        if (!quiet) System.out.println(
+            "Jugador " + id + " cambió dirección a " + dir + " (dirección anterior: " + currentDir + ")");
       } else {
-        System.out.println("Jugador " + id + " intentó moverse en dirección opuesta (" + dir + " vs " + currentDir
+        if (!quiet) System.out.println("Jugador " + id + " intentó moverse en dirección opuesta (" + dir + " vs " + currentDir
             + ") - movimiento bloqueado");
       }
     }
   }
 
-  public synchronized boolean hasPlayers() {
+  public boolean hasPlayers() {
     return !snakes.isEmpty();
   }
 
-  public synchronized void step() {
+  public int getPlayerCount() {
+    return snakes.size();
+  }
+
+  public void step() {
+    tick++;
+    tickTimeMs = System.currentTimeMillis();
+
     // mover cada snake
     Set<Integer> dead = new HashSet<>();
     Map<Integer, Pt> newHeads = new HashMap<>();
@@ -160,6 +314,7 @@ public class GameState {
     // calcular nueva cabeza con sistema de paredes/wrap-around
     for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
       int id = e.getKey();
+      if (frozen.contains(id)) continue; // no se mueve: sin cabeza nueva
       LinkedList<Pt> body = e.getValue().points;
       Pt head = body.getFirst();
       String dir = directions.getOrDefault(id, "RIGHT");
@@ -184,7 +339,7 @@ public class GameState {
       // Verificar límites y manejar paredes - LÓGICA SIMPLIFICADA
       boolean hitWall = false;
 
-      System.out.println(
+      if (!quiet) System.out.println(
           "DEBUG: Jugador " + id + " intentando moverse de (" + head.x + "," + head.y + ") a (" + nx + "," + ny + ")");
 
       // Manejar wrap-around primero
@@ -203,9 +358,9 @@ public class GameState {
       // Ahora simplemente verificar si la posición final tiene pared
       if (walls[ny][nx]) {
         hitWall = true;
-        System.out.println("DEBUG: Jugador " + id + " MURIÓ - chocó con pared en (" + nx + "," + ny + ")");
+        if (!quiet) System.out.println("DEBUG: Jugador " + id + " MURIÓ - chocó con pared en (" + nx + "," + ny + ")");
       } else {
-        System.out.println("DEBUG: Jugador " + id + " se mueve libremente a (" + nx + "," + ny + ")");
+        if (!quiet) System.out.println("DEBUG: Jugador " + id + " se mueve libremente a (" + nx + "," + ny + ")");
       }
 
       if (hitWall) {
@@ -215,13 +370,14 @@ public class GameState {
       }
     } // detectar colisiones (con otras cabezas o cuerpos)
     // 1. Detectar colisiones de cabeza a cabeza (choque frontal)
-    Map<Pt, List<Integer>> headPositions = new HashMap<>();
+    // (clave = celda empaquetada: Pt no define equals/hashCode)
+    Map<Integer, List<Integer>> headPositions = new HashMap<>();
     for (Map.Entry<Integer, Pt> entry : newHeads.entrySet()) {
       Pt nh = entry.getValue();
-      headPositions.computeIfAbsent(nh, k -> new ArrayList<>()).add(entry.getKey());
+      headPositions.computeIfAbsent(nh.y * WIDTH + nh.x, k -> new ArrayList<>()).add(entry.getKey());
     }
     // Si dos o más cabezas van al mismo punto, todas mueren
-    for (Map.Entry<Pt, List<Integer>> entry : headPositions.entrySet()) {
+    for (Map.Entry<Integer, List<Integer>> entry : headPositions.entrySet()) {
       if (entry.getValue().size() > 1) {
         dead.addAll(entry.getValue());
       }
@@ -258,25 +414,36 @@ public class GameState {
     }
 
     // aplicar movimientos para los vivos
-    for (Map.Entry<Integer, Snake> e : new HashMap<>(snakes).entrySet()) {
+    for (Map.Entry<Integer, Snake> e : new TreeMap<>(snakes).entrySet()) {
       int id = e.getKey();
       if (dead.contains(id)) {
+        submitScore(id, e.getValue());
+        hashOutSnake(id, e.getValue());
         snakes.remove(id);
         directions.remove(id);
+        trails.remove(id);
         continue;
       }
+      if (frozen.contains(id)) continue;
     LinkedList<Pt> body = e.getValue().points;
     Pt nh = newHeads.get(id);
     if (nh == null) {
       System.err.println("Error: newHead es null para jugador " + id);
       dead.add(id);
+      submitScore(id, e.getValue());
+      hashOutSnake(id, e.getValue());
       snakes.remove(id);
       directions.remove(id);
+      trails.remove(id);
       continue;
     }
 
 
+    Pt oldHead = body.getFirst();
     body.addFirst(nh);
+    trails.get(id).addHead(nh.x, nh.y);
+    stateHash ^= StateHash.head(id, oldHead.x, oldHead.y) ^ StateHash.head(id, nh.x, nh.y)
+        ^ StateHash.segment(id, nh.x, nh.y);
 
     // --- detectar fruta en la nueva cabeza ---
     boolean ate = false;
@@ -288,20 +455,26 @@ public class GameState {
         ate = true;
         fruitScore = fruit.score;
         fIt.remove();
+        stateHash ^= StateHash.fruit(fruit.point.x, fruit.point.y, fruit.score);
         break;
       }
     }
 
     if (ate) {
       // Mantén SOLO un contador de crecimiento pendiente; no “regales” un +1 inmediato.
-      scores.put(id, scores.getOrDefault(id, 0) + fruitScore);
+      int oldScore = scores.getOrDefault(id, 0);
+      scores.put(id, oldScore + fruitScore);
       Snake currentSnake = e.getValue();
+      scoreboard.put(id, currentSnake.name, oldScore + fruitScore);
+      stateHash ^= StateHash.score(id, oldScore) ^ StateHash.score(id, oldScore + fruitScore)
+          ^ StateHash.growth(id, currentSnake.growthPending)
+          ^ StateHash.growth(id, currentSnake.growthPending + fruitScore);
       currentSnake.growthPending = currentSnake.growthPending + fruitScore;
 
-      System.out.println(
+      if (!quiet) System.out.println(
           "Jugador " + id + " comió fruta con " + fruitScore + " puntos. Puntuación total: " + scores.get(id));
       // Nota: body.size() ya incluye la cabeza; no sumes +1 aquí.
-      System.out.println("Estado serpiente " + id + " - Tamaño total: " + body.size() +
+      if (!quiet) System.out.println("Estado serpiente " + id + " - Tamaño total: " + body.size() +
                          ", Crecimiento pendiente: " + currentSnake.growthPending);
 
       spawnFruit();
@@ -311,19 +484,27 @@ public class GameState {
     Snake currentSnake = e.getValue();
     if (currentSnake.growthPending > 0) {
       // Este tick “crece” manteniendo la cola
+      stateHash ^= StateHash.growth(id, currentSnake.growthPending)
+          ^ StateHash.growth(id, currentSnake.growthPending - 1);
       currentSnake.growthPending--;
-      System.out.println("Jugador " + id + " creció 1 segmento. Tamaño actual: " + body.size() +
+      if (!quiet) System.out.println("Jugador " + id + " creció 1 segmento. Tamaño actual: " + body.size() +
                          ", Crecimiento pendiente: " + currentSnake.growthPending +
                          ", Puntuación: " + scores.getOrDefault(id, 0));
     } else {
       // Movimiento normal: quitar cola
-      if (!body.isEmpty()) body.removeLast();
+      if (!body.isEmpty()) {
+        Pt tail = body.removeLast();
+        trails.get(id).removeTail();
+        stateHash ^= StateHash.segment(id, tail.x, tail.y);
+      }
     }
     }
 
     // opcional: re-spawn players que murieron (aquí se elimina y deja puntaje)
     for (int idDead : dead) {
-      scores.remove(idDead); // simplificación: quitar score si muere
+      Integer lost = scores.remove(idDead); // simplificación: quitar score si muere
+      scoreboard.remove(idDead);
+      if (lost != null) stateHash ^= StateHash.score(idDead, lost);
       // Si prefieres mantener score, comenta la línea anterior.
     }
 
@@ -332,13 +513,15 @@ public class GameState {
         if (!spawnFruit()) break; // evita bucles infinitos si no hay espacio
     }
 
+    if (recorder != null) recorder.step(tick, stateHash);
+    publish();
   }
 
-private synchronized boolean spawnFruit() {
+private boolean spawnFruit() {
     for (int tries = 0; tries < Math.max(20, WIDTH*HEIGHT); tries++) {
-        int x = rand.nextInt(1, WIDTH-1);
-        int y = rand.nextInt(1, HEIGHT-1);
-        int fruitScore = rand.nextInt(1, 4);
+        int x = fruitRand.nextInt(1, WIDTH-1);
+        int y = fruitRand.nextInt(1, HEIGHT-1);
+        int fruitScore = fruitRand.nextInt(1, 4);
 
         if (walls[y][x]) continue;
 
@@ -349,173 +532,107 @@ private synchronized boolean spawnFruit() {
         }
         if (!occ) {
             fruits.add(new Fruit(new Pt(x, y), fruitScore));
-            System.out.println("Generada nueva fruta en (" + x + "," + y + ") con " + fruitScore + " puntos");
+            stateHash ^= StateHash.fruit(x, y, fruitScore);
+            if (!quiet) System.out.println("Generada nueva fruta en (" + x + "," + y + ") con " + fruitScore + " puntos");
             return true;
         }
     }
-    System.out.println("No se pudo generar fruta tras múltiples intentos");
+    if (!quiet) System.out.println("No se pudo generar fruta tras múltiples intentos");
     return false;
 }
 
 
-  // Renderizar tablero en TextArea con sistema de paredes reales
-  public synchronized String renderBoard() {
-    // El tablero usa dimensiones exactas de 12x30 para coincidir con nivel y
-    // TextArea
-    int displayWidth  = WIDTH;
-    int displayHeight = HEIGHT;
-    char[][] board = new char[displayHeight][displayWidth];
-
-
-    // Inicializar el tablero basado en el sistema de paredes
-    for (int y = 0; y < displayHeight; y++) {
-      for (int x = 0; x < displayWidth; x++) {
-        if (walls[y][x]) {
-          // Hay pared - usar símbolo de #
-          board[y][x] = '#'; // Símbolo de pared más visible
-        } else {
-          // No hay pared - espacio abierto
-          board[y][x] = ' '; // Espacio abierto (permite wrap-around)
-        }
-      }
-    }
+  // Los codificadores leen la foto publicada, nunca el estado vivo
 
-    // Dibujar frutas con diferentes símbolos según puntuación
-    for (Fruit f : fruits) {
-      // char fruitSymbol;
-      // Diferentes símbolos según la puntuación de la fruta (1-3 puntos)
-      // if (f.score == 1) {
-      // fruitSymbol = '·'; // Fruta pequeña (1 punto)
-      // } else if (f.score == 2) {
-      // fruitSymbol = '*'; // Fruta mediana (2 puntos)
-      // } else { // f.score == 3
-      // fruitSymbol = '♦'; // Fruta grande (3 puntos)
-      // }
-      // Las frutas se dibujan directamente en sus coordenadas (sin offset)
-      board[f.point.y][f.point.x] = (char) ('0' + f.score);
-    }
-
-    // Dibujar serpientes
-    for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
-      LinkedList<Pt> body = e.getValue().points;
-      char bodyLetter = e.getValue().bodyLetter;
-      boolean head = true;
-      for (Pt p : body) {
-        // Dibujar directamente en las coordenadas (sin offset)
-        if (head) {
-          board[p.y][p.x] = 'O'; // cabeza siempre es "O"
-          head = false;
-        } else {
-          board[p.y][p.x] = bodyLetter; // cuerpo con letra personalizada
-        }
-      }
-    }
-
-    // Convertir matriz a String - SOLO EL TABLERO
-    StringBuilder sb = new StringBuilder();
-
-    // Solo mostrar el tablero de juego
-    for (int y = 0; y < displayHeight; y++) {
-      for (int x = 0; x < displayWidth; x++) {
-        sb.append(board[y][x]);
-      }
-      sb.append("\n");
-    }
+  /** Última foto inmutable del mundo (se puede leer desde cualquier hilo) */
+  public WorldSnapshot snapshot() {
+    return snapshot;
+  }
 
-    return sb.toString();
+  // Renderizar tablero en TextArea con sistema de paredes reales
+  public String renderBoard() {
+    return snapshot.renderBoard();
   }
 
   // Método separado para obtener los puntajes en formato texto
-  public synchronized String renderScores() {
-    StringBuilder sb = new StringBuilder();
+  public String renderScores() {
+    return snapshot.renderScores();
+  }
 
-    // Información del nivel actual
-    sb.append("=== ").append(getCurrentLevelInfo()).append(" ===\n\n");
+  // Serializador muy simple a JSON (manual, sin librerías)
+  public String toJson() {
+    return snapshot.toJson();
+  }
 
-    if (snakes.isEmpty()) {
-      sb.append("No hay jugadores conectados");
-    } else {
-      sb.append("=== PUNTAJES ===\n");
-      Set<String> nombresMostrados = new HashSet<>();
-      for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
-        String playerName = e.getValue().name;
-        int score = scores.getOrDefault(e.getKey(), 0);
-        if (!nombresMostrados.contains(playerName)) {
-          sb.append("Jugador (").append(playerName).append("): ").append(score).append(" puntos\n");
-          nombresMostrados.add(playerName);
-        }
-      }
-    }
+  public String toJsonView(int playerId, int viewW, int viewH) {
+    return snapshot.toJsonView(playerId, viewW, viewH);
+  }
 
-    String result = sb.toString();
-    System.out.println("DEBUG renderScores(): '" + result + "'");
-    return result;
+  public String renderBoardView(int playerId, int viewW, int viewH) {
+    return snapshot.renderBoardView(playerId, viewW, viewH);
   }
 
-  // Serializador muy simple a JSON (manual, sin librerías)
-public synchronized String toJson() {
-    StringBuilder sb = new StringBuilder();
-    sb.append("{");
+  /** Agrupa varios JOIN/QUIT seguidos (p. ej. bots) en una sola foto publicada */
+  public void beginBatch() {
+    batchDepth++;
+  }
+
+  public void endBatch() {
+    if (--batchDepth == 0 && publishPending) publish();
+  }
 
-    // snakes
-    sb.append("\"snakes\":[");
-    boolean firstSnake = true;
+  // Arma y publica la foto del estado actual: O(serpientes + frutas), los
+  // cuerpos se comparten a través de sus Trail
+  private void publish() {
+    if (batchDepth > 0) {
+      publishPending = true;
+      return;
+    }
+    publishPending = false;
+    WorldSnapshot.SnakeView[] views = new WorldSnapshot.SnakeView[snakes.size()];
+    int k = 0;
     for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
-      if (!firstSnake) sb.append(",");
-      firstSnake = false;
-      sb.append("{\"id\":").append(e.getKey()).append(",\"body\":[");
-      boolean first = true;
-      for (Pt p : e.getValue().points) {
-        if (!first) sb.append(",");
-        first = false;
-        sb.append("[").append(p.x).append(",").append(p.y).append("]");
-      }
-        sb.append("]}");
+      Snake sn = e.getValue();
+      views[k++] = new WorldSnapshot.SnakeView(e.getKey(), sn.name, sn.bodyLetter, trails.get(e.getKey()).view());
     }
-    sb.append("],");
-
-    // fruits
-    sb.append("\"fruits\":[");
-    boolean ffirst = true;
-    for (Fruit f : fruits) {
-        if (!ffirst) sb.append(",");
-        ffirst = false;
-        sb.append("[").append(f.point.x).append(",").append(f.point.y).append("]");
+    int[] f = new int[fruits.size() * 3];
+    for (int i = 0; i < fruits.size(); i++) {
+      Fruit fr = fruits.get(i);
+      f[3 * i] = fr.point.x;
+      f[3 * i + 1] = fr.point.y;
+      f[3 * i + 2] = fr.score;
     }
-    sb.append("],");
-
-    // scores
-    sb.append("\"scores\":{");
-    boolean sfirst = true;
+    int[] sc = new int[scores.size() * 2];
+    int j = 0;
     for (Map.Entry<Integer, Integer> e : scores.entrySet()) {
-        if (!sfirst) sb.append(",");
-        sfirst = false;
-        sb.append("\"").append(e.getKey()).append("\":").append(e.getValue());
+      sc[j++] = e.getKey();
+      sc[j++] = e.getValue();
     }
-    sb.append("},");
-
-    // dimensiones
-    sb.append("\"width\":").append(WIDTH).append(",\"height\":").append(HEIGHT).append(",");
+    snapshot = new WorldSnapshot(tick, tickTimeMs, WIDTH, HEIGHT, levelManager.getCurrentLevelNumber(), levelVersion,
+        getCurrentLevelInfo(), geometryPayload, views, f, sc, walls, minimapWalls);
+  }
 
-    // paredes
-    sb.append("\"walls\":[");
-    boolean firstWall = true;
+  // Base del minimapa: '#' donde más de la mitad del bloque es pared
+  private char[][] buildMinimapWalls() {
+    int[][] wallCount = new int[MINIMAP_H][MINIMAP_W];
+    int[][] cellCount = new int[MINIMAP_H][MINIMAP_W];
     for (int y = 0; y < HEIGHT; y++) {
-        for (int x = 0; x < WIDTH; x++) {
-            if (walls[y][x]) {
-                if (!firstWall) sb.append(",");
-                firstWall = false;
-                sb.append("[").append(x).append(",").append(y).append("]");
-            }
-        }
+      for (int x = 0; x < WIDTH; x++) {
+        int my = y * MINIMAP_H / HEIGHT, mx = x * MINIMAP_W / WIDTH;
+        cellCount[my][mx]++;
+        if (walls[y][x]) wallCount[my][mx]++;
+      }
     }
-    sb.append("]}"); // ← cierra walls y el objeto raíz
-
-    return sb.toString();
+    char[][] base = new char[MINIMAP_H][MINIMAP_W];
+    for (int y = 0; y < MINIMAP_H; y++) {
+      for (int x = 0; x < MINIMAP_W; x++) {
+        base[y][x] = (cellCount[y][x] > 0 && wallCount[y][x] * 2 > cellCount[y][x]) ? '#' : '.';
+      }
     }
+    return base;
+  }
 
-
-  public synchronized String scoresJson() {
+  public String scoresJson() {
     StringBuilder sb = new StringBuilder();
     sb.append("{");
     boolean first = true;
@@ -532,25 +649,29 @@ public synchronized String toJson() {
   /**
    * Cambia al siguiente nivel
    */
-    public synchronized void nextLevel() {
+    public void nextLevel() {
       levelManager.nextLevel();
       initializeWalls();
       // Limpiar frutas y generar nuevas
-      fruits.clear();
+      clearFruits();
       fillFruitsToMax();
-      System.out.println("Cambiado a nivel " + levelManager.getCurrentLevelNumber());
+      if (recorder != null) recorder.nextLevel(levelManager.getCurrentLevelNumber());
+      publish();
+      if (!quiet) System.out.println("Cambiado a nivel " + levelManager.getCurrentLevelNumber());
     }
 
   /**
    * Establece un nivel específico
    */
-    public synchronized void setLevel(int levelNumber) {
+    public void setLevel(int levelNumber) {
       levelManager.setLevel(levelNumber);
       initializeWalls();
       // Limpiar frutas y generar nuevas
-      fruits.clear();
+      clearFruits();
       fillFruitsToMax();
-      System.out.println("Nivel establecido: " + levelNumber);
+      if (recorder != null) recorder.level(levelNumber);
+      publish();
+      if (!quiet) System.out.println("Nivel establecido: " + levelNumber);
     }
 
   /**
@@ -560,6 +681,13 @@ public synchronized String toJson() {
       return "Nivel " + levelManager.getCurrentLevelNumber() + " de " + levelManager.getTotalLevels();
     }
   
+    private void clearFruits() {
+      for (Fruit f : fruits) {
+        stateHash ^= StateHash.fruit(f.point.x, f.point.y, f.score);
+      }
+      fruits.clear();
+    }
+
     private void fillFruitsToMax() {
         int guard = WIDTH * HEIGHT; // corta en escenarios sin espacio
         while (fruits.size() < maxFruits && guard-- > 0) {
@@ -569,6 +697,196 @@ public synchronized String toJson() {
     
     public int getCurrentTickRateHz() { return levelManager.getCurrentTickRateHz(); }
 
+    public int getCurrentBots() { return levelManager.getCurrentBots(); }
+
+    public int getCurrentBotSkill() { return levelManager.getCurrentBotSkill(); }
+
+    public int getLevelVersion() { return levelVersion; }
+
+    /** Mensaje GEOMETRY del nivel actual (se arma una vez por cambio de nivel) */
+    public String getGeometryPayload() { return geometryPayload; }
+
+  // ---------------------------------------------------------------------
+  // Determinismo: semilla y hash del mundo
+  // ---------------------------------------------------------------------
+
+  public long getSeed() { return seed; }
+
+  public boolean isQuiet() { return quiet; }
+
+  /** Empieza a grabar desde el estado actual (normalmente recién creado) */
+  public void setRecorder(MatchRecorder recorder) throws java.io.IOException {
+    recorder.begin(levelManager.getCurrentLevelNumber(), tick);
+    this.recorder = recorder;
+  }
+
+  public int getCurrentLevelNumber() { return levelManager.getCurrentLevelNumber(); }
+
+  /** Puntajes en orden de ranking (tiene su propio lock: se lee sin frenar la simulación) */
+  public Scoreboard getScoreboard() { return scoreboard; }
+
+  public void setLeaderboard(Leaderboard leaderboard) { this.leaderboard = leaderboard; }
+
+  // Puntaje final de una serpiente que muere o cuyo jugador sale
+  private void submitScore(int id, Snake snake) {
+    if (leaderboard != null && !BotPlayers.isBot(id)) {
+      leaderboard.submit(snake.name, levelManager.getCurrentLevelNumber(), scores.getOrDefault(id, 0));
+    }
+  }
+
+  // ---------------------------------------------------------------------
+  // Checkpoints: copia inmutable y restauración
+  // ---------------------------------------------------------------------
+
+  /** Copia inmutable del mundo (solo copia arreglos; se codifica en otro hilo) */
+  public GameCheckpoint checkpoint() {
+    List<GameCheckpoint.SnakeData> list = new ArrayList<>(snakes.size() + parked.size());
+    for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
+      Snake sn = e.getValue();
+      short[] xs = new short[sn.points.size()], ys = new short[sn.points.size()];
+      int i = 0;
+      for (Pt p : sn.points) {
+        xs[i] = (short) p.x;
+        ys[i++] = (short) p.y;
+      }
+      String token = resumeTokens.apply(e.getKey());
+      list.add(new GameCheckpoint.SnakeData(e.getKey(), sn.name, token == null ? "" : token, sn.bodyLetter,
+          directions.getOrDefault(e.getKey(), "RIGHT"), sn.growthPending, scores.getOrDefault(e.getKey(), 0), xs, ys));
+    }
+    list.addAll(parked.values()); // inmutables: se comparten tal cual
+    int[] f = new int[fruits.size() * 3];
+    for (int i = 0; i < fruits.size(); i++) {
+      Fruit fr = fruits.get(i);
+      f[3 * i] = fr.point.x;
+      f[3 * i + 1] = fr.point.y;
+      f[3 * i + 2] = fr.score;
+    }
+    return new GameCheckpoint(tick, seed, levelManager.getCurrentLevelNumber(),
+        list.toArray(new GameCheckpoint.SnakeData[0]), f);
+  }
+
+  /**
+   * Restaura un checkpoint: nivel, tick y frutas quedan como estaban; las
+   * serpientes con token quedan estacionadas hasta que su jugador vuelva con
+   * RESUME (claimParked). Los bots y las serpientes sin token no se restauran.
+   * Los generadores se re-siembran con (semilla, tick): la partida sigue
+   * siendo reproducible desde aquí, pero no continúa la secuencia original.
+   */
+  public void restore(GameCheckpoint cp) {
+    levelManager.setLevel(cp.level);
+    initializeWalls();
+    snakes.clear();
+    directions.clear();
+    scores.clear();
+    scoreboard.clear();
+    growLeft.clear();
+    fruits.clear();
+    parked.clear();
+    frozen.clear();
+    for (int i = 0; i + 2 < cp.fruits.length; i += 3) {
+      fruits.add(new Fruit(new Pt(cp.fruits[i], cp.fruits[i + 1]), cp.fruits[i + 2]));
+    }
+    for (GameCheckpoint.SnakeData sd : cp.snakes) {
+      if (!BotPlayers.isBot(sd.id) && !sd.token.isEmpty()) parked.put(sd.token, sd);
+    }
+    tick = cp.tick;
+    SplittableRandom root = new SplittableRandom(cp.seed ^ StateHash.mix(cp.tick));
+    fruitRand = root.split();
+    spawnRand = root.split();
+    trails.clear();
+    stateHash = computeStateHash();
+    publish();
+  }
+
+  /** Tokens RESUME a guardar en los checkpoints (lo fija GameServer) */
+  public void setResumeTokens(IntFunction<String> resumeTokens) {
+    this.resumeTokens = resumeTokens;
+  }
+
+  public boolean hasParked(String token) { return parked.containsKey(token); }
+
+  /** Si hay una serpiente estacionada con ese token, pasa a ser del jugador 'id' */
+  public boolean claimParked(String token, int id) {
+    GameCheckpoint.SnakeData sd = parked.remove(token);
+    if (sd == null) return false;
+    if (snakes.containsKey(id)) hashOutPlayer(id);
+    LinkedList<Pt> body = new LinkedList<>();
+    for (int i = 0; i < sd.xs.length; i++) {
+      body.add(new Pt(sd.xs[i], sd.ys[i]));
+    }
+    Snake sn = new Snake(sd.name, body, sd.letter);
+    sn.growthPending = sd.growthPending;
+    snakes.put(id, sn);
+    directions.put(id, sd.direction);
+    scores.put(id, sd.score);
+    scoreboard.put(id, sd.name, sd.score);
+    growLeft.put(id, 0);
+    WorldSnapshot.Trail trail = new WorldSnapshot.Trail();
+    for (int i = sd.xs.length - 1; i >= 0; i--) {
+      trail.addHead(sd.xs[i], sd.ys[i]);
+    }
+    trails.put(id, trail);
+    stateHash ^= snakeHash(id, sn) ^ StateHash.score(id, sd.score);
+    publish();
+    return true;
+  }
+
+  public int getParkedCount() { return parked.size(); }
+
+  /** Descarta las serpientes estacionadas que nadie reclamó; devuelve cuántas eran */
+  public int dropParked() {
+    int n = parked.size();
+    parked.clear();
+    return n;
+  }
+
+  public String getDirection(int id) { return directions.getOrDefault(id, "RIGHT"); }
+
+  public long getTick() { return tick; }
+
+  /** Hash de 64 bits del mundo, mantenido en O(1) por cambio */
+  public long getStateHash() { return stateHash; }
+
+  /** Recalcula el hash desde cero (para verificar el incremental) */
+  public long computeStateHash() {
+    long h = StateHash.level(levelManager.getCurrentLevelNumber());
+    for (Fruit f : fruits) {
+      h ^= StateHash.fruit(f.point.x, f.point.y, f.score);
+    }
+    for (Map.Entry<Integer, Snake> e : snakes.entrySet()) {
+      h ^= snakeHash(e.getKey(), e.getValue());
+    }
+    for (Map.Entry<Integer, Integer> e : scores.entrySet()) {
+      h ^= StateHash.score(e.getKey(), e.getValue());
+    }
+    return h;
+  }
+
+  private long snakeHash(int id, Snake snake) {
+    long h = StateHash.direction(id, directions.getOrDefault(id, "RIGHT"))
+        ^ StateHash.growth(id, snake.growthPending);
+    for (Pt p : snake.points) {
+      h ^= StateHash.segment(id, p.x, p.y);
+    }
+    if (!snake.points.isEmpty()) {
+      h ^= StateHash.head(id, snake.points.getFirst().x, snake.points.getFirst().y);
+    }
+    return h;
+  }
+
+  // Saca del hash la serpiente (no su puntaje)
+  private void hashOutSnake(int id, Snake snake) {
+    stateHash ^= snakeHash(id, snake);
+  }
+
+  // Saca del hash todo lo del jugador
+  private void hashOutPlayer(int id) {
+    Snake snake = snakes.get(id);
+    if (snake != null) hashOutSnake(id, snake);
+    Integer score = scores.get(id);
+    if (score != null) stateHash ^= StateHash.score(id, score);
+  }
+
 
 
 }
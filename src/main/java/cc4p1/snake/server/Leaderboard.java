@@ -0,0 +1,199 @@
+package cc4p1.snake.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tabla de récords persistente (mejor puntaje por nombre).
+ * - índice en memoria ordenado (TreeSet por puntaje desc, nombre asc) más un
+ *   mapa nombre -> entrada: actualizar es O(log n) y el top-K es O(k)
+ * - un índice de todos los tiempos y uno por nivel
+ * - cada resultado se agrega a un log de texto en un hilo aparte
+ *   ("nivel\tpuntaje\thora\tnombre"); cuando el log tiene muchas más líneas
+ *   que récords se compacta reescribiendo solo los mejores (archivo temporal
+ *   + move atómico)
+ */
+public class Leaderboard {
+  /** Una fila del ranking */
+  public static final class Entry implements Comparable<Entry> {
+    public final String name;
+    public final int score;
+    public final long timeMs;
+
+    Entry(String name, int score, long timeMs) {
+      this.name = name;
+      this.score = score;
+      this.timeMs = timeMs;
+    }
+
+    @Override
+    public int compareTo(Entry o) {
+      if (score != o.score) return Integer.compare(o.score, score);
+      return name.compareTo(o.name);
+    }
+  }
+
+  // Un ranking: mejor puntaje por nombre
+  private static final class Board {
+    final TreeSet<Entry> ordered = new TreeSet<>();
+    final Map<String, Entry> byName = new HashMap<>();
+
+    boolean update(String name, int score, long timeMs) {
+      Entry old = byName.get(name);
+      if (old != null && old.score >= score) return false;
+      if (old != null) ordered.remove(old);
+      Entry e = new Entry(name, score, timeMs);
+      ordered.add(e);
+      byName.put(name, e);
+      return true;
+    }
+
+    List<Entry> top(int k) {
+      List<Entry> out = new ArrayList<>(Math.min(k, ordered.size()));
+      for (Entry e : ordered) {
+        if (out.size() >= k) break;
+        out.add(e);
+      }
+      return out;
+    }
+  }
+
+  private static final int ALL_TIME = 0;
+
+  private final Map<Integer, Board> boards = new ConcurrentHashMap<>();
+  private final Path logFile;
+  private final ExecutorService writer;
+  private BufferedWriter out;
+  private long logLines = 0;
+
+  /** @param logFile archivo del log, o null para un ranking solo en memoria */
+  public Leaderboard(Path logFile) throws IOException {
+    this.logFile = logFile;
+    if (logFile == null) {
+      this.writer = null;
+      return;
+    }
+    if (Files.exists(logFile)) load();
+    this.writer = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "LeaderboardWriter");
+      t.setDaemon(true);
+      return t;
+    });
+    this.out = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  private void load() throws IOException {
+    for (String line : Files.readAllLines(logFile, StandardCharsets.UTF_8)) {
+      String[] p = line.split("\t", 4);
+      if (p.length < 4) continue; // línea cortada por una caída
+      try {
+        apply(p[3], Integer.parseInt(p[0]), Integer.parseInt(p[1]), Long.parseLong(p[2]));
+        logLines++;
+      } catch (NumberFormatException ignored) {
+      }
+    }
+  }
+
+  private synchronized boolean apply(String name, int level, int score, long timeMs) {
+    boolean changed = board(ALL_TIME).update(name, score, timeMs);
+    changed |= board(level).update(name, score, timeMs);
+    return changed;
+  }
+
+  private Board board(int level) {
+    return boards.computeIfAbsent(level, k -> new Board());
+  }
+
+  /** Registra el resultado de una partida (muerte o salida del jugador) */
+  public void submit(String name, int level, int score) {
+    if (score <= 0) return;
+    long now = System.currentTimeMillis();
+    // solo los récords nuevos se persisten: el resto no cambia ningún ranking
+    if (!apply(name, level, score, now) || writer == null) return;
+    String line = level + "\t" + score + "\t" + now + "\t" + name.replace('\n', ' ').replace('\t', ' ');
+    writer.execute(() -> append(line));
+  }
+
+  private void append(String line) {
+    try {
+      out.write(line);
+      out.newLine();
+      out.flush();
+      logLines++;
+      if (logLines > 1024 && logLines > 4L * recordCount()) compact();
+    } catch (IOException e) {
+      System.err.println("Leaderboard: " + e.getMessage());
+    }
+  }
+
+  private synchronized int recordCount() {
+    int n = 0;
+    for (Map.Entry<Integer, Board> e : boards.entrySet()) {
+      if (e.getKey() != ALL_TIME) n += e.getValue().byName.size();
+    }
+    return n;
+  }
+
+  // Reescribe el log con solo el mejor resultado por (nivel, nombre)
+  private void compact() throws IOException {
+    List<String> lines = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<Integer, Board> b : boards.entrySet()) {
+        if (b.getKey() == ALL_TIME) continue;
+        for (Entry e : b.getValue().ordered) {
+          lines.add(b.getKey() + "\t" + e.score + "\t" + e.timeMs + "\t" + e.name);
+        }
+      }
+    }
+    Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+    Files.write(tmp, lines, StandardCharsets.UTF_8);
+    out.close();
+    Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    out = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    System.out.println("Leaderboard compactado: " + logLines + " -> " + lines.size() + " líneas");
+    logLines = lines.size();
+  }
+
+  /** Los k mejores de todos los tiempos (level = 0) o de un nivel */
+  public synchronized List<Entry> top(int level, int k) {
+    Board b = boards.get(level);
+    return b == null ? new ArrayList<>() : b.top(k);
+  }
+
+  /** Texto para el comando TOP */
+  public String render(int level, int k) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("=== RÉCORDS ").append(level == ALL_TIME ? "HISTÓRICOS" : "NIVEL " + level).append(" ===\n");
+    int rank = 1;
+    for (Entry e : top(level, k)) {
+      sb.append(rank++).append(". ").append(e.name).append(": ").append(e.score).append(" puntos\n");
+    }
+    if (rank == 1) sb.append("Sin récords todavía\n");
+    return sb.toString();
+  }
+
+  public void close() {
+    if (writer == null) return;
+    writer.execute(() -> {
+      try {
+        out.close();
+      } catch (IOException ignored) {
+      }
+    });
+    writer.shutdown();
+  }
+}
@@ -0,0 +1,102 @@
+package cc4p1.snake.server;
+
+/**
+ * Control de carga: mira cada ventana de métricas (utilización de las etapas
+ * del tick, ticks encolados y descartes) y degrada el servicio por pasos
+ * cuando la sobrecarga se sostiene:
+ * 1. SEND_HALF: se envía un tick de cada dos (la simulación sigue igual)
+ * 2. NO_BOARD: además los frames van sin BOARD (el cliente dibuja desde STATE)
+ * 3. TPS_75 / 4. TPS_50: además baja el tick del nivel al 75% / 50%
+ * Se recupera de a un paso cuando la carga se mantiene baja; los umbrales
+ * distintos para subir y bajar evitan que oscile.
+ *
+ * Solo lo usa el hilo del tick; el nivel se lee desde cualquier hilo.
+ */
+public class LoadController {
+
+  public enum Level { NORMAL, SEND_HALF, NO_BOARD, TPS_75, TPS_50 }
+
+  // utilización (%) de la etapa más cargada a partir de la cual una ventana cuenta como sobrecarga
+  private static final int HIGH_PERCENT = Integer.getInteger("snake.load.highPercent", 85);
+  // por debajo de esto (y sin cola ni descartes) la ventana cuenta como holgada
+  private static final int LOW_PERCENT = Integer.getInteger("snake.load.lowPercent", 50);
+  // ticks encolados entre etapas que ya cuentan como sobrecarga
+  private static final int HIGH_QUEUE = Integer.getInteger("snake.load.highQueue", 3);
+  // ventanas seguidas para degradar / recuperar un paso
+  private static final int DEGRADE_WINDOWS = Integer.getInteger("snake.load.degradeWindows", 3);
+  private static final int RECOVER_WINDOWS = Integer.getInteger("snake.load.recoverWindows", 5);
+
+  private final ServerMetrics metrics;
+  private final boolean enabled;
+  private volatile Level level = Level.NORMAL;
+  private int overWindows, underWindows;
+  private long degradations, recoveries;
+
+  public LoadController(ServerMetrics metrics, boolean enabled) {
+    this.metrics = metrics;
+    this.enabled = enabled;
+    metrics.gauge("carga", () -> level.name());
+    metrics.gauge("degradaciones", () -> String.valueOf(degradations));
+    metrics.gauge("recuperaciones", () -> String.valueOf(recoveries));
+  }
+
+  /**
+   * Evalúa la ventana recién cerrada (después de metrics.roll()).
+   * @return true si cambió el nivel
+   */
+  public boolean evaluate(int queuedTicks) {
+    if (!enabled) return false;
+    ServerMetrics.Stage hot = metrics.busiest();
+    int percent = hot == null ? 0 : (int) Math.round(hot.getUtilization() * 100);
+    long dropped = metrics.windowDropped();
+
+    boolean over = percent >= HIGH_PERCENT || queuedTicks >= HIGH_QUEUE || dropped > 0;
+    boolean under = percent < LOW_PERCENT && queuedTicks == 0 && dropped == 0;
+    overWindows = over ? overWindows + 1 : 0;
+    underWindows = under ? underWindows + 1 : 0;
+
+    Level[] all = Level.values();
+    String why = (hot == null ? "-" : hot.name) + "=" + percent + "%, cola=" + queuedTicks + ", descartes=" + dropped;
+    if (overWindows >= DEGRADE_WINDOWS && level.ordinal() < all.length - 1) {
+      change(all[level.ordinal() + 1], "sobrecarga (" + why + ")");
+      degradations++;
+      return true;
+    }
+    if (underWindows >= RECOVER_WINDOWS && level != Level.NORMAL) {
+      change(all[level.ordinal() - 1], "carga baja (" + why + ")");
+      recoveries++;
+      return true;
+    }
+    return false;
+  }
+
+  private void change(Level next, String reason) {
+    metrics.event("carga " + level + " -> " + next + ": " + reason);
+    level = next;
+    overWindows = 0;
+    underWindows = 0;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  /** Cada cuántos ticks se envía un snapshot a los clientes */
+  public int sendEvery() {
+    return level.ordinal() >= Level.SEND_HALF.ordinal() ? 2 : 1;
+  }
+
+  /** false: los frames van solo con STATE */
+  public boolean sendBoard() {
+    return level.ordinal() < Level.NO_BOARD.ordinal();
+  }
+
+  /** Tick efectivo para el tick que pide el nivel */
+  public int tps(int levelTps) {
+    switch (level) {
+      case TPS_75: return Math.max(1, levelTps * 3 / 4);
+      case TPS_50: return Math.max(1, levelTps / 2);
+      default: return levelTps;
+    }
+  }
+}
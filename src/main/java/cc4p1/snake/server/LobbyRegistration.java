@@ -0,0 +1,94 @@
+package cc4p1.snake.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Registro de esta instancia en un LobbyServer: REGISTER al conectar y un
+ * LOAD cada reportMs por la misma conexión. Si el lobby no responde o se
+ * cae, se reintenta; el juego no depende de él.
+ */
+public class LobbyRegistration {
+  private static final long RETRY_MS = 2000;
+
+  private final String lobbyHost;
+  private final int lobbyPort;
+  private final int gamePort;
+  private final String advertiseHost; // vacío = el lobby usa la IP de la conexión
+  private final long reportMs;
+  private final Supplier<String> load; // "<nivel> <jugadores> <cupo> <carga> <utilización %>"
+  private volatile boolean running = true;
+  private volatile Socket socket;
+
+  public LobbyRegistration(String lobbyHost, int lobbyPort, int gamePort, String advertiseHost, long reportMs,
+      Supplier<String> load) {
+    this.lobbyHost = lobbyHost;
+    this.lobbyPort = lobbyPort;
+    this.gamePort = gamePort;
+    this.advertiseHost = advertiseHost;
+    this.reportMs = Math.max(100, reportMs);
+    this.load = load;
+  }
+
+  public void start() {
+    Thread t = new Thread(this::loop, "LobbyRegistration");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private void loop() {
+    boolean warned = false;
+    while (running) {
+      try (Socket s = new Socket()) {
+        socket = s;
+        s.connect(new InetSocketAddress(lobbyHost, lobbyPort), 3000);
+        s.setTcpNoDelay(true);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        out.print("REGISTER " + gamePort + (advertiseHost.isEmpty() ? "" : " " + advertiseHost) + "\n");
+        out.flush();
+        String reply = in.readLine();
+        if (!"OK".equals(reply)) throw new IOException("el lobby respondió " + reply);
+        System.out.println("Instancia registrada en el lobby " + lobbyHost + ":" + lobbyPort);
+        warned = false;
+        while (running) {
+          out.print("LOAD " + load.get() + "\n");
+          out.flush();
+          if (out.checkError()) throw new IOException("conexión cerrada");
+          Thread.sleep(reportMs);
+        }
+      } catch (IOException e) {
+        if (running && !warned) {
+          System.err.println("Lobby " + lobbyHost + ":" + lobbyPort + " no disponible (" + e.getMessage()
+              + "), se reintenta cada " + RETRY_MS + " ms");
+          warned = true;
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        Thread.sleep(RETRY_MS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  public void close() {
+    running = false;
+    Socket s = socket;
+    if (s != null) {
+      try {
+        s.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
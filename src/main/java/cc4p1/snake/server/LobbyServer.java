@@ -0,0 +1,226 @@
+package cc4p1.snake.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lobby: reparte a los jugadores entre varias instancias de GameServer
+ * (cada una es una partida en su propio puerto, en este u otro proceso).
+ * - cada instancia se registra (REGISTER) y reporta su carga (LOAD) por una
+ *   conexión que mantiene abierta; si se corta o deja de reportar, no recibe
+ *   más jugadores
+ * - el cliente pide FIND [nivel] y recibe REDIRECT <host> <puerto> de la
+ *   instancia menos cargada que está jugando ese nivel (0 = cualquiera)
+ * - menos cargada: primero el nivel de degradación de su LoadController,
+ *   después la ocupación de cupos contando a los redirigidos que todavía no
+ *   aparecen en un LOAD (una ráfaga de FIND no va toda a la misma instancia)
+ *
+ * Protocolo (líneas de texto):
+ *   instancia: REGISTER <puerto> [host]   -> OK (sin host se usa la IP de la conexión)
+ *              LOAD <nivel> <jugadores> <cupo> <carga> <utilización %>
+ *   cliente:   FIND [nivel]               -> REDIRECT <host> <puerto> | ERR ...
+ *              LIST                       -> INSTANCES <host:puerto nivel jugadores/cupo carga> ; ...
+ *              QUIT
+ */
+public class LobbyServer {
+  // sin LOAD durante este tiempo la instancia deja de recibir jugadores
+  private static final long STALE_MS = Long.getLong("snake.lobby.staleMs", 5000);
+  // conexiones de clientes que no dicen nada se cierran
+  private static final int IDLE_TIMEOUT_MS = Integer.getInteger("snake.lobby.idleMs", 30000);
+
+  // Solo se lee y modifica bajo el lock del lobby
+  private static final class Instance {
+    final String host;
+    final int port;
+    int level, players, maxPlayers, load, utilization;
+    long lastReportMs = 0; // sin LOAD todavía: no recibe jugadores
+    int pending;           // redirigidos desde el último LOAD
+
+    Instance(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    String key() {
+      return host + ":" + port;
+    }
+  }
+
+  private final int port;
+  private final Map<String, Instance> instances = new ConcurrentHashMap<>();
+  private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "LobbyConnection");
+    t.setDaemon(true);
+    return t;
+  });
+  private ServerSocket serverSocket;
+  private volatile boolean running = true;
+
+  public LobbyServer(int port) {
+    this.port = port;
+  }
+
+  public void start() throws IOException {
+    serverSocket = new ServerSocket(port);
+    Thread t = new Thread(this::acceptLoop, "LobbyAccept");
+    t.start();
+    System.out.println("Lobby en puerto " + port);
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      try {
+        Socket s = serverSocket.accept();
+        s.setTcpNoDelay(true);
+        connections.execute(() -> serve(s));
+      } catch (IOException e) {
+        if (running) e.printStackTrace();
+      }
+    }
+  }
+
+  // Una conexión: la primera línea dice si es una instancia o un cliente
+  private void serve(Socket socket) {
+    Instance registered = null;
+    try (Socket s = socket) {
+      s.setSoTimeout(IDLE_TIMEOUT_MS);
+      BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+      String line;
+      while (running && (line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.startsWith("LOAD ") && registered != null) {
+          report(registered, line.substring(5));
+          continue;
+        }
+        if (line.startsWith("REGISTER ")) {
+          registered = register(line.substring(9), s);
+          out.print(registered == null ? "ERR Invalid register. Use REGISTER <port> [host]\n" : "OK\n");
+        } else if (line.equals("FIND") || line.startsWith("FIND ")) {
+          out.print(find(line.substring(4).trim()));
+        } else if (line.equals("LIST")) {
+          out.print(list());
+        } else if (line.equals("QUIT")) {
+          break;
+        } else {
+          out.print("ERR Unknown command. This is a lobby: use FIND [level]\n");
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      // desconexión o inactividad
+    } finally {
+      if (registered != null && instances.remove(registered.key(), registered)) {
+        System.out.println("Instancia " + registered.key() + " sale del lobby");
+      }
+    }
+  }
+
+  // REGISTER <puerto> [host]
+  private Instance register(String args, Socket s) {
+    String[] parts = args.trim().split("\\s+");
+    try {
+      int gamePort = Integer.parseInt(parts[0]);
+      if (gamePort <= 0 || gamePort > 65535) return null;
+      String host = parts.length > 1 ? parts[1] : s.getInetAddress().getHostAddress();
+      Instance inst = new Instance(host, gamePort);
+      instances.put(inst.key(), inst); // una instancia que vuelve reemplaza a la anterior
+      System.out.println("Instancia registrada: " + inst.key());
+      return inst;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  // LOAD <nivel> <jugadores> <cupo> <carga> <utilización %>
+  private void report(Instance inst, String args) {
+    String[] parts = args.trim().split("\\s+");
+    if (parts.length < 5) return;
+    try {
+      int level = Integer.parseInt(parts[0]);
+      int players = Integer.parseInt(parts[1]);
+      int maxPlayers = Integer.parseInt(parts[2]);
+      int load = Integer.parseInt(parts[3]);
+      int utilization = Integer.parseInt(parts[4]);
+      synchronized (this) {
+        inst.level = level;
+        inst.players = players;
+        inst.maxPlayers = maxPlayers;
+        inst.load = load;
+        inst.utilization = utilization;
+        inst.pending = 0; // el reporte ya incluye a los que llegaron
+        inst.lastReportMs = System.currentTimeMillis();
+      }
+    } catch (NumberFormatException ignored) {
+      // reporte inválido: se conserva el anterior
+    }
+  }
+
+  // FIND [nivel]: la instancia elegida cuenta un jugador más hasta su próximo LOAD
+  private String find(String args) {
+    int level = 0;
+    try {
+      if (!args.isEmpty()) level = Integer.parseInt(args);
+    } catch (NumberFormatException e) {
+      return "ERR Invalid level. Use FIND [level]\n";
+    }
+    long now = System.currentTimeMillis();
+    Instance best = null;
+    synchronized (this) {
+      for (Instance inst : instances.values()) {
+        if (now - inst.lastReportMs > STALE_MS) continue;
+        if (level > 0 && inst.level != level) continue;
+        if (inst.players + inst.pending >= inst.maxPlayers) continue;
+        if (best == null || lessLoaded(inst, best)) best = inst;
+      }
+      if (best != null) best.pending++;
+    }
+    if (best == null) {
+      return level > 0 ? "ERR No instance available for level " + level + "\n" : "ERR No instance available\n";
+    }
+    return "REDIRECT " + best.host + " " + best.port + "\n";
+  }
+
+  // Primero la degradación, luego la ocupación de cupos y por último la CPU
+  private static boolean lessLoaded(Instance a, Instance b) {
+    if (a.load != b.load) return a.load < b.load;
+    long fillA = (long) (a.players + a.pending) * b.maxPlayers;
+    long fillB = (long) (b.players + b.pending) * a.maxPlayers;
+    if (fillA != fillB) return fillA < fillB;
+    return a.utilization < b.utilization;
+  }
+
+  private synchronized String list() {
+    StringBuilder sb = new StringBuilder("INSTANCES");
+    long now = System.currentTimeMillis();
+    boolean first = true;
+    for (Instance inst : instances.values()) {
+      sb.append(first ? " " : " ; ");
+      first = false;
+      sb.append(inst.key()).append(' ').append(inst.level).append(' ')
+          .append(inst.players + inst.pending).append('/').append(inst.maxPlayers).append(' ')
+          .append(LoadController.Level.values()[Math.max(0, Math.min(inst.load, LoadController.Level.values().length - 1))]);
+      if (now - inst.lastReportMs > STALE_MS) sb.append(" (sin reporte)");
+    }
+    return sb.append('\n').toString();
+  }
+
+  public void close() {
+    running = false;
+    try {
+      if (serverSocket != null) serverSocket.close();
+    } catch (IOException ignored) {
+    }
+    connections.shutdownNow();
+  }
+}
@@ -0,0 +1,214 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Formato de las grabaciones de MatchRecorder y su lectura.
+ * Los segmentos de una partida se leen encadenados: el byte ROLL indica que
+ * los eventos siguen en el próximo archivo.
+ */
+public final class MatchLog {
+  public static final int MAGIC = 0x534E4B52; // "SNKR"
+  public static final short VERSION = 1;
+  static final String EXT = ".snkrec";
+  static final int HEADER_BYTES = 4 + 2 + 8 + 4 + 8 + 4 + 8;
+
+  // Tipos de evento (0 = fin de datos)
+  static final byte TICK = 'T';
+  static final byte HASH = 'H';
+  static final byte INPUT = 'I';
+  static final byte JOIN = 'J';
+  static final byte QUIT = 'Q';
+  static final byte LEVEL = 'L';
+  static final byte NEXT_LEVEL = 'N';
+  static final byte FREEZE = 'F';
+  static final byte ROLL = 'R';
+
+  private static final String[] DIRS = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+  private MatchLog() {
+  }
+
+  /** Recibe los eventos de una grabación en orden */
+  public interface Visitor {
+    void join(int id, String name);
+
+    void quit(int id);
+
+    void input(int id, String dir);
+
+    void level(int level);
+
+    void nextLevel();
+
+    /** Serpiente congelada (o liberada) mientras su jugador retoma la conexión */
+    void freeze(int id, boolean frozen);
+
+    void tick();
+
+    /** Hash del mundo registrado después del tick anterior */
+    void hash(long stateHash);
+  }
+
+  /** Datos de la cabecera del primer segmento */
+  public static class Header {
+    public final long seed;
+    public final int level;
+    public final long startTick;
+    public final long startMs;
+
+    Header(long seed, int level, long startTick, long startMs) {
+      this.seed = seed;
+      this.level = level;
+      this.startTick = startTick;
+      this.startMs = startMs;
+    }
+  }
+
+  static Path segmentPath(Path base, int segment) {
+    return base.resolveSibling(base.getFileName() + String.format("-%03d", segment) + EXT);
+  }
+
+  static byte dirCode(String dir) {
+    for (byte i = 0; i < DIRS.length; i++) {
+      if (DIRS[i].equals(dir)) return i;
+    }
+    return 3;
+  }
+
+  /**
+   * Lee la partida que empieza en 'first' (segmento -000) y entrega sus
+   * eventos al visitor. Devuelve la cabecera del primer segmento.
+   */
+  public static Header read(Path first, Visitor v) throws IOException {
+    return scan(first, v, new long[1]);
+  }
+
+  /**
+   * Bytes de datos de la partida hasta el último evento escrito. No es el
+   * largo de los archivos: el segmento en curso está mapeado a su tamaño
+   * completo desde el primer tick y solo se recorta al cerrarse.
+   */
+  public static long dataLength(Path first) throws IOException {
+    long[] end = new long[1];
+    scan(first, IGNORE, end);
+    return end[0];
+  }
+
+  private static final Visitor IGNORE = new Visitor() {
+    @Override public void join(int id, String name) { }
+    @Override public void quit(int id) { }
+    @Override public void input(int id, String dir) { }
+    @Override public void level(int level) { }
+    @Override public void nextLevel() { }
+    @Override public void freeze(int id, boolean frozen) { }
+    @Override public void tick() { }
+    @Override public void hash(long stateHash) { }
+  };
+
+  // Recorre los segmentos encadenados; en end[0] deja los bytes decodificados
+  private static Header scan(Path first, Visitor v, long[] end) throws IOException {
+    String name = first.getFileName().toString();
+    if (!name.endsWith("-000" + EXT)) throw new IOException("No es el primer segmento: " + name);
+    Path base = first.resolveSibling(name.substring(0, name.length() - ("-000" + EXT).length()));
+
+    Header header = null;
+    for (int segment = 0; ; segment++) {
+      Path path = segmentPath(base, segment);
+      if (!Files.exists(path)) break;
+      try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        Header h = readHeader(buf, path);
+        if (header == null) header = h;
+        boolean rolled = readEvents(buf, v);
+        end[0] += buf.position();
+        if (!rolled) break; // sin ROLL: la partida terminó en este segmento
+      }
+    }
+    if (header == null) throw new IOException("No existe " + first);
+    return header;
+  }
+
+  /** Solo la cabecera de un segmento (p.ej. para conocer la semilla) */
+  public static Header readHeader(Path segment) throws IOException {
+    try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+      return readHeader(ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ch.size(), HEADER_BYTES)), segment);
+    }
+  }
+
+  private static Header readHeader(MappedByteBuffer buf, Path path) throws IOException {
+    if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+      throw new IOException("Archivo no es una grabación: " + path);
+    }
+    if (buf.getShort() != VERSION) throw new IOException("Versión de grabación no soportada: " + path);
+    long seed = buf.getLong();
+    int level = buf.getInt();
+    long startTick = buf.getLong();
+    buf.getInt(); // número de segmento
+    long startMs = buf.getLong();
+    return new Header(seed, level, startTick, startMs);
+  }
+
+  // true si el segmento terminó con ROLL (hay que seguir en el siguiente)
+  private static boolean readEvents(MappedByteBuffer buf, Visitor v) {
+    while (buf.hasRemaining()) {
+      byte type = buf.get();
+      switch (type) {
+        case TICK:
+          v.tick();
+          break;
+        case HASH:
+          v.hash(buf.getLong());
+          break;
+        case INPUT: {
+          int id = getVarint(buf);
+          v.input(id, DIRS[buf.get() & 3]);
+          break;
+        }
+        case JOIN: {
+          int id = getVarint(buf);
+          byte[] n = new byte[getVarint(buf)];
+          buf.get(n);
+          v.join(id, new String(n, StandardCharsets.UTF_8));
+          break;
+        }
+        case QUIT:
+          v.quit(getVarint(buf));
+          break;
+        case LEVEL:
+          v.level(getVarint(buf));
+          break;
+        case NEXT_LEVEL:
+          v.nextLevel();
+          break;
+        case FREEZE: {
+          int id = getVarint(buf);
+          v.freeze(id, buf.get() != 0);
+          break;
+        }
+        case ROLL:
+          return true;
+        default:
+          return false; // 0 = fin de datos (o grabación cortada)
+      }
+    }
+    return false;
+  }
+
+  private static int getVarint(MappedByteBuffer buf) {
+    int v = 0, shift = 0;
+    byte b;
+    do {
+      b = buf.get();
+      v |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return v;
+  }
+}
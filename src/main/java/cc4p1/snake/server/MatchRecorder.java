@@ -0,0 +1,187 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Grabación de partidas como log de entradas (no de estados).
+ * Con la semilla y las entradas aplicadas, GameState reproduce la partida
+ * exacta (ver DeterminismCheck y la herramienta MatchReplay).
+ *
+ * Se escribe sobre un MappedByteBuffer de un FileChannel: agregar un evento
+ * es copiar bytes a memoria, sin syscalls por tick. Al llenarse un segmento
+ * se cierra (recortado a su largo real) y se sigue en el siguiente archivo:
+ *   <base>-000.snkrec, <base>-001.snkrec, ...
+ *
+ * Formato (big endian), ver MatchLog para la lectura:
+ *   cabecera: MAGIC, versión, semilla, nivel inicial, tick inicial, segmento, hora de inicio
+ *   eventos:  un byte de tipo y sus campos (ids como varint)
+ * Un byte 0 marca el fin de los datos (el resto del archivo mapeado está en 0).
+ */
+public class MatchRecorder {
+  // Espacio que se deja libre para el evento más grande (JOIN con nombre largo)
+  private static final int MAX_EVENT = 1024;
+  // Cada cuántos ticks se guarda el hash del mundo para detectar desyncs al reproducir
+  static final int HASH_EVERY = 64;
+
+  private final Path dir;
+  private final String base;
+  private final long segmentBytes;
+  private final long seed;
+  private final long startMs = System.currentTimeMillis();
+
+  private int segment = -1;
+  private FileChannel channel;
+  private MappedByteBuffer buf;
+  private long bytesWritten = 0;
+  // Para la cabecera del siguiente segmento
+  private int currentLevel;
+  private long currentTick;
+
+  public MatchRecorder(Path dir, long segmentBytes, long seed) throws IOException {
+    this.dir = dir;
+    this.base = "match-" + startMs;
+    this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+    this.seed = seed;
+    Files.createDirectories(dir);
+  }
+
+  public Path firstSegment() {
+    return MatchLog.segmentPath(dir.resolve(base), 0);
+  }
+
+  /** Abre el primer segmento; se llama con el estado recién creado */
+  public synchronized void begin(int level, long tick) throws IOException {
+    currentLevel = level;
+    currentTick = tick;
+    openSegment(level, tick);
+  }
+
+  public synchronized void join(int id, String name) {
+    byte[] n = name.getBytes(StandardCharsets.UTF_8);
+    int len = Math.min(n.length, MAX_EVENT - 16);
+    if (!ready()) return;
+    buf.put(MatchLog.JOIN);
+    putVarint(id);
+    putVarint(len);
+    buf.put(n, 0, len);
+  }
+
+  public synchronized void quit(int id) {
+    if (!ready()) return;
+    buf.put(MatchLog.QUIT);
+    putVarint(id);
+  }
+
+  public synchronized void input(int id, String dir) {
+    if (!ready()) return;
+    buf.put(MatchLog.INPUT);
+    putVarint(id);
+    buf.put(MatchLog.dirCode(dir));
+  }
+
+  public synchronized void freeze(int id, boolean frozen) {
+    if (!ready()) return;
+    buf.put(MatchLog.FREEZE);
+    putVarint(id);
+    buf.put((byte) (frozen ? 1 : 0));
+  }
+
+  public synchronized void level(int level) {
+    if (!ready()) return;
+    buf.put(MatchLog.LEVEL);
+    putVarint(level);
+    currentLevel = level;
+  }
+
+  public synchronized void nextLevel(int newLevel) {
+    if (!ready()) return;
+    buf.put(MatchLog.NEXT_LEVEL);
+    currentLevel = newLevel;
+  }
+
+  /** Fin de un step(); cada HASH_EVERY ticks agrega el hash del mundo */
+  public synchronized void step(long tick, long stateHash) {
+    if (!ready()) return;
+    buf.put(MatchLog.TICK);
+    currentTick = tick;
+    if (tick % HASH_EVERY == 0) {
+      buf.put(MatchLog.HASH);
+      buf.putLong(stateHash);
+    }
+  }
+
+  public synchronized long getBytesWritten() {
+    return bytesWritten + (buf != null ? buf.position() : 0);
+  }
+
+  public synchronized void close() {
+    closeSegment();
+  }
+
+  // false si no se está grabando; si el segmento se llenó, pasa al siguiente
+  private boolean ready() {
+    if (buf == null) return false;
+    if (buf.remaining() >= MAX_EVENT) return true;
+    // La partida sigue siendo una sola: se reproduce encadenando segmentos
+    try {
+      buf.put(MatchLog.ROLL);
+      closeSegment();
+      openSegment(currentLevel, currentTick);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Grabación detenida: " + e.getMessage());
+      buf = null;
+      return false;
+    }
+  }
+
+  private void openSegment(int level, long tick) throws IOException {
+    segment++;
+    Path path = MatchLog.segmentPath(dir.resolve(base), segment);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    buf.putInt(MatchLog.MAGIC);
+    buf.putShort(MatchLog.VERSION);
+    buf.putLong(seed);
+    buf.putInt(level);
+    buf.putLong(tick);
+    buf.putInt(segment);
+    buf.putLong(startMs);
+    System.out.println("Grabando partida en " + path);
+  }
+
+  private void closeSegment() {
+    if (channel == null) return;
+    try {
+      int len = buf != null ? buf.position() : 0;
+      bytesWritten += len;
+      if (buf != null) buf.force();
+      buf = null;
+      try {
+        channel.truncate(len);
+      } catch (IOException e) {
+        // algunos sistemas no recortan un archivo aún mapeado: el lector se
+        // detiene en el primer byte 0, así que el relleno no molesta
+      }
+      channel.close();
+    } catch (IOException e) {
+      System.err.println("Error cerrando segmento de grabación: " + e.getMessage());
+    }
+    channel = null;
+  }
+
+  private void putVarint(int v) {
+    while ((v & ~0x7F) != 0) {
+      buf.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    buf.put((byte) v);
+  }
+}
@@ -0,0 +1,85 @@
+package cc4p1.snake.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids de sesión sin locks, reciclables y sin ids "viejos" vivos.
+ * - id = generación << SLOT_BITS | ranura; las ranuras liberadas vuelven a
+ *   una pila libre (Treiber, con sello contra ABA) y se reusan
+ * - liberar incrementa la generación de la ranura con un CAS: un id viejo
+ *   (comando encolado, datagrama, segundo QUIT) ya no coincide con la
+ *   generación actual y release()/isLive() lo rechazan
+ * - la generación da la vuelta tras 2^16 reusos de la misma ranura, mucho
+ *   más de lo que vive cualquier referencia a un id
+ *
+ * Los ids de jugador quedan por debajo de 2^30 (ahí empiezan los bots).
+ */
+public class PlayerIds {
+  static final int SLOT_BITS = 14;
+  public static final int MAX_SLOTS = (1 << SLOT_BITS) - 1; // la ranura 0 no se usa: ningún id vale 0
+  private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+  private static final int GEN_MASK = 0xFFFF;
+
+  private final AtomicIntegerArray generation = new AtomicIntegerArray(MAX_SLOTS + 1);
+  private final AtomicIntegerArray next = new AtomicIntegerArray(MAX_SLOTS + 1);
+  // cima de la pila libre: sello (32 bits altos) | ranura (0 = vacía)
+  private final AtomicLong free = new AtomicLong();
+  // ranuras nunca usadas: [highWater, MAX_SLOTS]
+  private final AtomicInteger highWater = new AtomicInteger(1);
+
+  /** Un id nuevo, o -1 si no quedan ranuras */
+  public int allocate() {
+    int slot = pop();
+    if (slot == 0) {
+      slot = highWater.getAndIncrement();
+      if (slot > MAX_SLOTS) {
+        highWater.decrementAndGet();
+        return -1;
+      }
+    }
+    return (generation.get(slot) << SLOT_BITS) | slot;
+  }
+
+  /**
+   * Devuelve el id. Solo la primera llamada con un id vivo tiene efecto.
+   * @return false si el id ya estaba liberado (o nunca existió)
+   */
+  public boolean release(int id) {
+    int slot = id & SLOT_MASK;
+    if (slot == 0 || slot >= highWater.get()) return false;
+    int gen = id >>> SLOT_BITS;
+    if (!generation.compareAndSet(slot, gen, (gen + 1) & GEN_MASK)) return false;
+    push(slot);
+    return true;
+  }
+
+  /** true si el id es el que tiene hoy su ranura y no fue liberado */
+  public boolean isLive(int id) {
+    int slot = id & SLOT_MASK;
+    return id > 0 && slot != 0 && slot < highWater.get() && generation.get(slot) == id >>> SLOT_BITS;
+  }
+
+  private void push(int slot) {
+    while (true) {
+      long top = free.get();
+      next.set(slot, (int) top);
+      if (free.compareAndSet(top, stamped(top, slot))) return;
+    }
+  }
+
+  private int pop() {
+    while (true) {
+      long top = free.get();
+      int slot = (int) top;
+      if (slot == 0) return 0;
+      if (free.compareAndSet(top, stamped(top, next.get(slot)))) return slot;
+    }
+  }
+
+  // nueva cima con el sello incrementado: un pop/push intermedio hace fallar el CAS
+  private static long stamped(long top, int slot) {
+    return (((top >>> 32) + 1) << 32) | (slot & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,173 @@
+package cc4p1.snake.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Frames pre-codificados de una partida grabada, listos para enviarse tal
+ * cual con FileChannel.transferTo (ver ReplayServer).
+ *
+ * Se generan una vez por grabación re-simulando su log de entradas:
+ *   <base>.frames  GEOMETRY de cada nivel + por tick "STATE ...\nSCORES ...\n"
+ *   <base>.idx     cabecera (bytes de datos del log, ticks) + por tick:
+ *                  offset y largo del frame, offset y largo de su GEOMETRY, TPS
+ * Si el log creció desde que se generaron (partida en curso) se regeneran en
+ * archivos nuevos que reemplazan a los anteriores: quien ya los tenía
+ * abiertos sigue leyendo los viejos hasta cerrarlos.
+ */
+public class ReplayFrames {
+  private static final int INDEX_HEADER = 8 + 4;
+  private static final int ENTRY = 8 + 4 + 8 + 4 + 4;
+
+  public final String name;
+  private final FileChannel frames;
+  private final MappedByteBuffer index;
+  private final long logSize; // datos del log (MatchLog.dataLength) con los que se generaron
+  private final int ticks;
+
+  private ReplayFrames(String name, FileChannel frames, MappedByteBuffer index) {
+    this.name = name;
+    this.frames = frames;
+    this.index = index;
+    this.logSize = index.getLong(0);
+    this.ticks = index.getInt(8);
+  }
+
+  public FileChannel channel() {
+    return frames;
+  }
+
+  public int getTicks() {
+    return ticks;
+  }
+
+  public long frameOffset(int tick) {
+    return index.getLong(INDEX_HEADER + tick * ENTRY);
+  }
+
+  public int frameLength(int tick) {
+    return index.getInt(INDEX_HEADER + tick * ENTRY + 8);
+  }
+
+  public long geometryOffset(int tick) {
+    return index.getLong(INDEX_HEADER + tick * ENTRY + 12);
+  }
+
+  public int geometryLength(int tick) {
+    return index.getInt(INDEX_HEADER + tick * ENTRY + 20);
+  }
+
+  public int tps(int tick) {
+    return index.getInt(INDEX_HEADER + tick * ENTRY + 24);
+  }
+
+  /** false si el log de la partida creció desde que se generaron estos frames */
+  public boolean isCurrent(Path dir) throws IOException {
+    return MatchLog.dataLength(dir.resolve(name + "-000" + MatchLog.EXT)) == logSize;
+  }
+
+  public void close() {
+    try {
+      frames.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /** Abre (generando si hace falta) los frames de la partida 'name' en 'dir' */
+  public static ReplayFrames open(Path dir, String name) throws IOException {
+    Path first = dir.resolve(name + "-000" + MatchLog.EXT);
+    if (!Files.exists(first)) throw new IOException("No existe la partida " + name);
+    Path framesPath = dir.resolve(name + ".frames");
+    Path indexPath = dir.resolve(name + ".idx");
+
+    long logSize = MatchLog.dataLength(first);
+    if (!Files.exists(indexPath) || !Files.exists(framesPath) || storedLogSize(indexPath) != logSize) {
+      build(first, framesPath, indexPath, logSize);
+    }
+    FileChannel frames = FileChannel.open(framesPath, StandardOpenOption.READ);
+    try (FileChannel idx = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      return new ReplayFrames(name, frames, idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size()));
+    }
+  }
+
+  private static long storedLogSize(Path indexPath) throws IOException {
+    try (FileChannel idx = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+      if (idx.size() < INDEX_HEADER) return -1;
+      return idx.map(FileChannel.MapMode.READ_ONLY, 0, 8).getLong(0);
+    }
+  }
+
+  // Re-simula el log y escribe frames + índice (en temporales que luego reemplazan a los actuales)
+  private static void build(Path first, Path framesPath, Path indexPath, long logSize) throws IOException {
+    long t0 = System.nanoTime();
+    Path framesTmp = framesPath.resolveSibling(framesPath.getFileName() + ".tmp");
+    Path indexTmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    long[] pos = {0, -1, 0}; // offset actual, offset de GEOMETRY vigente, su largo
+    int[] ticks = {0};
+    try (DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(framesTmp)));
+         DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexTmp)))) {
+      GameState state = new GameState(MatchLog.readHeader(first).seed, true);
+      int[] geometryVersion = {-1};
+      index.writeLong(-1); // se corrige al final: un índice incompleto nunca parece válido
+      index.writeInt(0);
+
+      MatchLog.read(first, new MatchLog.Visitor() {
+        @Override public void join(int id, String name) { state.addPlayer(id, name); }
+        @Override public void quit(int id) { state.removePlayer(id); }
+        @Override public void input(int id, String dir) { state.applyInput(id, dir); }
+        @Override public void level(int level) { state.setLevel(level); }
+        @Override public void nextLevel() { state.nextLevel(); }
+        @Override public void freeze(int id, boolean frozen) { state.setFrozen(id, frozen); }
+        @Override public void hash(long stateHash) { }
+
+        @Override
+        public void tick() {
+          state.step();
+          try {
+            if (state.getLevelVersion() != geometryVersion[0]) {
+              geometryVersion[0] = state.getLevelVersion();
+              byte[] g = state.getGeometryPayload().getBytes(StandardCharsets.UTF_8);
+              frames.write(g);
+              pos[1] = pos[0];
+              pos[2] = g.length;
+              pos[0] += g.length;
+            }
+            byte[] f = ("STATE " + state.toJson() + "\n" + GameServer.buildScoresPayload(state))
+                .getBytes(StandardCharsets.UTF_8);
+            frames.write(f);
+            index.writeLong(pos[0]);
+            index.writeInt(f.length);
+            index.writeLong(pos[1]);
+            index.writeInt((int) pos[2]);
+            index.writeInt(state.getCurrentTickRateHz());
+            pos[0] += f.length;
+            ticks[0]++;
+          } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+          }
+        }
+      });
+      index.flush();
+      frames.flush();
+      try (FileChannel idx = FileChannel.open(indexTmp, StandardOpenOption.WRITE)) {
+        java.nio.ByteBuffer head = java.nio.ByteBuffer.allocate(INDEX_HEADER);
+        head.putLong(logSize).putInt(ticks[0]).flip();
+        idx.write(head, 0);
+      }
+    } catch (java.io.UncheckedIOException e) {
+      throw e.getCause();
+    }
+    Files.move(framesTmp, framesPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.move(indexTmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    System.out.printf("Frames de %s generados: %d ticks, %d bytes, %.0f ms%n",
+        framesPath.getFileName(), ticks[0], pos[0], (System.nanoTime() - t0) / 1e6);
+  }
+}
@@ -0,0 +1,425 @@
+package cc4p1.snake.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sirve partidas grabadas a espectadores de repeticiones.
+ * - puerto propio con ServerSocketChannel: transferTo necesita un canal y los
+ *   sockets del puerto de juego vienen de un ServerSocket clásico
+ * - un solo hilo con Selector atiende a todos: lee comandos y, cuando toca,
+ *   copia el frame del tick desde el archivo al socket con transferTo (el
+ *   estado del juego nunca se reconstruye en memoria)
+ * - el selector duerme hasta el próximo frame que vence (o sin plazo si no
+ *   hay ninguno); OP_WRITE solo se pide mientras un envío quedó a medias
+ * - si un espectador no da abasto se saltan ticks (gana el más nuevo)
+ * - los frames de una partida se comparten entre espectadores; si su log
+ *   creció (partida en curso) el próximo WATCH los regenera y los viejos se
+ *   cierran cuando ya nadie los mira
+ *
+ * Protocolo (líneas de texto):
+ *   LIST                           -> MATCHES <nombre> ...
+ *   WATCH <nombre> [tick] [1|2|8]  -> REPLAY <nombre> <tick> <velocidad> <ticks>, luego GEOMETRY/STATE/SCORES
+ *   SEEK <tick> | SPEED <1|2|8>    -> REPLAY ... con la nueva posición/velocidad
+ *   QUIT
+ * Al terminar la partida se envía REPLAY END.
+ */
+public class ReplayServer {
+  private static final int[] SPEEDS = {1, 2, 8};
+
+  private final Path dir;
+  private final int port;
+  // frames vigentes por partida y cuántos espectadores usan cada uno (bajo el lock de matches)
+  private final Map<String, ReplayFrames> matches = new HashMap<>();
+  private final Map<ReplayFrames, Integer> users = new HashMap<>();
+  // Generar los frames de una partida re-simula su log: se hace fuera del selector
+  private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "ReplayBuilder");
+    t.setDaemon(true);
+    return t;
+  });
+  private final List<Viewer> viewers = new ArrayList<>();
+  private Selector selector;
+  private ServerSocketChannel server;
+  private volatile boolean running = true;
+
+  private static class Viewer {
+    final SocketChannel ch;
+    SelectionKey key;
+    final ByteBuffer in = ByteBuffer.allocate(256);
+    final ArrayDeque<ByteBuffer> control = new ArrayDeque<>();
+    ReplayFrames match;
+    int tick;
+    int speed = 1;
+    long nextDueNs;
+    boolean ended;
+    long geometrySent = -1;
+    // región del archivo pendiente de enviar (un frame o una GEOMETRY)
+    FileChannel pendingCh;
+    long pendingPos, pendingLen;
+    boolean blocked; // el socket no aceptó todo: se espera OP_WRITE
+    // WATCH resuelto por el hilo builder, pendiente de aplicar en el selector
+    ReplayFrames queuedMatch;
+    long queuedFrame = -1;
+
+    Viewer(SocketChannel ch) {
+      this.ch = ch;
+    }
+  }
+
+  public ReplayServer(Path dir, int port) {
+    this.dir = dir;
+    this.port = port;
+  }
+
+  public void start() throws IOException {
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    Thread t = new Thread(this::loop, "ReplayServer");
+    t.setDaemon(true);
+    t.start();
+    System.out.println("Repeticiones en puerto " + port + " (grabaciones en " + dir + ")");
+  }
+
+  private void loop() {
+    while (running) {
+      try {
+        long waitMs = waitMs(System.nanoTime());
+        if (waitMs < 0) {
+          selector.select();
+        } else if (waitMs == 0) {
+          selector.selectNow();
+        } else {
+          selector.select(waitMs);
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+          if (!key.isValid()) continue;
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            read((Viewer) key.attachment(), key);
+          }
+          // OP_WRITE: el pump de abajo retoma el envío
+        }
+        long now = System.nanoTime();
+        for (Iterator<Viewer> vi = viewers.iterator(); vi.hasNext(); ) {
+          Viewer v = vi.next();
+          try {
+            pump(v, now);
+            interest(v);
+          } catch (IOException e) {
+            close(v);
+            vi.remove();
+          }
+        }
+        viewers.removeIf(v -> !v.ch.isOpen());
+      } catch (IOException e) {
+        if (running) System.err.println("ReplayServer: " + e.getMessage());
+      } catch (ClosedSelectorException e) {
+        return; // close(): el select() bloqueado se despierta con el selector cerrado
+      }
+    }
+  }
+
+  // Milisegundos hasta el próximo frame que vence; 0 = ya, -1 = nada pendiente
+  private long waitMs(long now) {
+    long wait = -1;
+    for (Viewer v : viewers) {
+      if (v.blocked || !v.ch.isOpen()) continue;
+      synchronized (v) {
+        if (!v.control.isEmpty() || v.queuedFrame >= 0) return 0;
+      }
+      if (v.match == null || v.ended) continue;
+      long ms = Math.max(0, (v.nextDueNs - now + 999_999) / 1_000_000);
+      if (ms == 0) return 0;
+      if (wait < 0 || ms < wait) wait = ms;
+    }
+    return wait;
+  }
+
+  private void interest(Viewer v) {
+    if (!v.key.isValid()) return;
+    int ops = v.blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    if (v.key.interestOps() != ops) v.key.interestOps(ops);
+  }
+
+  private void accept() throws IOException {
+    SocketChannel ch = server.accept();
+    if (ch == null) return;
+    ch.configureBlocking(false);
+    ch.socket().setTcpNoDelay(true);
+    Viewer v = new Viewer(ch);
+    v.key = ch.register(selector, SelectionKey.OP_READ, v);
+    viewers.add(v);
+  }
+
+  private void read(Viewer v, SelectionKey key) {
+    try {
+      if (v.ch.read(v.in) < 0) {
+        close(v);
+        return;
+      }
+      v.in.flip();
+      StringBuilder line = new StringBuilder();
+      int consumed = 0;
+      for (int i = 0; i < v.in.limit(); i++) {
+        char c = (char) v.in.get(i);
+        if (c == '\n') {
+          command(v, line.toString().trim());
+          line.setLength(0);
+          consumed = i + 1;
+        } else {
+          line.append(c);
+        }
+      }
+      v.in.position(consumed);
+      v.in.compact();
+      if (!v.in.hasRemaining()) v.in.clear(); // línea demasiado larga: se descarta
+    } catch (IOException e) {
+      close(v);
+      key.cancel();
+    }
+  }
+
+  private void command(Viewer v, String line) {
+    String[] p = line.split("\\s+");
+    try {
+      switch (p[0]) {
+        case "LIST":
+          reply(v, "MATCHES" + listMatches() + "\n");
+          break;
+        case "WATCH":
+          watch(v, p[1], p.length > 2 ? Integer.parseInt(p[2]) : 0, p.length > 3 ? Integer.parseInt(p[3]) : 1);
+          break;
+        case "SEEK":
+          if (v.match != null) position(v, Integer.parseInt(p[1]), v.speed);
+          break;
+        case "SPEED":
+          if (v.match != null) position(v, v.tick, Integer.parseInt(p[1]));
+          break;
+        case "QUIT":
+          close(v);
+          break;
+        default:
+          reply(v, "ERR Unknown command\n");
+      }
+    } catch (RuntimeException e) {
+      reply(v, "ERR Invalid arguments\n");
+    }
+  }
+
+  private String listMatches() {
+    StringBuilder sb = new StringBuilder();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "match-*-000" + MatchLog.EXT)) {
+      for (Path p : ds) {
+        String n = p.getFileName().toString();
+        sb.append(' ').append(n, 0, n.length() - ("-000" + MatchLog.EXT).length());
+      }
+    } catch (IOException e) {
+      // sin directorio: lista vacía
+    }
+    return sb.toString();
+  }
+
+  private void watch(Viewer v, String name, int tick, int speed) {
+    if (!name.matches("match-\\d+")) {
+      reply(v, "ERR Unknown match\n");
+      return;
+    }
+    builder.execute(() -> {
+      try {
+        // se generan al primer WATCH y se reusan mientras el log no crezca
+        ReplayFrames frames;
+        synchronized (matches) {
+          frames = matches.get(name);
+        }
+        if (frames == null || !frames.isCurrent(dir)) {
+          ReplayFrames fresh = ReplayFrames.open(dir, name);
+          synchronized (matches) {
+            ReplayFrames old = matches.put(name, fresh);
+            if (old != null && !users.containsKey(old)) old.close();
+          }
+          frames = fresh;
+        }
+        // la posición se aplica en el hilo del selector
+        synchronized (v) {
+          if (!v.ch.isOpen()) return;
+          acquire(frames);
+          release(v.queuedMatch); // un WATCH anterior todavía sin aplicar
+          v.queuedMatch = frames;
+          v.queuedFrame = ((long) tick << 8) | (speed & 0xFF);
+        }
+        selector.wakeup();
+      } catch (IOException | RuntimeException e) {
+        synchronized (v) {
+          v.control.add(bytes("ERR " + e.getMessage() + "\n"));
+        }
+        selector.wakeup();
+      }
+    });
+  }
+
+  private void acquire(ReplayFrames frames) {
+    synchronized (matches) {
+      users.merge(frames, 1, Integer::sum);
+    }
+  }
+
+  // El último espectador de unos frames reemplazados los cierra
+  private void release(ReplayFrames frames) {
+    if (frames == null) return;
+    synchronized (matches) {
+      if (users.merge(frames, -1, Integer::sum) > 0) return;
+      users.remove(frames);
+      if (matches.get(frames.name) != frames) frames.close();
+    }
+  }
+
+  // Salta a 'tick' con la velocidad dada (1, 2 u 8)
+  private void position(Viewer v, int tick, int speed) {
+    int s = 1;
+    for (int allowed : SPEEDS) {
+      if (speed >= allowed) s = allowed;
+    }
+    v.speed = s;
+    v.tick = Math.max(0, Math.min(tick, v.match.getTicks()));
+    v.geometrySent = -1; // tras un salto se reenvía la geometría
+    v.ended = false;
+    v.nextDueNs = System.nanoTime();
+    reply(v, "REPLAY " + v.match.name + " " + v.tick + " " + v.speed + " " + v.match.getTicks() + "\n");
+  }
+
+  private void reply(Viewer v, String msg) {
+    synchronized (v) {
+      v.control.add(bytes(msg));
+    }
+  }
+
+  private static ByteBuffer bytes(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void pump(Viewer v, long now) throws IOException {
+    v.blocked = false;
+    // 1) terminar la región de archivo a medio enviar (no se cortan líneas)
+    if (v.pendingLen > 0) {
+      long n = v.pendingCh.transferTo(v.pendingPos, v.pendingLen, v.ch);
+      v.pendingPos += n;
+      v.pendingLen -= n;
+      if (v.pendingLen > 0) {
+        v.blocked = true;
+        return;
+      }
+    }
+    // 2) mensajes de control
+    synchronized (v) {
+      if (v.queuedFrame >= 0) {
+        long q = v.queuedFrame;
+        v.queuedFrame = -1;
+        release(v.match);
+        v.match = v.queuedMatch;
+        v.queuedMatch = null;
+        position(v, (int) (q >> 8), (int) (q & 0xFF));
+      }
+      while (!v.control.isEmpty()) {
+        ByteBuffer b = v.control.peek();
+        v.ch.write(b);
+        if (b.hasRemaining()) {
+          v.blocked = true;
+          return;
+        }
+        v.control.poll();
+      }
+    }
+    ReplayFrames m = v.match;
+    if (m == null || v.ended || now < v.nextDueNs) return;
+    if (v.tick >= m.getTicks()) {
+      v.ended = true;
+      reply(v, "REPLAY END\n");
+      return;
+    }
+
+    // 3) el frame del tick (precedido por su GEOMETRY si cambió)
+    long interval = 1_000_000_000L / Math.max(1, m.tps(v.tick)) / v.speed;
+    long g = m.geometryOffset(v.tick);
+    if (g != v.geometrySent && g >= 0) {
+      v.geometrySent = g;
+      send(v, g, m.geometryLength(v.tick));
+      if (v.pendingLen > 0) {
+        // la geometría quedó a medias: el frame va en la próxima vuelta
+        v.blocked = true;
+        return;
+      }
+    }
+    send(v, m.frameOffset(v.tick), m.frameLength(v.tick));
+    v.blocked = v.pendingLen > 0;
+    v.tick++;
+    v.nextDueNs += interval;
+    if (v.nextDueNs < now - interval) {
+      // atrasado (socket lento): saltar al tick que corresponde a este instante
+      long behind = (now - v.nextDueNs) / interval;
+      v.tick = (int) Math.min(m.getTicks(), v.tick + behind);
+      v.nextDueNs = now;
+    }
+  }
+
+  private void send(Viewer v, long pos, long len) throws IOException {
+    v.pendingCh = v.match.channel();
+    long n = v.pendingCh.transferTo(pos, len, v.ch);
+    v.pendingPos = pos + n;
+    v.pendingLen = len - n;
+  }
+
+  private void close(Viewer v) {
+    try {
+      v.ch.close();
+    } catch (IOException ignored) {
+    }
+    synchronized (v) {
+      release(v.match);
+      release(v.queuedMatch);
+      v.match = null;
+      v.queuedMatch = null;
+      v.queuedFrame = -1;
+    }
+  }
+
+  public void close() {
+    running = false;
+    builder.shutdownNow();
+    try {
+      if (selector != null) selector.close();
+      if (server != null) server.close();
+    } catch (IOException ignored) {
+    }
+    synchronized (matches) {
+      matches.values().forEach(ReplayFrames::close);
+      users.keySet().forEach(ReplayFrames::close);
+    }
+  }
+}
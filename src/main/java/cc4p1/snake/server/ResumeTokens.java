@@ -0,0 +1,94 @@
+package cc4p1.snake.server;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tokens para retomar una sesión después de un corte de red.
+ * - cada JOIN entrega un token (WELCOME ... RESUME <token>)
+ * - al cortarse la conexión el jugador queda en espera hasta un plazo, con
+ *   su id, su cupo y su serpiente
+ * - RESUME <token> desde otra conexión reclama el id en espera; el token se
+ *   consume y se entrega uno nuevo (RESUMED)
+ *
+ * Solo lo usa el hilo del tick; la cantidad en espera se lee desde cualquiera.
+ */
+public class ResumeTokens {
+  private final SecureRandom random = new SecureRandom();
+  private final Map<String, Integer> idByToken = new HashMap<>();
+  private final Map<Integer, String> tokenById = new HashMap<>();
+  // ids en espera -> hora límite (ms)
+  private final Map<Integer, Long> deadlines = new TreeMap<>();
+  private volatile int held = 0;
+
+  /** Token nuevo para el id (reemplaza al anterior) */
+  public String issue(int id) {
+    forget(id);
+    String token;
+    do {
+      token = String.format("%016x", random.nextLong());
+    } while (idByToken.containsKey(token));
+    idByToken.put(token, id);
+    tokenById.put(id, token);
+    return token;
+  }
+
+  /** Token vigente del id, o null si no tiene */
+  public String tokenOf(int id) {
+    return tokenById.get(id);
+  }
+
+  /** Deja el id en espera hasta 'deadlineMs'; false si no tiene token */
+  public boolean hold(int id, long deadlineMs) {
+    if (!tokenById.containsKey(id)) return false;
+    deadlines.put(id, deadlineMs);
+    held = deadlines.size();
+    return true;
+  }
+
+  /**
+   * Reclama el id en espera del token (el token deja de valer).
+   * @return el id, o -1 si el token no existe, su id no está en espera o venció
+   */
+  public int claim(String token, long nowMs) {
+    Integer id = idByToken.get(token);
+    if (id == null) return -1;
+    Long deadline = deadlines.get(id);
+    if (deadline == null || nowMs > deadline) return -1;
+    forget(id);
+    return id;
+  }
+
+  /** El id sale de la partida: su token ya no sirve */
+  public void forget(int id) {
+    String token = tokenById.remove(id);
+    if (token != null) idByToken.remove(token);
+    if (deadlines.remove(id) != null) held = deadlines.size();
+  }
+
+  /** Quita y devuelve los ids en espera cuyo plazo venció */
+  public List<Integer> expire(long nowMs) {
+    if (deadlines.isEmpty()) return Collections.emptyList();
+    List<Integer> out = new ArrayList<>();
+    for (Iterator<Map.Entry<Integer, Long>> it = deadlines.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<Integer, Long> e = it.next();
+      if (nowMs <= e.getValue()) continue;
+      it.remove();
+      String token = tokenById.remove(e.getKey());
+      if (token != null) idByToken.remove(token);
+      out.add(e.getKey());
+    }
+    held = deadlines.size();
+    return out;
+  }
+
+  public int getHeld() {
+    return held;
+  }
+}
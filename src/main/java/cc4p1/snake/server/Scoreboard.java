@@ -0,0 +1,129 @@
+package cc4p1.snake.server;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Puntajes de la partida en curso, ordenados por ranking (puntaje desc, id).
+ * GameState lo actualiza en cada cambio; GameServer pregunta una vez por tick
+ * si hubo cambios (dirty) y solo entonces difunde las entradas tocadas.
+ *
+ * Protocolo (campos separados por tab):
+ *   SCOREBOARD <versión>  L<info del nivel>  <id> <puntaje> <nombre> ...   (completo)
+ *   SCOREDELTA <versión>  [L<info>]  <id> <puntaje> <nombre> | -<id> ...     (cambios)
+ * Un SCOREDELTA con versión v solo vale sobre el estado v-1; si el cliente ve
+ * un salto pide SCORES y recibe el completo.
+ */
+public class Scoreboard {
+  private static final class Entry {
+    final int id;
+    final String name;
+    final int score;
+
+    Entry(int id, String name, int score) {
+      this.id = id;
+      this.name = name.replace('\t', ' ');
+      this.score = score;
+    }
+  }
+
+  private static final Comparator<Entry> RANK =
+      Comparator.<Entry>comparingInt(e -> -e.score).thenComparingInt(e -> e.id);
+
+  private final TreeSet<Entry> ranked = new TreeSet<>(RANK);
+  private final Map<Integer, Entry> byId = new HashMap<>();
+  // ids tocados desde la última publicación (null en el valor = eliminado)
+  private final Map<Integer, Entry> changed = new HashMap<>();
+  private String levelInfo = "";
+  private boolean levelChanged = false;
+  private boolean dirty = false;
+  private long version = 0;
+  private String fullLine; // caché del SCOREBOARD de la versión actual
+
+  public synchronized void put(int id, String name, int score) {
+    Entry old = byId.get(id);
+    if (old != null) {
+      if (old.score == score && old.name.equals(name)) return;
+      ranked.remove(old);
+    }
+    Entry e = new Entry(id, name, score);
+    ranked.add(e);
+    byId.put(id, e);
+    changed.put(id, e);
+    touch();
+  }
+
+  public synchronized void remove(int id) {
+    Entry old = byId.remove(id);
+    if (old == null) return;
+    ranked.remove(old);
+    changed.put(id, null);
+    touch();
+  }
+
+  public synchronized void clear() {
+    for (Integer id : byId.keySet()) changed.put(id, null);
+    if (!byId.isEmpty()) touch();
+    byId.clear();
+    ranked.clear();
+  }
+
+  public synchronized void setLevelInfo(String info) {
+    if (info.equals(levelInfo)) return;
+    levelInfo = info;
+    levelChanged = true;
+    touch();
+  }
+
+  private void touch() {
+    dirty = true;
+    fullLine = null;
+  }
+
+  /**
+   * Si hubo cambios desde la última llamada, avanza la versión y devuelve el
+   * SCOREDELTA con solo esas entradas; si no, null (no se envía nada).
+   */
+  public synchronized String pollDelta() {
+    if (!dirty) return null;
+    version++;
+    StringBuilder sb = new StringBuilder("SCOREDELTA ").append(version);
+    if (levelChanged) sb.append('\t').append('L').append(levelInfo);
+    for (Map.Entry<Integer, Entry> c : changed.entrySet()) {
+      sb.append('\t');
+      if (c.getValue() == null) {
+        sb.append('-').append(c.getKey());
+      } else {
+        append(sb, c.getValue());
+      }
+    }
+    changed.clear();
+    levelChanged = false;
+    dirty = false;
+    fullLine = null;
+    return sb.append('\n').toString();
+  }
+
+  /** SCOREBOARD completo (se arma una sola vez por versión) */
+  public synchronized String fullLine() {
+    if (fullLine == null) {
+      StringBuilder sb = new StringBuilder("SCOREBOARD ").append(version);
+      sb.append('\t').append('L').append(levelInfo);
+      for (Entry e : ranked) {
+        append(sb.append('\t'), e);
+      }
+      fullLine = sb.append('\n').toString();
+    }
+    return fullLine;
+  }
+
+  private static void append(StringBuilder sb, Entry e) {
+    sb.append(e.id).append(' ').append(e.score).append(' ').append(e.name);
+  }
+
+  public synchronized long getVersion() {
+    return version;
+  }
+}
@@ -8,14 +8,29 @@ import java.util.*;
 import java.util.concurrent.*;
 
 /**
- * Entry point del servidor. Uso: java ServerMain --port 5000
+ * Entry point del servidor.
+ * Uso: java ServerMain                                   (ventana del servidor)
+ *      java ServerMain --headless [--port N] [--level N]  (una instancia, sin ventana)
+ *      java ServerMain --lobby [--port N]                 (lobby que reparte jugadores entre instancias)
+ * Una instancia sin ventana se registra en un lobby con -Dsnake.lobby.register=host:puerto.
  */
 public class ServerMain {
     public static final int DEFAULT_PORT = 8000;
+    public static final int DEFAULT_LOBBY_PORT = 7000;
     private static int currentPort = DEFAULT_PORT;
 
     public static void main(String[] args) throws Exception {
         currentPort = DEFAULT_PORT;
+        List<String> opts = Arrays.asList(args);
+
+        if (opts.contains("--lobby")) {
+            new LobbyServer(intOption(opts, "--port", DEFAULT_LOBBY_PORT)).start();
+            return;
+        }
+        if (opts.contains("--headless")) {
+            startServer(intOption(opts, "--port", DEFAULT_PORT), intOption(opts, "--level", 0));
+            return;
+        }
 
         java.awt.EventQueue.invokeLater(() -> {
             GameWindow gw = new GameWindow();
@@ -24,10 +39,28 @@ public class ServerMain {
     }
 
     public static void startServer(int port) throws Exception {
+        startServer(port, 0);
+    }
+
+    /** @param level nivel inicial de la partida (0 = el primero) */
+    public static void startServer(int port, int level) throws Exception {
         currentPort = port;
         System.out.println("Starting server on port " + port);
         GameServer server = new GameServer(port, 2); // 7 ticks por segundo
         server.start();
+        if (level > 0) server.setLevel(level);
+    }
+
+    // Valor entero de "--nombre N" (o el valor por defecto si no está)
+    private static int intOption(List<String> opts, String name, int def) {
+        int i = opts.indexOf(name);
+        if (i < 0 || i + 1 >= opts.size()) return def;
+        try {
+            return Integer.parseInt(opts.get(i + 1));
+        } catch (NumberFormatException e) {
+            System.err.println("Valor inválido para " + name + ": " + opts.get(i + 1));
+            return def;
+        }
     }
 
     public static int getCurrentPort() {
@@ -0,0 +1,141 @@
+package cc4p1.snake.server;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Métricas del servidor por etapa del tick (simulación, codificación, envío).
+ * Cada etapa acumula tiempo ocupado, cantidad de trabajos y descartes; roll()
+ * cierra una ventana y calcula la utilización (tiempo ocupado / tiempo de
+ * pared), que dice qué etapa limita el throughput.
+ * Además lleva indicadores sueltos (gauge) y los últimos eventos (decisiones
+ * del servidor, p. ej. del control de carga) para ajustar umbrales.
+ */
+public class ServerMetrics {
+
+  public static final class Stage {
+    final String name;
+    private final AtomicLong busyNs = new AtomicLong();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long lastBusyNs, lastCount, lastDropped;
+    // resultados de la última ventana
+    private volatile double utilization;
+    private volatile long avgUs;
+    private volatile long windowDropped;
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    public void record(long ns) {
+      busyNs.addAndGet(ns);
+      count.incrementAndGet();
+    }
+
+    public void drop() {
+      dropped.incrementAndGet();
+    }
+
+    public double getUtilization() {
+      return utilization;
+    }
+
+    public long getAvgUs() {
+      return avgUs;
+    }
+
+    public long getWindowDropped() {
+      return windowDropped;
+    }
+
+    void roll(long wallNs) {
+      long b = busyNs.get(), c = count.get(), d = dropped.get();
+      utilization = wallNs > 0 ? (double) (b - lastBusyNs) / wallNs : 0;
+      avgUs = c > lastCount ? (b - lastBusyNs) / (c - lastCount) / 1000 : 0;
+      windowDropped = d - lastDropped;
+      lastBusyNs = b;
+      lastCount = c;
+      lastDropped = d;
+    }
+  }
+
+  private static final int EVENTS_KEPT = 32;
+
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+  private final Map<String, Supplier<String>> gauges = new LinkedHashMap<>();
+  private final Deque<String> events = new ArrayDeque<>();
+  private long lastRollNs = System.nanoTime();
+
+  public synchronized Stage stage(String name) {
+    return stages.computeIfAbsent(name, Stage::new);
+  }
+
+  /** Indicador que se agrega al reporte como nombre=valor */
+  public synchronized void gauge(String name, Supplier<String> value) {
+    gauges.put(name, value);
+  }
+
+  /** Registra un evento (se loguea y se guardan los últimos EVENTS_KEPT) */
+  public void event(String msg) {
+    String line = new SimpleDateFormat("HH:mm:ss").format(new Date()) + " " + msg;
+    System.out.println("Evento: " + msg);
+    synchronized (events) {
+      if (events.size() == EVENTS_KEPT) events.removeFirst();
+      events.addLast(line);
+    }
+  }
+
+  /** Últimos eventos, del más viejo al más nuevo, separados por " | " */
+  public String events() {
+    synchronized (events) {
+      return events.isEmpty() ? "sin eventos" : String.join(" | ", events);
+    }
+  }
+
+  /** Etapa con mayor utilización en la última ventana */
+  public synchronized Stage busiest() {
+    Stage best = null;
+    for (Stage s : stages.values()) {
+      if (best == null || s.utilization > best.utilization) best = s;
+    }
+    return best;
+  }
+
+  /** Descartes de todas las etapas en la última ventana */
+  public synchronized long windowDropped() {
+    long d = 0;
+    for (Stage s : stages.values()) d += s.windowDropped;
+    return d;
+  }
+
+  /** Cierra la ventana actual (se llama periódicamente desde el loop) */
+  public synchronized void roll() {
+    long now = System.nanoTime();
+    long wall = now - lastRollNs;
+    lastRollNs = now;
+    for (Stage s : stages.values()) s.roll(wall);
+  }
+
+  /** Una línea con la última ventana: etapa=utilización% (promedio por trabajo, descartes) */
+  public synchronized String report() {
+    StringBuilder sb = new StringBuilder();
+    for (Stage s : stages.values()) {
+      if (sb.length() > 0) sb.append(' ');
+      sb.append(s.name).append('=').append(Math.round(s.utilization * 100)).append("% (")
+        .append(s.avgUs).append("us");
+      if (s.windowDropped > 0) sb.append(", ").append(s.windowDropped).append(" descartados");
+      sb.append(')');
+    }
+    for (Map.Entry<String, Supplier<String>> g : gauges.entrySet()) {
+      sb.append(' ').append(g.getKey()).append('=').append(g.getValue().get());
+    }
+    return sb.toString();
+  }
+}
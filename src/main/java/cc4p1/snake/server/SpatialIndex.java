@@ -0,0 +1,112 @@
+package cc4p1.snake.server;
+
+import java.util.Arrays;
+
+/**
+ * Índice espacial de grilla uniforme para segmentos de serpiente y frutas.
+ * - el mapa se divide en cubetas de CELL x CELL celdas
+ * - cada cubeta guarda sus entidades en arreglos int reutilizados entre ticks
+ * - una consulta por ventana solo recorre las cubetas que la tocan, así el
+ *   costo por cliente depende del tamaño de su vista y no del mapa
+ *
+ * El tablero es toroidal (wrap-around), así que las ventanas pueden cruzar
+ * los bordes.
+ */
+public class SpatialIndex {
+  static final int CELL = 8;
+
+  /** Recibe las entidades que caen dentro de una consulta */
+  public interface Visitor {
+    void segment(int snakeId, int index, int x, int y);
+
+    void fruit(int x, int y, int score);
+  }
+
+  private int width, height, bucketsX, bucketsY;
+  // segmentos: cuádruplas (snakeId, índice, x, y); frutas: ternas (x, y, score)
+  private int[][] segs = new int[0][];
+  private int[] segCount = new int[0];
+  private int[][] fruits = new int[0][];
+  private int[] fruitCount = new int[0];
+
+  /** Vacía el índice; solo reasigna memoria si cambió el tamaño del mapa */
+  public void reset(int width, int height) {
+    int bx = (width + CELL - 1) / CELL, by = (height + CELL - 1) / CELL;
+    if (bx != bucketsX || by != bucketsY) {
+      bucketsX = bx;
+      bucketsY = by;
+      segs = new int[bx * by][16];
+      segCount = new int[bx * by];
+      fruits = new int[bx * by][6];
+      fruitCount = new int[bx * by];
+    } else {
+      Arrays.fill(segCount, 0);
+      Arrays.fill(fruitCount, 0);
+    }
+    this.width = width;
+    this.height = height;
+  }
+
+  public void addSegment(int snakeId, int index, int x, int y) {
+    int b = bucket(x, y);
+    int n = segCount[b];
+    if (n + 4 > segs[b].length) segs[b] = Arrays.copyOf(segs[b], segs[b].length * 2);
+    int[] arr = segs[b];
+    arr[n] = snakeId;
+    arr[n + 1] = index;
+    arr[n + 2] = x;
+    arr[n + 3] = y;
+    segCount[b] = n + 4;
+  }
+
+  public void addFruit(int x, int y, int score) {
+    int b = bucket(x, y);
+    int n = fruitCount[b];
+    if (n + 3 > fruits[b].length) fruits[b] = Arrays.copyOf(fruits[b], fruits[b].length * 2);
+    int[] arr = fruits[b];
+    arr[n] = x;
+    arr[n + 1] = y;
+    arr[n + 2] = score;
+    fruitCount[b] = n + 3;
+  }
+
+  /**
+   * Visita las entidades de la ventana [x0, x0+w) x [y0, y0+h) (con wrap).
+   * Las coordenadas entregadas son las del mundo.
+   */
+  public void query(int x0, int y0, int w, int h, Visitor v) {
+    w = Math.min(w, width);
+    h = Math.min(h, height);
+    x0 = Math.floorMod(x0, width);
+    y0 = Math.floorMod(y0, height);
+    // Si la ventana cruza un borde se parte en rectángulos que no lo cruzan
+    int xSplit = Math.min(w, width - x0), ySplit = Math.min(h, height - y0);
+    queryRect(x0, y0, xSplit, ySplit, v);
+    if (xSplit < w) queryRect(0, y0, w - xSplit, ySplit, v);
+    if (ySplit < h) queryRect(x0, 0, xSplit, h - ySplit, v);
+    if (xSplit < w && ySplit < h) queryRect(0, 0, w - xSplit, h - ySplit, v);
+  }
+
+  private void queryRect(int x0, int y0, int w, int h, Visitor v) {
+    int x1 = x0 + w, y1 = y0 + h;
+    for (int by = y0 / CELL; by <= (y1 - 1) / CELL; by++) {
+      for (int bx = x0 / CELL; bx <= (x1 - 1) / CELL; bx++) {
+        int b = by * bucketsX + bx;
+        int[] s = segs[b];
+        for (int k = 0; k < segCount[b]; k += 4) {
+          int x = s[k + 2], y = s[k + 3];
+          if (x >= x0 && x < x1 && y >= y0 && y < y1) v.segment(s[k], s[k + 1], x, y);
+        }
+        int[] f = fruits[b];
+        for (int k = 0; k < fruitCount[b]; k += 3) {
+          int x = f[k], y = f[k + 1];
+          if (x >= x0 && x < x1 && y >= y0 && y < y1) v.fruit(x, y, f[k + 2]);
+        }
+      }
+    }
+  }
+
+  private int bucket(int x, int y) {
+    return (y / CELL) * bucketsX + (x / CELL);
+  }
+}
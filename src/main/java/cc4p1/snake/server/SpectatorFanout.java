@@ -0,0 +1,143 @@
+package cc4p1.snake.server;
+
+import cc4p1.snake.client.ClientSession;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Difusión barata para espectadores.
+ * - reciben un snapshot cada 'everyTicks' ticks
+ * - el frame se codifica una sola vez (byte[]) y se comparte entre todos
+ * - se agrupan de a 'groupSize'; cada grupo es una tarea en un pool propio,
+ *   así la escritura a miles de sockets no corre en el hilo del tick
+ * - si un grupo sigue ocupado con el frame anterior, se salta este frame
+ *   (solo importa el más reciente)
+ * - el PING del latido sale cada 'pingEveryNs' por el mismo camino, detrás
+ *   del frame si lo hay; sin depender de 'everyTicks'
+ * - el GEOMETRY de un nivel nuevo también va por el grupo, antes del primer
+ *   frame que la sesión reciba con ese nivel (un grupo saltado lo recibe después)
+ */
+public class SpectatorFanout {
+  private final Map<Integer, ClientSession> spectators = new ConcurrentHashMap<>();
+  // versión de geometría que ya tiene cada espectador
+  private final Map<Integer, Integer> geometrySent = new ConcurrentHashMap<>();
+  private volatile byte[] geometry;
+  private volatile int geometryVersion = -1;
+  private final int everyTicks;
+  private final int groupSize;
+  private final long pingEveryNs;
+  private final ExecutorService writers;
+  private final List<AtomicBoolean> groupBusy = new ArrayList<>();
+  private final AtomicLong droppedGroupFrames = new AtomicLong();
+  private long tickCounter = 0;
+  private long lastPingNs = 0; // bajo el lock de publish
+
+  public SpectatorFanout(int everyTicks, int groupSize, int threads, long pingEveryNs) {
+    this.everyTicks = Math.max(1, everyTicks);
+    this.groupSize = Math.max(1, groupSize);
+    this.pingEveryNs = pingEveryNs;
+    AtomicInteger n = new AtomicInteger();
+    this.writers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+      Thread t = new Thread(r, "SpectatorWriter-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /** @param geometryVersion versión del GEOMETRY que la sesión ya recibió */
+  public void add(ClientSession cs, int geometryVersion) {
+    geometrySent.put(cs.getPlayerId(), geometryVersion);
+    spectators.put(cs.getPlayerId(), cs);
+  }
+
+  public ClientSession remove(int id) {
+    geometrySent.remove(id);
+    return spectators.remove(id);
+  }
+
+  public boolean isEmpty() {
+    return spectators.isEmpty();
+  }
+
+  public int size() {
+    return spectators.size();
+  }
+
+  /** Sesiones actuales (para el reaper del latido) */
+  public Collection<ClientSession> sessions() {
+    return spectators.values();
+  }
+
+  /** Se llama una vez por tick; devuelve true si este tick toca enviar */
+  public synchronized boolean shouldPublish() {
+    return !spectators.isEmpty() && (tickCounter++ % everyTicks) == 0;
+  }
+
+  /** Nuevo GEOMETRY: cada grupo lo escribe antes de su próximo frame */
+  public synchronized void setGeometry(String payload, int version) {
+    geometry = payload.getBytes(StandardCharsets.UTF_8);
+    geometryVersion = version;
+  }
+
+  /**
+   * Se llama una vez por tick desde la etapa de envío con el frame ya armado
+   * (la codificación se hace una sola vez), o null si este tick no toca frame:
+   * entonces solo sale una tarea por grupo si le toca el latido.
+   */
+  public synchronized void publish(String frame) {
+    long now = System.nanoTime();
+    boolean pingRound = pingEveryNs > 0 && now - lastPingNs >= pingEveryNs;
+    if (frame == null && !pingRound) return;
+    if (pingRound) lastPingNs = now;
+    byte[] bytes = frame == null ? null : frame.getBytes(StandardCharsets.UTF_8);
+    byte[] geo = geometry;
+    int geoVersion = geometryVersion;
+    List<ClientSession> all = new ArrayList<>(spectators.values());
+    int groups = (all.size() + groupSize - 1) / groupSize;
+    while (groupBusy.size() < groups) groupBusy.add(new AtomicBoolean(false));
+
+    for (int g = 0; g < groups; g++) {
+      AtomicBoolean busy = groupBusy.get(g);
+      if (!busy.compareAndSet(false, true)) {
+        if (bytes != null) droppedGroupFrames.incrementAndGet();
+        continue;
+      }
+      List<ClientSession> members = all.subList(g * groupSize, Math.min(all.size(), (g + 1) * groupSize));
+      writers.execute(() -> {
+        try {
+          for (ClientSession cs : members) {
+            if (geo != null && geometrySent.getOrDefault(cs.getPlayerId(), -1) != geoVersion) {
+              cs.sendBytes(geo);
+              geometrySent.put(cs.getPlayerId(), geoVersion);
+            }
+            if (bytes != null) cs.sendBytes(bytes);
+            String ping = pingRound ? cs.pingIfDue(now, pingEveryNs) : "";
+            if (!ping.isEmpty()) cs.send(ping);
+          }
+        } finally {
+          busy.set(false);
+        }
+      });
+    }
+  }
+
+  public long getDroppedGroupFrames() {
+    return droppedGroupFrames.get();
+  }
+
+  public void shutdown() {
+    writers.shutdownNow();
+    for (ClientSession cs : spectators.values()) {
+      cs.closeSilently();
+    }
+  }
+}
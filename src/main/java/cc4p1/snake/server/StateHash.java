@@ -0,0 +1,56 @@
+package cc4p1.snake.server;
+
+/**
+ * Claves estilo Zobrist para el hash incremental de GameState.
+ * En vez de una tabla aleatoria por (celda, pieza) cada clave sale de mezclar
+ * sus componentes con el finalizador de SplitMix64, así sirve para cualquier
+ * tamaño de mapa e id de jugador. El hash del mundo es el XOR de las claves
+ * de todo lo que hay en él: agregar o quitar algo es un solo XOR.
+ */
+public final class StateHash {
+  private static final int SEGMENT = 1, HEAD = 2, FRUIT = 3, SCORE = 4, DIRECTION = 5, GROWTH = 6, LEVEL = 7;
+
+  private StateHash() {
+  }
+
+  public static long segment(int id, int x, int y) {
+    return key(SEGMENT, id, x, y);
+  }
+
+  public static long head(int id, int x, int y) {
+    return key(HEAD, id, x, y);
+  }
+
+  public static long fruit(int x, int y, int score) {
+    return key(FRUIT, x, y, score);
+  }
+
+  public static long score(int id, int score) {
+    return key(SCORE, id, score, 0);
+  }
+
+  public static long direction(int id, String dir) {
+    return key(DIRECTION, id, dir.hashCode(), 0);
+  }
+
+  public static long growth(int id, int pending) {
+    return key(GROWTH, id, pending, 0);
+  }
+
+  public static long level(int level) {
+    return key(LEVEL, level, 0, 0);
+  }
+
+  private static long key(int kind, int a, int b, int c) {
+    long h = mix(kind * 0x9E3779B97F4A7C15L + a);
+    h = mix(h ^ (b * 0xC2B2AE3D27D4EB4FL));
+    return mix(h ^ (c * 0x165667B19E3779F9L));
+  }
+
+  // Finalizador de SplitMix64
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
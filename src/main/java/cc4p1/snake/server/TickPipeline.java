@@ -0,0 +1,93 @@
+package cc4p1.snake.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Tick en etapas: mientras el hilo del loop simula el tick N+1, la etapa
+ * "encode" codifica el N y la etapa "send" escribe el N-1 en los sockets.
+ * - las etapas se comunican por colas acotadas (doble buffer: capacidad 2)
+ * - la simulación nunca espera: si "encode" va atrasada se descarta la foto
+ *   más vieja (cada foto es completa, basta con la más nueva)
+ * - "encode" sí espera a "send": un tick codificado ya consumió cambios del
+ *   marcador y descartarlo dejaría a los clientes sin ese delta
+ */
+public class TickPipeline<S, E> {
+  private static final int CAPACITY = 2;
+
+  private final BlockingQueue<S> toEncode = new ArrayBlockingQueue<>(CAPACITY);
+  private final BlockingQueue<E> toSend = new ArrayBlockingQueue<>(CAPACITY);
+  private final Function<S, E> encode;
+  private final Consumer<E> send;
+  private final ServerMetrics.Stage encodeStage;
+  private final ServerMetrics.Stage sendStage;
+  private final Thread encoder;
+  private final Thread sender;
+  private volatile boolean running = true;
+
+  public TickPipeline(Function<S, E> encode, Consumer<E> send, ServerMetrics metrics) {
+    this.encode = encode;
+    this.send = send;
+    this.encodeStage = metrics.stage("encode");
+    this.sendStage = metrics.stage("send");
+    this.encoder = new Thread(this::encodeLoop, "TickEncoder");
+    this.sender = new Thread(this::sendLoop, "TickSender");
+    encoder.setDaemon(true);
+    sender.setDaemon(true);
+  }
+
+  public void start() {
+    encoder.start();
+    sender.start();
+  }
+
+  /** Entrega la foto del tick (lo llama el hilo de la simulación; no bloquea) */
+  public void submit(S snapshot) {
+    while (!toEncode.offer(snapshot)) {
+      if (toEncode.poll() != null) encodeStage.drop();
+    }
+  }
+
+  private void encodeLoop() {
+    while (running) {
+      try {
+        S s = toEncode.take();
+        long t0 = System.nanoTime();
+        E encoded = encode.apply(s);
+        encodeStage.record(System.nanoTime() - t0);
+        if (encoded != null) toSend.put(encoded);
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void sendLoop() {
+    while (running) {
+      try {
+        E e = toSend.take();
+        long t0 = System.nanoTime();
+        send.accept(e);
+        sendStage.record(System.nanoTime() - t0);
+      } catch (InterruptedException ex) {
+        return;
+      } catch (RuntimeException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  public int getQueuedTicks() {
+    return toEncode.size() + toSend.size();
+  }
+
+  public void shutdown() {
+    running = false;
+    encoder.interrupt();
+    sender.interrupt();
+  }
+}
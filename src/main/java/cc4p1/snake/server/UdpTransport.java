@@ -0,0 +1,122 @@
+package cc4p1.snake.server;
+
+import cc4p1.snake.client.ClientSession;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+
+/**
+ * Canal UDP opcional para snapshots e inputs (TCP sigue para el control).
+ *
+ * Handshake:
+ *   TCP  C->S  UDP
+ *   TCP  S->C  UDP <puerto> <token>
+ *   UDP  C->S  HELLO <id> <token>          (se repite hasta recibir UDP OK)
+ *   TCP  S->C  UDP OK
+ *
+ * Datagramas:
+ *   S->C  S <seq> <ackInput>\n<líneas STATE/SCORES>
+ *   C->S  I <id> <token> <seq> <dir> [<dir anterior> ...]
+ *
+ * El cliente descarta snapshots con seq menor o igual al último (gana el más
+ * nuevo). Los inputs viajan con redundancia: cada datagrama repite los
+ * anteriores y el cliente reenvía hasta ver su seq en ackInput.
+ */
+public class UdpTransport {
+  // Más grande que esto se manda por TCP (evita fragmentación excesiva)
+  static final int MAX_DATAGRAM = 60_000;
+
+  private final DatagramSocket socket;
+  private final Map<Integer, ClientSession> clients;
+  private final SecureRandom random = new SecureRandom();
+  private volatile boolean running = true;
+
+  public UdpTransport(int port, Map<Integer, ClientSession> clients) throws SocketException {
+    this.socket = new DatagramSocket(port);
+    this.clients = clients;
+  }
+
+  public int getPort() {
+    return socket.getLocalPort();
+  }
+
+  public void start() {
+    Thread t = new Thread(this::receiveLoop, "UdpReceiver");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /** Genera el token que liga el endpoint UDP a la sesión TCP */
+  public long newToken() {
+    long token;
+    do {
+      token = random.nextLong();
+    } while (token == 0);
+    return token;
+  }
+
+  private void receiveLoop() {
+    byte[] buf = new byte[512];
+    DatagramPacket packet = new DatagramPacket(buf, buf.length);
+    while (running) {
+      try {
+        packet.setLength(buf.length);
+        socket.receive(packet);
+        String msg = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).trim();
+        handle(msg, packet.getSocketAddress());
+      } catch (IOException e) {
+        if (running) System.err.println("UDP: " + e.getMessage());
+      } catch (RuntimeException e) {
+        // datagrama mal formado: se ignora
+      }
+    }
+  }
+
+  private void handle(String msg, SocketAddress from) {
+    String[] p = msg.split(" ");
+    if (p.length < 3) return;
+    ClientSession cs = clients.get(Integer.parseInt(p[1]));
+    if (cs == null || cs.getUdpToken() == 0 || cs.getUdpToken() != Long.parseLong(p[2])) return;
+    cs.heard();
+
+    if (p[0].equals("HELLO")) {
+      boolean first = cs.getUdpAddress() == null;
+      cs.setUdpAddress(from);
+      cs.send("UDP OK\n");
+      if (first) System.out.println("Player " + cs.getPlayerId() + " usa UDP desde " + from);
+    } else if (p[0].equals("I") && p.length >= 5 && from.equals(cs.getUdpAddress())) {
+      // p[4] es el input más nuevo; los siguientes son redundancia (no gastan fichas)
+      if (cs.acceptUdpInput(Long.parseLong(p[3])) && cs.takeInputToken()) {
+        cs.setLastDirection(p[4]);
+      }
+    }
+  }
+
+  /**
+   * Envía un snapshot a la sesión. Devuelve false si no se pudo (demasiado
+   * grande o error) para que el llamador use TCP.
+   */
+  public boolean sendSnapshot(ClientSession cs, String payload) {
+    SocketAddress to = cs.getUdpAddress();
+    if (to == null) return false;
+    byte[] bytes = ("S " + cs.nextUdpSeq() + " " + cs.getUdpInputAck() + "\n" + payload)
+        .getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_DATAGRAM) return false;
+    try {
+      socket.send(new DatagramPacket(bytes, bytes.length, to));
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public void close() {
+    running = false;
+    socket.close();
+  }
+}
@@ -0,0 +1,389 @@
+package cc4p1.snake.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Foto inmutable del mundo al final de un tick.
+ * - GameState la publica al terminar cada cambio (step, JOIN, QUIT, nivel)
+ * - publicarla cuesta O(serpientes + frutas): los cuerpos no se copian, cada
+ *   Body es una ventana sobre el historial de celdas de la serpiente (Trail),
+ *   al que solo se le agrega al final
+ * - los codificadores (STATE, BOARD, vistas, SCORES) leen de aquí sin tomar
+ *   el lock de la simulación y desde cualquier hilo
+ */
+public final class WorldSnapshot {
+
+  /**
+   * Historial de celdas de una serpiente (lo mantiene GameState). La cabeza es
+   * la última celda; mover la cola solo avanza 'start'. Cuando el arreglo se
+   * llena se copia lo vivo a uno nuevo: los Body ya publicados siguen leyendo
+   * el viejo, que nunca se vuelve a escribir en su ventana.
+   */
+  static final class Trail {
+    private int[] cells = new int[16]; // x << 16 | y
+    private int start, end;
+
+    void addHead(int x, int y) {
+      if (end == cells.length) {
+        int live = end - start;
+        int[] next = new int[Math.max(16, live * 2)];
+        System.arraycopy(cells, start, next, 0, live);
+        cells = next;
+        start = 0;
+        end = live;
+      }
+      cells[end++] = (x << 16) | y;
+    }
+
+    void removeTail() {
+      if (end > start) start++;
+    }
+
+    Body view() {
+      return new Body(cells, start, end);
+    }
+  }
+
+  /** Cuerpo de una serpiente; el índice 0 es la cabeza */
+  public static final class Body {
+    private final int[] cells;
+    private final int from, to;
+
+    Body(int[] cells, int from, int to) {
+      this.cells = cells;
+      this.from = from;
+      this.to = to;
+    }
+
+    public int length() {
+      return to - from;
+    }
+
+    public int x(int i) {
+      return cells[to - 1 - i] >>> 16;
+    }
+
+    public int y(int i) {
+      return cells[to - 1 - i] & 0xFFFF;
+    }
+  }
+
+  public static final class SnakeView {
+    public final int id;
+    public final String name;
+    public final char letter;
+    public final Body body;
+
+    SnakeView(int id, String name, char letter, Body body) {
+      this.id = id;
+      this.name = name;
+      this.letter = letter;
+      this.body = body;
+    }
+  }
+
+  public final long tick;
+  public final long timeMs;
+  public final int width, height;
+  public final int level, levelVersion;
+  public final String levelInfo;
+  public final String geometryPayload;
+  public final SnakeView[] snakes;   // en orden de id
+  public final int[] fruits;         // ternas x, y, puntaje
+  public final int[] scores;         // pares id, puntaje en orden de id
+  // Marcador tomado por el hilo del tick al entregar la foto (ver withScores)
+  public final long scoresVersion;   // -1 si la foto no lo lleva
+  public final String scoresDelta;   // SCOREDELTA sobre scoresVersion - 1, o null
+  public final String scoresFull;    // SCOREBOARD de scoresVersion
+  private final boolean[][] walls;   // compartido: GameState crea uno nuevo por nivel
+  private final char[][] minimapWalls;
+
+  // Índice espacial y minimapa para las vistas: se arman la primera vez que
+  // un cliente con VIEW los pide y sirven para todos los de este tick
+  private SpatialIndex index;
+  private char[][] minimap;
+
+  WorldSnapshot(long tick, long timeMs, int width, int height, int level, int levelVersion, String levelInfo,
+      String geometryPayload, SnakeView[] snakes, int[] fruits, int[] scores, boolean[][] walls,
+      char[][] minimapWalls) {
+    this(tick, timeMs, width, height, level, levelVersion, levelInfo, geometryPayload, snakes, fruits, scores,
+        walls, minimapWalls, -1, null, null);
+  }
+
+  private WorldSnapshot(long tick, long timeMs, int width, int height, int level, int levelVersion,
+      String levelInfo, String geometryPayload, SnakeView[] snakes, int[] fruits, int[] scores,
+      boolean[][] walls, char[][] minimapWalls, long scoresVersion, String scoresDelta, String scoresFull) {
+    this.tick = tick;
+    this.timeMs = timeMs;
+    this.width = width;
+    this.height = height;
+    this.level = level;
+    this.levelVersion = levelVersion;
+    this.levelInfo = levelInfo;
+    this.geometryPayload = geometryPayload;
+    this.snakes = snakes;
+    this.fruits = fruits;
+    this.scores = scores;
+    this.walls = walls;
+    this.minimapWalls = minimapWalls;
+    this.scoresVersion = scoresVersion;
+    this.scoresDelta = scoresDelta;
+    this.scoresFull = scoresFull;
+  }
+
+  /**
+   * La misma foto con el marcador de este momento (hilo del tick). Consume
+   * el delta pendiente: si la foto se descarta, las sesiones que queden
+   * atrás reciben el SCOREBOARD completo de la siguiente.
+   */
+  public WorldSnapshot withScores(Scoreboard board) {
+    synchronized (board) {
+      String delta = board.pollDelta();
+      return new WorldSnapshot(tick, timeMs, width, height, level, levelVersion, levelInfo, geometryPayload,
+          snakes, fruits, scores, walls, minimapWalls, board.getVersion(), delta, board.fullLine());
+    }
+  }
+
+  public SnakeView snake(int id) {
+    for (SnakeView s : snakes) {
+      if (s.id == id) return s;
+    }
+    return null;
+  }
+
+  public boolean isWall(int x, int y) {
+    return walls[y][x];
+  }
+
+  public int score(int id) {
+    for (int i = 0; i < scores.length; i += 2) {
+      if (scores[i] == id) return scores[i + 1];
+    }
+    return 0;
+  }
+
+  // Serializador muy simple a JSON (manual, sin librerías)
+  public String toJson() {
+    StringBuilder sb = new StringBuilder(256 + snakes.length * 64);
+    sb.append("{");
+
+    // sello del tick (número + hora del servidor en ms)
+    sb.append("\"tick\":").append(tick).append(",\"time\":").append(timeMs).append(",");
+
+    sb.append("\"snakes\":[");
+    for (int k = 0; k < snakes.length; k++) {
+      SnakeView s = snakes[k];
+      if (k > 0) sb.append(",");
+      sb.append("{\"id\":").append(s.id).append(",\"body\":[");
+      for (int i = 0; i < s.body.length(); i++) {
+        if (i > 0) sb.append(",");
+        sb.append("[").append(s.body.x(i)).append(",").append(s.body.y(i)).append("]");
+      }
+      sb.append("],\"letter\":\"");
+      appendLetter(sb, s.letter);
+      sb.append("\"}");
+    }
+    sb.append("],");
+
+    sb.append("\"fruits\":[");
+    for (int i = 0; i < fruits.length; i += 3) {
+      if (i > 0) sb.append(",");
+      sb.append("[").append(fruits[i]).append(",").append(fruits[i + 1]).append(",").append(fruits[i + 2]).append("]");
+    }
+    sb.append("],");
+
+    sb.append("\"scores\":{");
+    for (int i = 0; i < scores.length; i += 2) {
+      if (i > 0) sb.append(",");
+      sb.append("\"").append(scores[i]).append("\":").append(scores[i + 1]);
+    }
+    sb.append("},");
+
+    sb.append("\"width\":").append(width).append(",\"height\":").append(height).append(",");
+    // paredes: solo la referencia al nivel; la geometría va en GEOMETRY
+    sb.append("\"level\":").append(level).append(",\"levelVersion\":").append(levelVersion);
+    sb.append("}");
+    return sb.toString();
+  }
+
+  private static void appendLetter(StringBuilder sb, char letter) {
+    if (letter == '"' || letter == '\\') sb.append('\\');
+    sb.append(letter);
+  }
+
+  // Tablero ASCII: '#' pared, dígito = fruta, 'O' cabeza, letra = cuerpo
+  public String renderBoard() {
+    char[][] board = new char[height][width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        board[y][x] = walls[y][x] ? '#' : ' ';
+      }
+    }
+    for (int i = 0; i < fruits.length; i += 3) {
+      board[fruits[i + 1]][fruits[i]] = (char) ('0' + fruits[i + 2]);
+    }
+    for (SnakeView s : snakes) {
+      for (int i = 0; i < s.body.length(); i++) {
+        board[s.body.y(i)][s.body.x(i)] = i == 0 ? 'O' : s.letter;
+      }
+    }
+    StringBuilder sb = new StringBuilder(height * (width + 1));
+    for (char[] row : board) {
+      sb.append(row).append("\n");
+    }
+    return sb.toString();
+  }
+
+  // Puntajes en texto (formato de SCORES)
+  public String renderScores() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("=== ").append(levelInfo).append(" ===\n\n");
+    if (snakes.length == 0) {
+      sb.append("No hay jugadores conectados");
+    } else {
+      sb.append("=== PUNTAJES ===\n");
+      for (SnakeView s : snakes) {
+        sb.append("Jugador (").append(s.name).append("): ").append(score(s.id)).append(" puntos\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  // ---------------------------------------------------------------------
+  // Área de interés: snapshots recortados a una ventana alrededor de la cabeza
+  // ---------------------------------------------------------------------
+
+  private synchronized SpatialIndex index() {
+    if (index != null) return index;
+    SpatialIndex idx = new SpatialIndex();
+    idx.reset(width, height);
+    char[][] mm = new char[GameState.MINIMAP_H][];
+    for (int y = 0; y < GameState.MINIMAP_H; y++) {
+      mm[y] = minimapWalls[y].clone();
+    }
+    for (int i = 0; i < fruits.length; i += 3) {
+      idx.addFruit(fruits[i], fruits[i + 1], fruits[i + 2]);
+      mm[fruits[i + 1] * GameState.MINIMAP_H / height][fruits[i] * GameState.MINIMAP_W / width] = 'f';
+    }
+    for (SnakeView s : snakes) {
+      for (int i = 0; i < s.body.length(); i++) {
+        int x = s.body.x(i), y = s.body.y(i);
+        idx.addSegment(s.id, i, x, y);
+        mm[y * GameState.MINIMAP_H / height][x * GameState.MINIMAP_W / width] = 's';
+      }
+    }
+    minimap = mm;
+    index = idx;
+    return idx;
+  }
+
+  // Origen (esquina superior izquierda) de la ventana centrada en la cabeza
+  private int[] viewOrigin(SnakeView own, int viewW, int viewH) {
+    int cx = width / 2, cy = height / 2;
+    if (own != null && own.body.length() > 0) {
+      cx = own.body.x(0);
+      cy = own.body.y(0);
+    }
+    return new int[] { Math.floorMod(cx - viewW / 2, width), Math.floorMod(cy - viewH / 2, height) };
+  }
+
+  /**
+   * STATE recortado: solo las entidades dentro de la ventana viewW x viewH
+   * alrededor de la cabeza del jugador y un minimapa de MINIMAP_W x MINIMAP_H.
+   * Los segmentos van como [x,y,índice] bajo "segs" (el índice 0 es la cabeza).
+   */
+  public String toJsonView(int playerId, int viewW, int viewH) {
+    SpatialIndex idx = index();
+    SnakeView own = snake(playerId);
+    int w = Math.min(viewW, width), h = Math.min(viewH, height);
+    int[] origin = viewOrigin(own, w, h);
+
+    Map<Integer, StringBuilder> segsBySnake = new TreeMap<>();
+    StringBuilder fruitsSb = new StringBuilder();
+    idx.query(origin[0], origin[1], w, h, new SpatialIndex.Visitor() {
+      @Override
+      public void segment(int snakeId, int index, int x, int y) {
+        StringBuilder sb = segsBySnake.computeIfAbsent(snakeId, k -> new StringBuilder());
+        if (sb.length() > 0) sb.append(",");
+        sb.append("[").append(x).append(",").append(y).append(",").append(index).append("]");
+      }
+
+      @Override
+      public void fruit(int x, int y, int score) {
+        if (fruitsSb.length() > 0) fruitsSb.append(",");
+        fruitsSb.append("[").append(x).append(",").append(y).append(",").append(score).append("]");
+      }
+    });
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"tick\":").append(tick).append(",\"time\":").append(timeMs).append(",");
+    sb.append("\"view\":[").append(origin[0]).append(",").append(origin[1]).append(",")
+      .append(w).append(",").append(h).append("],");
+    sb.append("\"snakes\":[");
+    boolean first = true;
+    for (Map.Entry<Integer, StringBuilder> e : segsBySnake.entrySet()) {
+      if (!first) sb.append(",");
+      first = false;
+      SnakeView s = snake(e.getKey());
+      sb.append("{\"id\":").append(e.getKey()).append(",\"segs\":[").append(e.getValue())
+        .append("],\"letter\":\"");
+      appendLetter(sb, s != null ? s.letter : 'o');
+      sb.append("\"}");
+    }
+    sb.append("],");
+    sb.append("\"fruits\":[").append(fruitsSb).append("],");
+    sb.append("\"width\":").append(width).append(",\"height\":").append(height).append(",");
+    sb.append("\"level\":").append(level).append(",\"levelVersion\":").append(levelVersion).append(",");
+
+    // minimapa: filas separadas por '|', '@' marca la cabeza propia
+    int ownMx = -1, ownMy = -1;
+    if (own != null && own.body.length() > 0) {
+      ownMx = own.body.x(0) * GameState.MINIMAP_W / width;
+      ownMy = own.body.y(0) * GameState.MINIMAP_H / height;
+    }
+    sb.append("\"minimap\":\"");
+    for (int y = 0; y < GameState.MINIMAP_H; y++) {
+      if (y > 0) sb.append('|');
+      for (int x = 0; x < GameState.MINIMAP_W; x++) {
+        sb.append((x == ownMx && y == ownMy) ? '@' : minimap[y][x]);
+      }
+    }
+    sb.append("\"}");
+    return sb.toString();
+  }
+
+  /** BOARD recortado a la misma ventana que toJsonView */
+  public String renderBoardView(int playerId, int viewW, int viewH) {
+    SpatialIndex idx = index();
+    int w = Math.min(viewW, width), h = Math.min(viewH, height);
+    int[] origin = viewOrigin(snake(playerId), w, h);
+    char[][] board = new char[h][w];
+    for (int vy = 0; vy < h; vy++) {
+      int y = (origin[1] + vy) % height;
+      for (int vx = 0; vx < w; vx++) {
+        board[vy][vx] = walls[y][(origin[0] + vx) % width] ? '#' : ' ';
+      }
+    }
+    idx.query(origin[0], origin[1], w, h, new SpatialIndex.Visitor() {
+      @Override
+      public void segment(int snakeId, int index, int x, int y) {
+        SnakeView s = snake(snakeId);
+        board[Math.floorMod(y - origin[1], height)][Math.floorMod(x - origin[0], width)] =
+            index == 0 ? 'O' : (s != null ? s.letter : 'o');
+      }
+
+      @Override
+      public void fruit(int x, int y, int score) {
+        char[] row = board[Math.floorMod(y - origin[1], height)];
+        int vx = Math.floorMod(x - origin[0], width);
+        if (row[vx] == ' ') row[vx] = (char) ('0' + score);
+      }
+    });
+    StringBuilder sb = new StringBuilder(h * (w + 1));
+    for (char[] row : board) {
+      sb.append(row).append("\n");
+    }
+    return sb.toString();
+  }
+}
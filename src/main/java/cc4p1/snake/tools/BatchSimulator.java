@@ -0,0 +1,230 @@
+package cc4p1.snake.tools;
+
+import cc4p1.snake.server.BotPlayers;
+import cc4p1.snake.server.GameState;
+import cc4p1.snake.server.WorldSnapshot;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Corre muchas partidas completas sin red ni esperas, solo con bots, para
+ * ajustar los niveles (tick, frutas) y medir el rendimiento de la simulación.
+ * - una partida por semilla, cada una con su propio GameState
+ * - las semillas se reparten en un ForkJoinPool (divide el rango hasta
+ *   bloques de pocas partidas; los hilos libres roban trabajo)
+ * - cada bloque devuelve sus estadísticas y se suman al volver
+ *
+ * Uso: java cc4p1.snake.tools.BatchSimulator [nivel] [bots] [semilla desde] [semilla hasta]
+ *      [ticks] [archivo de reporte] [hilos]
+ */
+public class BatchSimulator {
+    private static final int MATCHES_PER_TASK = 4;
+    private static final int SCORE_BUCKETS = 101; // el último junta 100 o más
+
+    public static void main(String[] args) throws IOException {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int bots = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long seedFrom = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        long seedTo = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+        int ticks = args.length > 4 ? Integer.parseInt(args[4]) : 2000;
+        Path out = Paths.get(args.length > 5 ? args[5] : "batch-report.txt");
+        int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+        GameState probe = new GameState(seedFrom, true);
+        probe.setLevel(level);
+        int tickRateHz = probe.getCurrentTickRateHz();
+
+        long t0 = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Stats total;
+        try {
+            total = pool.invoke(new Batch(level, bots, ticks, seedFrom, seedTo + 1));
+        } finally {
+            pool.shutdown();
+        }
+        double wallSec = (System.nanoTime() - t0) / 1e9;
+
+        String report = render(total, level, bots, seedFrom, seedTo, ticks, threads, tickRateHz, wallSec);
+        Files.write(out, report.getBytes(StandardCharsets.UTF_8));
+        System.out.print(report);
+        System.out.println("Reporte escrito en " + out.toAbsolutePath());
+    }
+
+    /** Rango de semillas [from, to): se parte en dos hasta MATCHES_PER_TASK */
+    private static final class Batch extends RecursiveTask<Stats> {
+        private final int level, bots, ticks;
+        private final long from, to;
+
+        Batch(int level, int bots, int ticks, long from, long to) {
+            this.level = level;
+            this.bots = bots;
+            this.ticks = ticks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= MATCHES_PER_TASK) {
+                Stats s = new Stats(ticks);
+                for (long seed = from; seed < to; seed++) {
+                    runMatch(s, level, bots, ticks, seed);
+                }
+                return s;
+            }
+            long mid = from + (to - from) / 2;
+            Batch left = new Batch(level, bots, ticks, from, mid);
+            left.fork();
+            Stats right = new Batch(level, bots, ticks, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // Una partida: bots fijos, 'ticks' pasos; mide vidas y puntajes por bot
+    static void runMatch(Stats s, int level, int bots, int ticks, long seed) {
+        long t0 = System.nanoTime();
+        GameState state = new GameState(seed, true);
+        state.setLevel(level);
+        BotPlayers players = new BotPlayers(1, seed);
+        players.setFixedCount(bots);
+
+        long[] bornAt = new long[bots];
+        int[] lastScore = new int[bots];
+        Arrays.fill(bornAt, -1);
+        BitSet alive = new BitSet(bots);
+        for (int t = 1; t <= ticks; t++) {
+            players.tick(state);
+            state.step();
+
+            WorldSnapshot snap = state.snapshot();
+            alive.clear();
+            for (WorldSnapshot.SnakeView v : snap.snakes) {
+                int i = v.id - BotPlayers.FIRST_ID;
+                if (i >= 0 && i < bots) alive.set(i);
+            }
+            for (int k = 0; k < snap.scores.length; k += 2) {
+                int i = snap.scores[k] - BotPlayers.FIRST_ID;
+                if (i >= 0 && i < bots) lastScore[i] = snap.scores[k + 1];
+            }
+            for (int i = 0; i < bots; i++) {
+                if (alive.get(i)) {
+                    if (bornAt[i] < 0) {
+                        bornAt[i] = t;
+                        lastScore[i] = 0;
+                        s.lives++;
+                    }
+                } else if (bornAt[i] >= 0) {
+                    s.death((int) (t - bornAt[i]), lastScore[i]);
+                    bornAt[i] = -1;
+                }
+            }
+        }
+        // las vidas que llegan al final cuentan para el puntaje, no para la supervivencia
+        for (int i = 0; i < bots; i++) {
+            if (bornAt[i] >= 0) s.survivor(lastScore[i]);
+        }
+        s.matches++;
+        s.ticks += ticks;
+        s.busyNs += System.nanoTime() - t0;
+    }
+
+    /** Estadísticas acumuladas de un bloque de partidas (se suman con merge) */
+    static final class Stats {
+        long matches, ticks, busyNs;
+        long lives, deaths, survivors;
+        long survivalSum, scoreSum;
+        int maxScore;
+        final long[] survivalHist; // por cantidad de ticks vividos
+        final long[] scoreHist = new long[SCORE_BUCKETS];
+
+        Stats(int ticks) {
+            survivalHist = new long[ticks + 1];
+        }
+
+        void death(int lived, int score) {
+            deaths++;
+            survivalSum += lived;
+            survivalHist[Math.min(lived, survivalHist.length - 1)]++;
+            score(score);
+        }
+
+        void survivor(int score) {
+            survivors++;
+            score(score);
+        }
+
+        private void score(int score) {
+            scoreSum += score;
+            maxScore = Math.max(maxScore, score);
+            scoreHist[Math.min(score, SCORE_BUCKETS - 1)]++;
+        }
+
+        Stats merge(Stats o) {
+            matches += o.matches;
+            ticks += o.ticks;
+            busyNs += o.busyNs;
+            lives += o.lives;
+            deaths += o.deaths;
+            survivors += o.survivors;
+            survivalSum += o.survivalSum;
+            scoreSum += o.scoreSum;
+            maxScore = Math.max(maxScore, o.maxScore);
+            for (int i = 0; i < survivalHist.length; i++) survivalHist[i] += o.survivalHist[i];
+            for (int i = 0; i < scoreHist.length; i++) scoreHist[i] += o.scoreHist[i];
+            return this;
+        }
+    }
+
+    // Valor en el percentil p (0-1) de un histograma con índice = valor
+    private static int percentile(long[] hist, double p) {
+        long n = 0;
+        for (long c : hist) n += c;
+        if (n == 0) return 0;
+        long target = (long) Math.ceil(p * n);
+        long acc = 0;
+        for (int v = 0; v < hist.length; v++) {
+            acc += hist[v];
+            if (acc >= target) return v;
+        }
+        return hist.length - 1;
+    }
+
+    private static String render(Stats s, int level, int bots, long seedFrom, long seedTo, int ticks, int threads,
+            int tickRateHz, double wallSec) {
+        StringBuilder sb = new StringBuilder();
+        double busySec = s.busyNs / 1e9;
+        double gameMin = (double) s.ticks / tickRateHz / 60.0;
+        long lifeEnds = s.deaths + s.survivors;
+        sb.append("=== SIMULACIÓN POR LOTES ===\n");
+        sb.append(String.format("Nivel %d (%d TPS), %d bots, semillas %d..%d, %d ticks por partida, %d hilos%n",
+                level, tickRateHz, bots, seedFrom, seedTo, ticks, threads));
+        sb.append(String.format("Partidas: %d, ticks totales: %d (%.1f min de juego)%n", s.matches, s.ticks, gameMin));
+        sb.append(String.format("Tiempo: %.2f s de pared, %.2f s de CPU en partidas%n", wallSec, busySec));
+        sb.append(String.format("Rendimiento: %.0f ticks/s en total, %.0f ticks/s por núcleo%n",
+                s.ticks / wallSec, busySec > 0 ? s.ticks / busySec : 0));
+        sb.append("\n--- Supervivencia (vidas que terminaron en muerte) ---\n");
+        sb.append(String.format("Vidas: %d, muertes: %d, vivas al final: %d, muertes por minuto de juego y bot: %.2f%n",
+                s.lives, s.deaths, s.survivors, gameMin > 0 ? s.deaths / gameMin / Math.max(1, bots) : 0));
+        sb.append(String.format("Ticks vividos: media %.1f, p50 %d, p90 %d, p99 %d%n",
+                s.deaths > 0 ? (double) s.survivalSum / s.deaths : 0,
+                percentile(s.survivalHist, 0.5), percentile(s.survivalHist, 0.9), percentile(s.survivalHist, 0.99)));
+        sb.append("\n--- Puntaje por vida ---\n");
+        sb.append(String.format("Media %.2f, p50 %d, p90 %d, p99 %d, máximo %d%n",
+                lifeEnds > 0 ? (double) s.scoreSum / lifeEnds : 0,
+                percentile(s.scoreHist, 0.5), percentile(s.scoreHist, 0.9), percentile(s.scoreHist, 0.99), s.maxScore));
+        sb.append("Distribución:\n");
+        for (int v = 0; v < SCORE_BUCKETS; v++) {
+            if (s.scoreHist[v] == 0) continue;
+            sb.append(String.format("  %s%3d: %d (%.1f%%)%n", v == SCORE_BUCKETS - 1 ? ">=" : "  ", v,
+                    s.scoreHist[v], 100.0 * s.scoreHist[v] / lifeEnds));
+        }
+        return sb.toString();
+    }
+}
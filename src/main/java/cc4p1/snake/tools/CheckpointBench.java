@@ -0,0 +1,88 @@
+package cc4p1.snake.tools;
+
+import cc4p1.snake.server.Checkpointer;
+import cc4p1.snake.server.GameCheckpoint;
+import cc4p1.snake.server.GameState;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Mide el costo de un checkpoint a gran escala.
+ * Arma un mundo sintético (nivel 5) con muchas serpientes largas y mide:
+ * - la copia inmutable bajo el lock (lo único que paga el tick)
+ * - codificación binaria y escritura con fsync (hilo aparte)
+ * - lectura + restauración al arrancar
+ *
+ * Uso: java cc4p1.snake.tools.CheckpointBench [serpientes] [segmentos por serpiente] [repeticiones]
+ */
+public class CheckpointBench {
+
+    public static void main(String[] args) throws Exception {
+        int snakes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int reps = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        PrintStream report = System.out;
+        GameState state = new GameState(1, true);
+        state.setLevel(5);
+        state.restore(synthetic(state.checkpoint(), snakes, length));
+        for (int id = 1; id <= snakes; id++) {
+            state.claimParked(token(id), id);
+        }
+        state.setResumeTokens(CheckpointBench::token);
+
+        Path dir = Files.createTempDirectory("snake-checkpoint");
+        Checkpointer checkpointer = new Checkpointer(dir);
+        long copyNs = 0, encodeNs = 0, writeNs = 0, bytes = 0;
+        for (int r = 0; r < reps; r++) {
+            long t0 = System.nanoTime();
+            GameCheckpoint cp = state.checkpoint();
+            copyNs += System.nanoTime() - t0;
+            checkpointer.write(cp);
+            encodeNs += checkpointer.getLastEncodeNs();
+            writeNs += checkpointer.getLastWriteNs();
+            bytes = checkpointer.getLastBytes();
+        }
+
+        long t0 = System.nanoTime();
+        GameCheckpoint latest = new Checkpointer(dir).latest();
+        GameState restored = new GameState(1, true);
+        restored.restore(latest);
+        long restoreNs = System.nanoTime() - t0;
+
+        report.printf("Checkpoint: %d serpientes x %d segmentos (%d segmentos), %d repeticiones%n",
+                snakes, length, (long) snakes * length, reps);
+        report.printf("  tamaño:                 %,d bytes (%.1f bytes/segmento)%n", bytes, (double) bytes / ((long) snakes * length));
+        report.printf("  copia bajo lock (tick): %8.2f ms%n", copyNs / 1e6 / reps);
+        report.printf("  codificación:           %8.2f ms%n", encodeNs / 1e6 / reps);
+        report.printf("  escritura + fsync:      %8.2f ms%n", writeNs / 1e6 / reps);
+        report.printf("  lectura + restauración: %8.2f ms (%d serpientes estacionadas)%n",
+                restoreNs / 1e6, restored.getParkedCount());
+        for (Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+        Files.delete(dir);
+    }
+
+    // Serpientes en caminatas al azar (no hace falta que sean jugables)
+    private static GameCheckpoint synthetic(GameCheckpoint base, int snakes, int length) {
+        SplittableRandom rnd = new SplittableRandom(7);
+        GameCheckpoint.SnakeData[] data = new GameCheckpoint.SnakeData[snakes];
+        for (int k = 0; k < snakes; k++) {
+            short[] xs = new short[length], ys = new short[length];
+            int x = rnd.nextInt(1000), y = rnd.nextInt(1000);
+            for (int i = 0; i < length; i++) {
+                xs[i] = (short) x;
+                ys[i] = (short) y;
+                if (rnd.nextBoolean()) x++; else y++;
+            }
+            data[k] = new GameCheckpoint.SnakeData(k + 1, "p" + (k + 1), token(k + 1), 'p', "RIGHT", 0, rnd.nextInt(100), xs, ys);
+        }
+        return new GameCheckpoint(base.tick, base.seed, base.level, data, base.fruits);
+    }
+
+    // Mismo formato que los tokens de ResumeTokens
+    private static String token(int id) {
+        return String.format("%016x", id);
+    }
+}
@@ -0,0 +1,83 @@
+package cc4p1.snake.tools;
+
+import cc4p1.snake.server.GameServer;
+import cc4p1.snake.server.GameState;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Benchmark de compresión de snapshots por nivel (1 a 5).
+ * Simula partidas con jugadores que se mueven al azar, arma el frame de cada
+ * tick igual que GameServer y lo comprime con un Deflater persistente por
+ * nivel de compresión (como una conexión real con SYNC_FLUSH por tick).
+ * También mide un Deflater nuevo por frame para ver cuánto aporta el
+ * diccionario compartido entre ticks.
+ *
+ * Uso: java cc4p1.snake.tools.CompressionBench [ticks] [jugadores]
+ */
+public class CompressionBench {
+    private static final int[] DEFLATE_LEVELS = {1, 6, 9};
+    private static final String[] DIRS = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        PrintStream report = System.out;
+        report.printf("Compresión de snapshots: %d ticks, %d jugadores%n", ticks, players);
+        report.println("nivel  bytes/tick  deflate  ratio  base64/tick  us/tick (persistente)   ratio sin diccionario");
+        for (int level = 1; level <= 5; level++) {
+            for (int dl : DEFLATE_LEVELS) {
+                runLevel(report, level, dl, ticks, players);
+            }
+        }
+    }
+
+    private static void runLevel(PrintStream report, int level, int deflateLevel, int ticks, int players) {
+        GameState state = new GameState(Long.getLong("snake.seed", System.nanoTime()), true);
+        state.setLevel(level);
+        Random rnd = new Random(42);
+        int nextId = 1;
+        for (int i = 0; i < players; i++, nextId++) {
+            state.addPlayer(nextId, "p" + nextId);
+        }
+
+        Deflater persistent = new Deflater(deflateLevel, true);
+        byte[] buf = new byte[1 << 16];
+        long rawBytes = 0, deflatedBytes = 0, base64Bytes = 0, oneShotBytes = 0, nanos = 0;
+
+        for (int t = 0; t < ticks; t++) {
+            for (int id = 1; id < nextId; id++) {
+                if (rnd.nextInt(4) == 0) state.applyInput(id, DIRS[rnd.nextInt(4)]);
+            }
+            state.step();
+            // reponer jugadores muertos para mantener la carga constante
+            while (state.getPlayerCount() < players) {
+                state.addPlayer(nextId, "p" + nextId);
+                nextId++;
+            }
+
+            byte[] raw = GameServer.buildTickFrame(state).getBytes(StandardCharsets.UTF_8);
+            rawBytes += raw.length;
+
+            long t0 = System.nanoTime();
+            persistent.setInput(raw);
+            int len = persistent.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+            nanos += System.nanoTime() - t0;
+            deflatedBytes += len;
+            base64Bytes += 2 + (len + 2) / 3 * 4 + 1; // "Z " + base64 + '\n'
+
+            Deflater oneShot = new Deflater(deflateLevel, true);
+            oneShot.setInput(raw);
+            oneShotBytes += oneShot.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+            oneShot.end();
+        }
+        persistent.end();
+
+        report.printf("  %d      %7d     d=%d   %5.1fx   %7d      %8.1f               %5.1fx%n",
+                level, rawBytes / ticks, deflateLevel, (double) rawBytes / deflatedBytes,
+                base64Bytes / ticks, nanos / 1000.0 / ticks, (double) rawBytes / oneShotBytes);
+    }
+}
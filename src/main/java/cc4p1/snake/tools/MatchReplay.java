@@ -0,0 +1,103 @@
+package cc4p1.snake.tools;
+
+import cc4p1.snake.server.GameState;
+import cc4p1.snake.server.MatchLog;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Re-simula una partida grabada (-Dsnake.record=<dir>) a toda velocidad.
+ * Aplica los eventos del log a un GameState con la misma semilla, compara
+ * el hash del mundo en cada marca guardada y al final informa ticks/s y
+ * cuántas veces más rápido que el tiempo real corrió.
+ *
+ * Uso: java cc4p1.snake.tools.MatchReplay <match-...-000.snkrec> [tick a mostrar]
+ */
+public class MatchReplay {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: MatchReplay <match-...-000.snkrec> [tick]");
+            return;
+        }
+        Path first = Paths.get(args[0]);
+        long showTick = args.length > 1 ? Long.parseLong(args[1]) : -1;
+
+        PrintStream report = System.out;
+        // La semilla está en la cabecera: se lee antes de crear el estado
+        GameState state = new GameState(MatchLog.readHeader(first).seed, true);
+        long[] counts = new long[4]; // ticks, hashes verificados, desyncs, eventos
+        double[] realMs = {0};
+
+        long t0 = System.nanoTime();
+        MatchLog.Header header = MatchLog.read(first, new MatchLog.Visitor() {
+            @Override
+            public void join(int id, String name) {
+                counts[3]++;
+                state.addPlayer(id, name);
+            }
+
+            @Override
+            public void quit(int id) {
+                counts[3]++;
+                state.removePlayer(id);
+            }
+
+            @Override
+            public void input(int id, String dir) {
+                counts[3]++;
+                state.applyInput(id, dir);
+            }
+
+            @Override
+            public void level(int level) {
+                counts[3]++;
+                state.setLevel(level);
+            }
+
+            @Override
+            public void nextLevel() {
+                counts[3]++;
+                state.nextLevel();
+            }
+
+            @Override
+            public void freeze(int id, boolean frozen) {
+                counts[3]++;
+                state.setFrozen(id, frozen);
+            }
+
+            @Override
+            public void tick() {
+                counts[0]++;
+                state.step();
+                realMs[0] += 1000.0 / Math.max(1, state.getCurrentTickRateHz());
+                if (state.getTick() == showTick) {
+                    report.println("=== tick " + showTick + " ===");
+                    report.print(state.renderBoard());
+                }
+            }
+
+            @Override
+            public void hash(long stateHash) {
+                counts[1]++;
+                if (stateHash != state.getStateHash()) {
+                    counts[2]++;
+                    if (counts[2] == 1) {
+                        report.printf("DESYNC en el tick %d: grabado %016x, re-simulado %016x%n",
+                                state.getTick(), stateHash, state.getStateHash());
+                    }
+                }
+            }
+        });
+        double ms = (System.nanoTime() - t0) / 1e6;
+
+        report.printf("Partida: semilla %d, nivel inicial %d, %d ticks, %d eventos%n",
+                header.seed, header.level, counts[0], counts[3]);
+        report.printf("Hashes verificados: %d, desyncs: %d%n", counts[1], counts[2]);
+        report.printf("Re-simulación: %.1f ms (%.0f ticks/s), %.0fx más rápido que tiempo real (%.1f s)%n",
+                ms, counts[0] * 1000.0 / Math.max(ms, 1e-3), realMs[0] / Math.max(ms, 1e-3), realMs[0] / 1000);
+        if (counts[2] > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,214 @@
+package cc4p1.snake.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Componente que dibuja el tablero como una grilla de celdas.
+ * - mantiene el tablero como un char[] plano (ancho x alto)
+ * - cada carácter se copia desde un atlas de tiles pre-renderizado
+ * - dibuja sobre un buffer fuera de pantalla y solo repinta las celdas que
+ *   cambiaron respecto al frame anterior
+ *
+ * Reemplaza al JTextArea + setText(), que reconstruía el documento completo
+ * y volvía a maquetar todo el texto en cada tick.
+ */
+public class BoardPanel extends JComponent implements IBoardUpdater {
+    private static final int DEFAULT_COLUMNS = 30;
+    private static final int DEFAULT_ROWS = 12;
+    private static final int ATLAS_GLYPHS = 256; // Latin-1; el resto se dibuja como '?'
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color TEXT = Color.BLACK;
+    private static final Color WALL = new Color(90, 90, 90);
+
+    // Estado de la grilla (solo se toca desde el EDT)
+    private int columns = 0;
+    private int rows = 0;
+    private char[] cells = new char[0];
+
+    private BufferedImage atlas;
+    private BufferedImage backBuffer;
+    private int cellW;
+    private int cellH;
+
+    public BoardPanel() {
+        setOpaque(true);
+        setFont(new Font("Monospaced", Font.PLAIN, 12));
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        atlas = null; // se vuelve a generar con la nueva fuente
+        backBuffer = null;
+        revalidate();
+        repaint();
+    }
+
+    // ---------------------------------------------------------------------
+    // IBoardUpdater
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void updateBoard(String boardText) {
+        updateCells(toGrid(boardText));
+    }
+
+    @Override
+    public void updateCells(char[][] grid) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            applyGrid(grid);
+        } else {
+            SwingUtilities.invokeLater(() -> applyGrid(grid));
+        }
+    }
+
+    /** El panel solo dibuja el tablero; los puntajes los muestra cada ventana */
+    @Override
+    public void updateScores(String scoresText) {
+    }
+
+    // ---------------------------------------------------------------------
+    // Diferencia de celdas y repintado parcial
+    // ---------------------------------------------------------------------
+
+    private void applyGrid(char[][] grid) {
+        ensureAtlas();
+        int newRows = grid.length;
+        int newCols = 0;
+        for (char[] row : grid) newCols = Math.max(newCols, row.length);
+
+        if (newRows != rows || newCols != columns || backBuffer == null) {
+            // Cambió el tamaño (p.ej. otro nivel): redibujar todo el buffer
+            rows = newRows;
+            columns = newCols;
+            cells = new char[rows * columns];
+            backBuffer = createBuffer();
+            Graphics2D g = backBuffer.createGraphics();
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, backBuffer.getWidth(), backBuffer.getHeight());
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < columns; x++) {
+                    char c = x < grid[y].length ? grid[y][x] : ' ';
+                    cells[y * columns + x] = c;
+                    drawCell(g, x, y, c);
+                }
+            }
+            g.dispose();
+            revalidate();
+            repaint();
+            return;
+        }
+
+        Graphics2D g = backBuffer.createGraphics();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (int y = 0; y < rows; y++) {
+            char[] row = grid[y];
+            int base = y * columns;
+            for (int x = 0; x < columns; x++) {
+                char c = x < row.length ? row[x] : ' ';
+                if (cells[base + x] != c) {
+                    cells[base + x] = c;
+                    drawCell(g, x, y, c);
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+            }
+        }
+        g.dispose();
+        if (maxX >= 0) {
+            repaint(minX * cellW, minY * cellH, (maxX - minX + 1) * cellW, (maxY - minY + 1) * cellH);
+        }
+    }
+
+    private void drawCell(Graphics2D g, int x, int y, char c) {
+        int glyph = c < ATLAS_GLYPHS ? c : '?';
+        int dx = x * cellW, dy = y * cellH;
+        int sx = glyph * cellW;
+        g.drawImage(atlas, dx, dy, dx + cellW, dy + cellH, sx, 0, sx + cellW, cellH, null);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (backBuffer != null) {
+            g.drawImage(backBuffer, 0, 0, null);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        ensureAtlas();
+        int c = Math.max(columns, DEFAULT_COLUMNS);
+        int r = Math.max(rows, DEFAULT_ROWS);
+        return new Dimension(c * cellW, r * cellH);
+    }
+
+    // ---------------------------------------------------------------------
+    // Atlas de tiles
+    // ---------------------------------------------------------------------
+
+    /**
+     * Pre-renderiza un tile por carácter en una sola imagen (una fila de tiles).
+     * Las paredes '#' se dibujan como bloque sólido.
+     */
+    private void ensureAtlas() {
+        if (atlas != null) return;
+        Font font = getFont();
+        FontMetrics fm = getFontMetrics(font);
+        cellW = Math.max(1, fm.charWidth('M'));
+        cellH = Math.max(1, fm.getHeight());
+
+        atlas = new BufferedImage(cellW * ATLAS_GLYPHS, cellH, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = atlas.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, atlas.getWidth(), atlas.getHeight());
+        for (int c = 0; c < ATLAS_GLYPHS; c++) {
+            int sx = c * cellW;
+            if (c == '#') {
+                g.setColor(WALL);
+                g.fillRect(sx, 0, cellW, cellH);
+                continue;
+            }
+            if (c <= ' ' || Character.isISOControl(c)) continue;
+            g.setColor(TEXT);
+            g.drawString(String.valueOf((char) c), sx, fm.getAscent());
+        }
+        g.dispose();
+    }
+
+    private BufferedImage createBuffer() {
+        int w = Math.max(1, columns * cellW);
+        int h = Math.max(1, rows * cellH);
+        if (getGraphicsConfiguration() != null) {
+            return getGraphicsConfiguration().createCompatibleImage(w, h);
+        }
+        return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static char[][] toGrid(String text) {
+        String[] lines = text.split("\n", -1);
+        int n = lines.length;
+        if (n > 0 && lines[n - 1].isEmpty()) n--; // salto final del tablero
+        char[][] grid = new char[n][];
+        for (int i = 0; i < n; i++) {
+            grid[i] = lines[i].toCharArray();
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,80 @@
+package cc4p1.snake.ui;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+
+/**
+ * Buzón "último valor gana" entre el hilo de red y el EDT de Swing.
+ * - guarda solo el tablero y los puntajes más recientes
+ * - como máximo hay una tarea de render pendiente en la cola del EDT
+ * - los frames intermedios se descartan y se cuentan
+ *
+ * Así, si el EDT se atrasa, al despertar dibuja directamente el último tick
+ * en vez de procesar todos los frames viejos en orden.
+ */
+public class CoalescingBoardUpdater implements IBoardUpdater {
+    private final IBoardUpdater target;
+
+    // tablero pendiente: String (updateBoard) o char[][] (updateCells)
+    private final AtomicReference<Object> pendingBoard = new AtomicReference<>();
+    private final AtomicReference<String> pendingScores = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong coalescedFrames = new AtomicLong();
+
+    public CoalescingBoardUpdater(IBoardUpdater target) {
+        this.target = target;
+    }
+
+    @Override
+    public void updateBoard(String boardText) {
+        offerBoard(boardText);
+    }
+
+    @Override
+    public void updateCells(char[][] grid) {
+        offerBoard(grid);
+    }
+
+    @Override
+    public void updateScores(String scoresText) {
+        if (pendingScores.getAndSet(scoresText) != null) {
+            coalescedFrames.incrementAndGet();
+        }
+        schedule();
+    }
+
+    /** Frames que se reemplazaron antes de llegar a dibujarse */
+    public long getCoalescedFrames() {
+        return coalescedFrames.get();
+    }
+
+    private void offerBoard(Object board) {
+        if (pendingBoard.getAndSet(board) != null) {
+            coalescedFrames.incrementAndGet();
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        // Se libera antes de leer: lo que llegue desde aquí programa otra tarea
+        scheduled.set(false);
+        Object board = pendingBoard.getAndSet(null);
+        String scores = pendingScores.getAndSet(null);
+        if (board instanceof char[][]) {
+            target.updateCells((char[][]) board);
+        } else if (board != null) {
+            target.updateBoard((String) board);
+        }
+        if (scores != null) {
+            target.updateScores(scores);
+        }
+    }
+}
@@ -37,15 +37,27 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
     }
 
     public void updateBoard(String boardText) {
-        SwingUtilities.invokeLater(() -> Board.setText(boardText));
+        // BoardPanel se encarga de pasar al EDT y repintar solo lo que cambió
+        Board.updateBoard(boardText);
+    }
+
+    @Override
+    public void updateCells(char[][] grid) {
+        Board.updateCells(grid);
     }
 
     public void updateScores(String scoresText) {
         System.out.println("DEBUG updateScores() llamado con: '" + scoresText + "'");
-        SwingUtilities.invokeLater(() -> {
+        Runnable apply = () -> {
             jPuntuacionServer.setText(scoresText);
             System.out.println("DEBUG updateScores() - TextArea actualizado");
-        });
+        };
+        // El buzón de GameClient ya entrega en el EDT; no volver a encolar
+        if (SwingUtilities.isEventDispatchThread()) {
+            apply.run();
+        } else {
+            SwingUtilities.invokeLater(apply);
+        }
     }
 
     /**
@@ -60,7 +72,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
     private void initComponents() {
 
         jScrollPane1 = new javax.swing.JScrollPane();
-        Board = new javax.swing.JTextArea();
+        Board = new cc4p1.snake.ui.BoardPanel();
         UpBtn = new javax.swing.JButton();
         LeftBtn = new javax.swing.JButton();
         RightBtn = new javax.swing.JButton();
@@ -74,10 +86,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
         setResizable(false);
 
-        Board.setEditable(false);
-        Board.setColumns(30);
         Board.setFont(new java.awt.Font("Monospaced", 0, 12)); // NOI18N
-        Board.setRows(12);
         jScrollPane1.setViewportView(Board);
 
         UpBtn.setText("^");
@@ -198,11 +207,11 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
 
     private void NextLevelActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_NextLevelActionPerformed
         if (!serverStarted) {
-            Board.setText("ERROR: Primero inicia el servidor.");
+            Board.updateBoard("ERROR: Primero inicia el servidor.");
             return;
         }
         if (!connected || localClient == null) {
-            Board.setText("ERROR: Conéctate primero (CONNECT) para cambiar de nivel.");
+            Board.updateBoard("ERROR: Conéctate primero (CONNECT) para cambiar de nivel.");
             return;
         }
 
@@ -220,9 +229,9 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
             serverStarted = true;
             StartServerBtn.setEnabled(false);
 
-            Board.setText("Servidor iniciado en puerto " + port + "\nEsperando jugadores...");
+            Board.updateBoard("Servidor iniciado en puerto " + port + "\nEsperando jugadores...");
         } catch (Exception e) {
-            Board.setText("ERROR al iniciar servidor:\n" + e.getMessage() + "\n\nProbable causa: Puerto "
+            Board.updateBoard("ERROR al iniciar servidor:\n" + e.getMessage() + "\n\nProbable causa: Puerto "
                     + ServerMain.getCurrentPort() + " ocupado");
             e.printStackTrace();
         }
@@ -255,7 +264,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
     private void ConnectBtnActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_ConnectBtnActionPerformed
         // TODO add your handling code here:
         if (!serverStarted) {
-            Board.setText("ERROR: Primero debes iniciar el servidor");
+            Board.updateBoard("ERROR: Primero debes iniciar el servidor");
             return;
         }
 
@@ -264,7 +273,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
             host = Inet4Address.getLocalHost().getHostAddress();
         } catch (UnknownHostException ex) {
             Logger.getLogger(GameWindow.class.getName()).log(Level.SEVERE, null, ex);
-            Board.setText("ERROR: No se puede obtener la dirección IP local\n" + ex.getMessage());
+            Board.updateBoard("ERROR: No se puede obtener la dirección IP local\n" + ex.getMessage());
             return;
         }
         int port = ServerMain.getCurrentPort();
@@ -282,7 +291,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
             Board.requestFocus();
 
         } catch (Exception e) {
-            Board.setText("ERROR al conectar al servidor:\n" + e.getMessage() + "\n\nServidor: " + host + ":" + port);
+            Board.updateBoard("ERROR al conectar al servidor:\n" + e.getMessage() + "\n\nServidor: " + host + ":" + port);
             e.printStackTrace();
         }
     }// GEN-LAST:event_ConnectBtnActionPerformed
@@ -329,7 +338,7 @@ public class GameWindow extends javax.swing.JFrame implements IBoardUpdater, Key
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JTextArea Board;
+    private cc4p1.snake.ui.BoardPanel Board;
     private javax.swing.JButton ConnectBtn;
     private javax.swing.JButton DownBtn;
     private javax.swing.JButton LeftBtn;
@@ -57,7 +57,7 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
         jLabel2 = new javax.swing.JLabel();
         ConnectBtn = new javax.swing.JButton();
         jScrollPane1 = new javax.swing.JScrollPane();
-        Board = new javax.swing.JTextArea();
+        Board = new cc4p1.snake.ui.BoardPanel();
         RightBtn = new javax.swing.JButton();
         LeftBtn = new javax.swing.JButton();
         UpBtn = new javax.swing.JButton();
@@ -86,10 +86,7 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
             }
         });
 
-        Board.setEditable(false);
-        Board.setColumns(30);
         Board.setFont(new java.awt.Font("Monospaced", 0, 12)); // NOI18N
-        Board.setRows(12);
         jScrollPane1.setViewportView(Board);
 
         RightBtn.setText(">");
@@ -257,15 +254,27 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
     }// </editor-fold>//GEN-END:initComponents
 
     public void updateBoard(String boardText) {
-        SwingUtilities.invokeLater(() -> Board.setText(boardText));
+        // BoardPanel se encarga de pasar al EDT y repintar solo lo que cambió
+        Board.updateBoard(boardText);
+    }
+
+    @Override
+    public void updateCells(char[][] grid) {
+        Board.updateCells(grid);
     }
 
     public void updateScores(String scoresText) {
         System.out.println("DEBUG updateScores() llamado con: '" + scoresText + "'");
-        SwingUtilities.invokeLater(() -> {
+        Runnable apply = () -> {
             jPuntuacionCliente.setText(scoresText);
             System.out.println("DEBUG updateScores() - TextArea actualizado");
-        });
+        };
+        // El buzón de GameClient ya entrega en el EDT; no volver a encolar
+        if (SwingUtilities.isEventDispatchThread()) {
+            apply.run();
+        } else {
+            SwingUtilities.invokeLater(apply);
+        }
     }
 
     private void ConnectBtnActionPerformed(java.awt.event.ActionEvent evt) {// GEN-FIRST:event_ConnectBtnActionPerformed
@@ -278,7 +287,12 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
         try {
             gameClient = new GameClient(host, port, this);
             gameClient.start();
-            gameClient.sendJoin(username);
+            if (username.isEmpty()) {
+                // sin nombre: entra como espectador
+                gameClient.sendSpectate();
+            } else {
+                gameClient.sendJoin(username);
+            }
 
             connected = true;
             IPInput.setEnabled(false);
@@ -340,6 +354,9 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
                 case KeyEvent.VK_RIGHT:
                     gameClient.sendDirection("RIGHT");
                     break;
+                case KeyEvent.VK_T:
+                    gameClient.sendTop(0, 10);
+                    break;
             }
             Board.requestFocus();
         }
@@ -356,7 +373,7 @@ public class GameWindowClient extends javax.swing.JFrame implements IBoardUpdate
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JTextArea Board;
+    private cc4p1.snake.ui.BoardPanel Board;
     private javax.swing.JButton ConnectBtn;
     private javax.swing.JButton DownBtn;
     private javax.swing.JTextField IPInput;
@@ -11,5 +11,17 @@ package cc4p1.snake.ui;
 public interface IBoardUpdater {
     void updateBoard(String boardText);
 
+    /**
+     * Variante con la grilla ya armada (una fila por línea). Por defecto se
+     * convierte a texto; BoardPanel la usa directamente.
+     */
+    default void updateCells(char[][] grid) {
+        StringBuilder sb = new StringBuilder();
+        for (char[] row : grid) {
+            sb.append(row).append('\n');
+        }
+        updateBoard(sb.toString());
+    }
+
     void updateScores(String scoresText);
 }